@@ -0,0 +1,122 @@
+package Benchmarks;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import SyntaxAnalysis.JackAnalyzer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end JackAnalyzer.analyze() over a real directory, including all of
+ * the file I/O. One op is the whole directory.
+ *
+ * There are two of these: each program on its own with one thread, and a
+ * corpus of every test program duplicated many times over, which is big
+ * enough to show how parallel compilation scales with the number of jobs.
+ * With more than one job, -prof gc only sees the allocations made by the
+ * benchmark thread, not the workers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class AnalyzerBenchmark {
+
+    /**
+     * How many copies of each test program go in the corpus.
+     */
+    private static final int CORPUS_COPIES = 16;
+
+    @State(Scope.Benchmark)
+    public static class Program {
+        @Param({ "Pong", "Square", "ConvertToBin", "ComplexArrays", "Synthetic" })
+        public String program;
+
+        private Directory directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = new Directory(JackProgram.named(program), 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            directory.delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        @Param({ "1", "2", "4", "8" })
+        public int jobs;
+
+        private Directory directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = new Directory(JackProgram.named("corpus"), CORPUS_COPIES);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            directory.delete();
+        }
+    }
+
+    @Benchmark
+    public void analyze(Program state, Blackhole blackhole) throws IOException {
+        blackhole.consume(state.directory.analyze(1));
+    }
+
+    @Benchmark
+    public void analyzeCorpus(Corpus state, Blackhole blackhole) throws IOException {
+        blackhole.consume(state.directory.analyze(state.jobs));
+    }
+
+    /**
+     * A temporary copy of a program on disk. While one of these is around,
+     * System.out goes nowhere, since the analyzer chats about every file it
+     * touches and we don't want to be measuring the terminal.
+     */
+    private static class Directory {
+        private final File file;
+        private final PrintStream originalOut;
+
+        private Directory(JackProgram program, int copies) throws IOException {
+            file = Files.createTempDirectory("jack-bench-").toFile();
+            program.writeTo(file, copies);
+
+            originalOut = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        private JackAnalyzer analyze(int jobs) throws IOException {
+            JackAnalyzer analyzer = new JackAnalyzer();
+            analyzer.setParallelism(jobs);
+            analyzer.add(file);
+            analyzer.analyze();
+
+            return analyzer;
+        }
+
+        private void delete() throws IOException {
+            System.setOut(originalOut);
+
+            try(Stream<java.nio.file.Path> paths = Files.walk(file.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Benchmarks;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.CompilationEngine;
+import CodeGeneration.VM.VMWriter;
+import CodeGeneration.XMLWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompilationEngine.compile() over every file of a program, entirely in
+ * memory. Output goes into a stream which hands every byte to the
+ * blackhole, so none of the writing can be optimized away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class CompileBenchmark {
+
+    @Param({ "Pong", "Square", "ConvertToBin", "ComplexArrays", "Synthetic" })
+    public String program;
+
+    @Param({ "vm", "vm+xml" })
+    public String output;
+
+    private JackProgram source;
+    private boolean withXML;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = JackProgram.named(program);
+        withXML = output.equals("vm+xml");
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) {
+        OutputStream sink = new BlackholeOutputStream(blackhole);
+
+        for(int i = 0; i < source.getSources().size(); i++) {
+            XMLWriter xmlOut = (withXML ? new XMLWriter(sink) : null);
+
+            try(VMWriter vmOut = new VMWriter(sink::write)) {
+                CompilationEngine engine = new CompilationEngine(source.openReader(i), vmOut, xmlOut);
+                engine.compile();
+            }
+        }
+    }
+
+    private static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        private BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(off);
+            blackhole.consume(len);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package Benchmarks;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The source of a Jack program, held entirely in memory so that benchmarks
+ * measure the compiler and not the disk.
+ */
+public class JackProgram {
+
+    private final String name;
+    private final List<String> fileNames = new ArrayList<>();
+    private final List<String> sources = new ArrayList<>();
+
+    private JackProgram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getFileNames() {
+        return Collections.unmodifiableList(fileNames);
+    }
+
+    public List<String> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    public BufferedReader openReader(int index) {
+        return new BufferedReader(new StringReader(sources.get(index)));
+    }
+
+    /**
+     * Writes every source file into the given directory, repeated the given
+     * number of times. Copies after the first get their class renamed so the
+     * directory is still a sensible program to compile.
+     */
+    public void writeTo(File directory, int copies) throws IOException {
+        for(int copy = 0; copy < copies; copy++) {
+            for(int i = 0; i < sources.size(); i++) {
+                String className = fileNames.get(i).replace(".jack", "");
+                String source = sources.get(i);
+                if(copy > 0) {
+                    className = className + "Copy" + copy;
+                    source = source.replaceFirst("class\\s+\\w+", "class " + className);
+                }
+
+                Files.writeString(new File(directory, className + ".jack").toPath(), source);
+            }
+        }
+    }
+
+    // region Loading
+    /**
+     * The test programs the benchmarks know by name.
+     */
+    public static final String[] TEST_PROGRAMS = { "Pong", "Square", "ConvertToBin", "ComplexArrays" };
+
+    /**
+     * How many methods go in the generated "Synthetic" program.
+     */
+    public static final int SYNTHETIC_SIZE = 200;
+
+    /**
+     * Gets a program by the name used in the benchmark parameters. That's
+     * either one of the test programs, "Synthetic" for a generated class, or
+     * "corpus" for all of the test programs lumped together.
+     */
+    public static JackProgram named(String name) throws IOException {
+        if(name.equals("Synthetic")) {
+            return synthetic(SYNTHETIC_SIZE, 42);
+        }
+        if(name.equals("corpus")) {
+            List<JackProgram> programs = new ArrayList<>();
+            for(String program : TEST_PROGRAMS) {
+                programs.add(named(program));
+            }
+
+            return corpus(name, programs);
+        }
+
+        return load(new File(findTestPrograms(), name));
+    }
+
+    /**
+     * JMH runs each benchmark in a new JVM, which starts in whatever
+     * directory the jar was run from. That's normally the project root, but
+     * bench/ works too, and -Djack.programs overrides both.
+     */
+    private static File findTestPrograms() {
+        String property = System.getProperty("jack.programs");
+        if(property != null) {
+            return new File(property);
+        }
+
+        File here = new File("testPrograms");
+        return (here.isDirectory() ? here : new File("../testPrograms"));
+    }
+
+    public static JackProgram load(File directory) throws IOException {
+        JackProgram program = new JackProgram(directory.getName());
+
+        File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(".jack"));
+        if(files == null || files.length == 0) {
+            throw new IOException("No jack files in " + directory);
+        }
+
+        java.util.Arrays.sort(files);
+        for(File file : files) {
+            program.fileNames.add(file.getName());
+            program.sources.add(Files.readString(file.toPath()));
+        }
+
+        return program;
+    }
+
+    /**
+     * Lumps several programs together into one. Every class gets prefixed
+     * with the name of the program it came from, so nothing collides.
+     */
+    public static JackProgram corpus(String name, List<JackProgram> programs) {
+        JackProgram corpus = new JackProgram(name);
+
+        for(JackProgram program : programs) {
+            for(int i = 0; i < program.sources.size(); i++) {
+                String className = program.fileNames.get(i).replace(".jack", "");
+                String renamed = program.name + className;
+
+                corpus.fileNames.add(renamed + ".jack");
+                corpus.sources.add(program.sources.get(i).replaceFirst("class\\s+\\w+", "class " + renamed));
+            }
+        }
+
+        return corpus;
+    }
+    // endregion
+
+    // region Synthetic programs
+    /**
+     * Generates one big class that leans on all of the usual constructs:
+     * fields and statics, long arithmetic expressions, nested control flow,
+     * array accesses, string literals and method/function calls. The same
+     * seed always produces the same source.
+     * @param subroutines How many methods to generate.
+     * @param seed Random seed.
+     */
+    public static JackProgram synthetic(int subroutines, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("/** Synthetic benchmark class. */\n");
+        sb.append("class Synthetic {\n");
+        sb.append("    field int f0, f1, f2, f3;\n");
+        sb.append("    field Array buffer;\n");
+        sb.append("    static int s0, s1;\n\n");
+
+        sb.append("    constructor Synthetic new(int size) {\n");
+        sb.append("        let buffer = Array.new(size);\n");
+        sb.append("        let f0 = 0;\n");
+        sb.append("        return this;\n");
+        sb.append("    }\n\n");
+
+        for(int i = 0; i < subroutines; i++) {
+            sb.append("    /* Method number ").append(i).append(" */\n");
+            sb.append("    method int m").append(i).append("(int a, int b, boolean flag) {\n");
+            sb.append("        var int i, j, k;\n");
+            sb.append("        var String text;\n");
+            sb.append("        let i = 0; // loop counter\n");
+            sb.append("        let text = \"synthetic string number ").append(i).append("\";\n");
+            sb.append("        while (i < ").append(1 + random.nextInt(100)).append(") {\n");
+            sb.append("            let j = ").append(randomExpression(random, 3)).append(";\n");
+            sb.append("            let buffer[i] = j + ").append(random.nextInt(1000)).append(";\n");
+            sb.append("            if ((j > k) & flag) {\n");
+            sb.append("                let k = buffer[i] - (a * b);\n");
+            sb.append("                do Output.printString(text);\n");
+            sb.append("            }\n");
+            sb.append("            else {\n");
+            sb.append("                let k = -k;\n");
+            sb.append("                let f").append(random.nextInt(4)).append(" = ~(k = j);\n");
+            sb.append("            }\n");
+            sb.append("            let i = i + 1;\n");
+            sb.append("        }\n");
+            if(i > 0) {
+                sb.append("        do m").append(random.nextInt(i)).append("(k, j, ~flag);\n");
+            }
+            sb.append("        return k + Synthetic.helper(i, j);\n");
+            sb.append("    }\n\n");
+        }
+
+        sb.append("    function int helper(int x, int y) {\n");
+        sb.append("        let s0 = s0 + (x / (y + 1));\n");
+        sb.append("        return s0;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+
+        JackProgram program = new JackProgram("Synthetic" + subroutines);
+        program.fileNames.add("Synthetic.jack");
+        program.sources.add(sb.toString());
+
+        return program;
+    }
+
+    private static final String[] OPERANDS = { "a", "b", "i", "j", "k", "f0", "f1", "f2", "f3", "s0", "s1" };
+    private static final String[] OPERATORS = { "+", "-", "*", "/", "&", "|" };
+
+    private static String randomExpression(Random random, int depth) {
+        StringBuilder sb = new StringBuilder();
+        int terms = 2 + random.nextInt(4);
+
+        for(int t = 0; t < terms; t++) {
+            if(t > 0) {
+                sb.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+            }
+
+            int choice = random.nextInt(5);
+            if(choice == 0 && depth > 0) {
+                sb.append('(').append(randomExpression(random, depth - 1)).append(')');
+            }
+            else if(choice == 1) {
+                sb.append(random.nextInt(32768));
+            }
+            else if(choice == 2) {
+                sb.append("buffer[").append(OPERANDS[random.nextInt(OPERANDS.length)]).append(']');
+            }
+            else {
+                sb.append(OPERANDS[random.nextInt(OPERANDS.length)]);
+            }
+        }
+
+        return sb.toString();
+    }
+    // endregion
+}
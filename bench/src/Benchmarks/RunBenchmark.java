@@ -0,0 +1,92 @@
+package Benchmarks;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.CompilerOptions;
+import Interpreter.ProgramLoader;
+import Interpreter.VMInterpreter;
+import Interpreter.VMProgram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs a compiled program in the VM interpreter, to measure the code the
+ * compiler generates rather than the compiler itself. The program is only
+ * compiled once, in setUp(). Games wait for keys forever, so they're cut
+ * off after a fixed number of frames. One op is one whole run.
+ *
+ * Comparing the same program with different options shows how much less
+ * work there is per run. The number of VM instructions each run took goes
+ * into the blackhole, and can be checked with the interpreter's --run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RunBenchmark {
+
+    /**
+     * After this many calls to Keyboard.keyPressed, the program is stopped.
+     */
+    private static final long FRAMES = 2000;
+
+    /**
+     * And just in case it never checks the keyboard at all.
+     */
+    private static final long MAX_STEPS = 50_000_000;
+
+    @Param({ "Pong", "Square" })
+    public String program;
+
+    @Param({ "plain", "lean-calls", "O" })
+    public String options;
+
+    private VMProgram compiled;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = Files.createTempDirectory("jack-bench-").toFile();
+        try {
+            JackProgram.named(program).writeTo(directory, 1);
+            compiled = new ProgramLoader(getOptions()).load(directory);
+        }
+        finally {
+            try(Stream<java.nio.file.Path> paths = Files.walk(directory.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private CompilerOptions getOptions() {
+        switch(options) {
+            case "lean-calls":
+                CompilerOptions leanCalls = new CompilerOptions();
+                leanCalls.setLeanCalls(true);
+                return leanCalls;
+            case "O":
+                return CompilerOptions.optimized();
+            default:
+                return new CompilerOptions();
+        }
+    }
+
+    @Benchmark
+    public void run(Blackhole blackhole) {
+        VMInterpreter interpreter = new VMInterpreter(compiled);
+        interpreter.getOS().setMaxKeyPolls(FRAMES);
+        interpreter.run(MAX_STEPS);
+
+        blackhole.consume(interpreter.getSteps());
+    }
+}
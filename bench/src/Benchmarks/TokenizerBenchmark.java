@@ -0,0 +1,45 @@
+package Benchmarks;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import SyntaxAnalysis.JackTokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw token throughput: every file in the program gets tokenized and every
+ * token goes into the blackhole. One op is the whole program.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class TokenizerBenchmark {
+
+    @Param({ "Pong", "Square", "ConvertToBin", "ComplexArrays", "Synthetic" })
+    public String program;
+
+    private JackProgram source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = JackProgram.named(program);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        for(int i = 0; i < source.getSources().size(); i++) {
+            JackTokenizer tokenizer = new JackTokenizer(source.openReader(i));
+            while(tokenizer.hasMoreTokens()) {
+                blackhole.consume(tokenizer.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package Benchmarks;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VariableTracking.VariableKind;
+import CodeGeneration.VariableTracking.VariableTable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mimics the symbol table traffic of compiling one class: a handful of
+ * class-level variables, then a number of subroutines which each define
+ * their arguments and locals and then look identifiers up many times over.
+ *
+ * get() sets up one subroutine ahead of time and does nothing but look
+ * things up, so the cost of a lookup can be seen on its own. Both count one
+ * op per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class VariableTableBenchmark {
+
+    private static final int SUBROUTINES = 20;
+    private static final int LOOKUPS_PER_SUBROUTINE = 200;
+
+    private static final String[] CLASS_NAMES = { "x", "y", "size", "direction", "count" };
+    private static final String[] ARG_NAMES = { "Ax", "Ay", "Asize" };
+    private static final String[] VAR_NAMES = { "i", "j", "key", "exit", "temp", "result", "sum", "length" };
+
+    /**
+     * What gets looked up. The misses are class names (like Output or
+     * Screen) which is what happens for every function call.
+     */
+    private static final String[] LOOKUPS = {
+            "i", "x", "Ax", "key", "Output", "size", "sum", "Screen", "j", "count", "length", "Memory"
+    };
+    private static final String[] LOOKUP_COPIES = new String[LOOKUPS.length];
+    static {
+        for(int i = 0; i < LOOKUPS.length; i++) {
+            LOOKUP_COPIES[i] = new String(LOOKUPS[i].toCharArray());
+        }
+    }
+
+    private VariableTable lookupTable;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lookupTable = new VariableTable();
+        defineClass(lookupTable);
+        defineSubroutine(lookupTable);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBROUTINES * LOOKUPS_PER_SUBROUTINE)
+    public void get(Blackhole blackhole) {
+        for(int s = 0; s < SUBROUTINES; s++) {
+            lookUp(lookupTable, blackhole);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBROUTINES * LOOKUPS_PER_SUBROUTINE)
+    public void defineAndGet(Blackhole blackhole) {
+        VariableTable table = new VariableTable();
+        defineClass(table);
+
+        for(int s = 0; s < SUBROUTINES; s++) {
+            defineSubroutine(table);
+            lookUp(table, blackhole);
+        }
+    }
+
+    private static void defineClass(VariableTable table) {
+        for(int i = 0; i < CLASS_NAMES.length; i++) {
+            table.define(CLASS_NAMES[i], "int", (i == 0 ? VariableKind.STATIC : VariableKind.FIELD));
+        }
+    }
+
+    private static void defineSubroutine(VariableTable table) {
+        table.startSubroutine();
+
+        for(String name : ARG_NAMES) {
+            table.define(name, "int", VariableKind.ARG);
+        }
+        for(String name : VAR_NAMES) {
+            table.define(name, "int", VariableKind.VAR);
+        }
+    }
+
+    /**
+     * The lookups are copies of the names, the same as they would be coming
+     * out of the tokenizer, so nothing gets to skip comparing characters.
+     */
+    private static void lookUp(VariableTable table, Blackhole blackhole) {
+        for(int l = 0; l < LOOKUPS_PER_SUBROUTINE; l++) {
+            blackhole.consume(table.get(LOOKUP_COPIES[l % LOOKUP_COPIES.length]));
+        }
+    }
+}
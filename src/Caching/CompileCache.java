@@ -0,0 +1,322 @@
+package Caching;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.CompilerOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps copies of compiled output on disk, so a file that hasn't changed
+ * since the last run doesn't need to be compiled again.
+ *
+ * Entries are named after a SHA-256 hash of the source, the compiler's
+ * version and the options used. If any of those change, so does the name,
+ * so an entry never has to be checked for being out of date; old ones
+ * just stop getting used and eventually get evicted. Each entry is a
+ * <hash>.vm file, plus a <hash>.xml file if the XML was written too.
+ *
+ * Using an entry bumps its modified time, and trim() throws away the
+ * least recently used entries until everything fits in the size limit.
+ *
+ * Everything here is safe to use from several compile threads at once,
+ * and entries are moved into place whole, so two compilers sharing a
+ * directory won't see each other's half-written files.
+ */
+public class CompileCache {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * A hash of the compiler's own class files (or the jar they're in).
+     * Any change to any pass changes this, so old entries stop getting used
+     * without anybody having to remember to bump a number. It's worked out
+     * once, the first time a cache is used.
+     */
+    public static final String VERSION = hashCompiler();
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String VM_EXTENSION = ".vm";
+    private static final String XML_EXTENSION = ".xml";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private int evicted = 0;
+
+    /**
+     * @param directory Where entries go. This gets created if it doesn't exist.
+     * @param maxBytes How big the directory is allowed to get (after trim()).
+     */
+    public CompileCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory.toPath();
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * Works out the name of the entry for some source code.
+     * @param source The contents of the .jack file, exactly as it is on disk.
+     */
+    public String getKey(byte[] source, CompilerOptions options) {
+        return getKey(ByteBuffer.wrap(source), options);
+    }
+
+    /**
+     * @param source The contents of the .jack file, from its position up to
+     *               its limit. The position is left where it was.
+     */
+    public String getKey(ByteBuffer source, CompilerOptions options) {
+        MessageDigest digest = newDigest();
+        digest.update((VERSION + "\n" + options.getFingerprint() + "\n").getBytes(StandardCharsets.UTF_8));
+        digest.update(source.duplicate());
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Copies an entry's output to where it belongs, if there is an entry.
+     * @param vmFile Where the VM code goes.
+     * @param xmlFile Where the XML goes, or null if it isn't wanted.
+     * @return True if the entry was there and got used. If not, the file
+     *         needs to be compiled after all.
+     */
+    public boolean restore(String key, File vmFile, File xmlFile) throws IOException {
+        Path cachedVM = directory.resolve(key + VM_EXTENSION);
+        Path cachedXML = directory.resolve(key + XML_EXTENSION);
+
+        if(!Files.exists(cachedVM) || (xmlFile != null && !Files.exists(cachedXML))) {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        try {
+            long saved = copy(cachedVM, vmFile.toPath());
+            if(xmlFile != null) {
+                saved += copy(cachedXML, xmlFile.toPath());
+            }
+
+            bytesSaved.addAndGet(saved);
+        }
+        catch (NoSuchFileException e) {
+            // Someone else evicted it between checking and copying.
+            misses.incrementAndGet();
+            return false;
+        }
+
+        hits.incrementAndGet();
+        return true;
+    }
+
+    private static long copy(Path cached, Path target) throws IOException {
+        Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+
+        // This is what keeps the entry from getting evicted.
+        Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+
+        return Files.size(target);
+    }
+
+    /**
+     * Saves freshly compiled output as an entry.
+     * @param xmlFile The XML that was written, or null if there wasn't any.
+     */
+    public void store(String key, File vmFile, File xmlFile) throws IOException {
+        storeFile(vmFile.toPath(), directory.resolve(key + VM_EXTENSION));
+        if(xmlFile != null) {
+            storeFile(xmlFile.toPath(), directory.resolve(key + XML_EXTENSION));
+        }
+    }
+
+    private void storeFile(Path source, Path entry) throws IOException {
+        // Copy it in under a name nobody else is going to use, and then
+        // move it into place all at once.
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Throws away the least recently used files until the directory is
+     * back under its size limit.
+     */
+    public synchronized void trim() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for(Path file : stream) {
+                if(Files.isRegularFile(file)) {
+                    files.add(file);
+                    total += Files.size(file);
+                }
+            }
+        }
+
+        if(total <= maxBytes) {
+            return;
+        }
+
+        List<FileTime> times = new ArrayList<>(files.size());
+        for(Path file : files) {
+            times.add(Files.getLastModifiedTime(file));
+        }
+
+        List<Integer> order = new ArrayList<>(files.size());
+        for(int i = 0; i < files.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(times::get));
+
+        for(int i = 0; i < order.size() && total > maxBytes; i++) {
+            Path file = files.get(order.get(i));
+            long size = Files.size(file);
+            if(Files.deleteIfExists(file)) {
+                total -= size;
+                evicted++;
+            }
+        }
+    }
+
+    // region Statistics
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return How many bytes of output were copied from the cache, rather
+     *         than generated.
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return How many files trim() has thrown away.
+     */
+    public int getEvicted() {
+        return evicted;
+    }
+
+    public String getSummary() {
+        int total = getHits() + getMisses();
+        return "Cache: " + getHits() + " hits, " + getMisses() + " misses" +
+               (total > 0 ? " (" + (100 * getHits() / total) + "% hit rate)" : "") +
+               ", " + formatBytes(getBytesSaved()) + " reused" +
+               ", " + getEvicted() + " files evicted";
+    }
+
+    private static String formatBytes(long bytes) {
+        if(bytes < 1024) {
+            return bytes + " B";
+        }
+        else if(bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        else {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+    // endregion
+
+    // region Hashing
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java install is required to have SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for(int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+
+        return new String(hex);
+    }
+
+    /**
+     * Finds wherever this class was loaded from. If that's a directory, every
+     * .class file under it gets hashed along with its name, in a fixed order.
+     * If it's a jar, the whole jar does.
+     *
+     * If we can't tell where the compiler came from, there's no way to know
+     * whether an old entry came from this compiler, so we make up a version
+     * nothing else will have. The cache still works within the one run.
+     */
+    private static String hashCompiler() {
+        CodeSource codeSource = CompileCache.class.getProtectionDomain().getCodeSource();
+        URL location = (codeSource != null ? codeSource.getLocation() : null);
+        if(location == null) {
+            return "unknown-" + UUID.randomUUID();
+        }
+
+        MessageDigest digest = newDigest();
+        try {
+            Path compiler = Paths.get(location.toURI());
+
+            if(Files.isDirectory(compiler)) {
+                List<Path> classFiles;
+                try(Stream<Path> files = Files.walk(compiler)) {
+                    classFiles = files.filter(file -> file.toString().endsWith(".class"))
+                                      .sorted()
+                                      .collect(Collectors.toList());
+                }
+
+                for(Path classFile : classFiles) {
+                    String name = compiler.relativize(classFile).toString().replace('\\', '/');
+                    digest.update((name + "\n").getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(classFile));
+                }
+            }
+            else {
+                digest.update(Files.readAllBytes(compiler));
+            }
+        }
+        catch (IOException | URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+            return "unknown-" + UUID.randomUUID();
+        }
+
+        return toHex(digest.digest());
+    }
+    // endregion
+}
@@ -0,0 +1,544 @@
+package CodeGeneration.Asm;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.OutputSink;
+import CodeGeneration.VM.Segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns VM commands straight into Hack assembly, so there's no need to
+ * write out VM code just to have a VM translator read it back in.
+ *
+ * Two things keep the output small (and quick):
+ *
+ *  1. Whatever's on top of the stack is kept in D whenever possible,
+ *     instead of always being written to memory. A push only loads D, and
+ *     whatever comes next usually wants it in D anyway. So "push; push; add;
+ *     pop" never touches the top of the stack in memory at all. Before
+ *     anything that can be jumped to (or away from), D gets written back,
+ *     so that the stack is always in memory at a label.
+ *
+ *  2. The long bits (call, return and the comparisons) are written once, as
+ *     shared routines, and everything else just jumps to them. A call is 10
+ *     instructions at the call site instead of about 45. This does mean every
+ *     program needs the routines in it, which is what writeRuntime() is for.
+ *
+ * Since return leaves the return value in D (rather than at the top of the
+ * stack in memory), everything in a program needs to be translated by this,
+ * including the OS. See VMParser for turning .vm files back into commands.
+ */
+public class AsmWriter implements CommandWriter, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String NEWLINE = System.lineSeparator();
+
+    // region Runtime routine names
+    private static final String CALL = "__CALL";
+    private static final String RETURN = "__RETURN";
+    private static final String EQ = "__EQ";
+    private static final String LT = "__LT";
+    private static final String TRUE = "__TRUE";
+    private static final String FALSE = "__FALSE";
+    // endregion
+
+    /**
+     * How far past a segment's base we'll step with A=A+1 to store D. Past
+     * that, working out the address the long way is shorter.
+     */
+    private static final int MAX_STEPS = 6;
+
+    private OutputSink sink;
+    private StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+
+    /**
+     * Statics are named after the file (which is always the class name).
+     */
+    private String fileName;
+
+    /**
+     * Labels are named after the function they're in, so that they don't
+     * clash with any other function's labels.
+     */
+    private String functionName;
+
+    /**
+     * Used to name return addresses, which need to be unique.
+     */
+    private int returnCount = 0;
+
+    /**
+     * If this is set, the top of the stack is in D rather than in memory.
+     * In other words, the stack is really one longer than SP says.
+     */
+    private boolean topInD = false;
+
+    private int instructionCount = 0;
+
+    /**
+     * @param fileName What statics are named after. This should be the name
+     *                 of the class (or .vm file, without the extension).
+     */
+    public AsmWriter(OutputSink sink, String fileName) {
+        this.sink = sink;
+        this.fileName = fileName;
+        this.functionName = fileName;
+    }
+
+    /**
+     * For when there's no file name. Statics get named after the class of
+     * the first function instead, which is the same thing for compiled Jack.
+     */
+    public AsmWriter(OutputSink sink) {
+        this(sink, null);
+    }
+
+    /**
+     * @return How many instructions have been written (not counting labels).
+     */
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    // region Output
+    private void emit(String line) {
+        buffer.append(line).append(NEWLINE);
+        instructionCount++;
+
+        if(buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    private void emit(String a, String b) {
+        emit(a);
+        emit(b);
+    }
+
+    private void emitLabel(String label) {
+        buffer.append('(').append(label).append(')').append(NEWLINE);
+    }
+
+    /**
+     * Hack symbols can only have letters, digits and _.$: in them, but VM
+     * labels (or at least ours) can have dashes too. Anything else gets
+     * turned into a colon, which nothing we generate ever uses.
+     */
+    private static String toSymbol(String name) {
+        StringBuilder result = null;
+
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                            c == '_' || c == '.' || c == '$' || c == ':';
+
+            if(!valid && result == null) {
+                result = new StringBuilder(name.length());
+                result.append(name, 0, i);
+            }
+            if(result != null) {
+                result.append(valid ? c : ':');
+            }
+        }
+
+        return (result != null ? result.toString() : name);
+    }
+
+    /**
+     * @throws UncheckedIOException if the sink fails.
+     */
+    @Override
+    public void flush() {
+        if(buffer.length() > 0) {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.US_ASCII);
+            buffer.setLength(0);
+
+            try {
+                sink.write(bytes, 0, bytes.length);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        spill();
+        flush();
+    }
+    // endregion
+
+    // region The stack
+    /**
+     * Puts D back on top of the stack in memory, if that's where the top is.
+     */
+    private void spill() {
+        if(topInD) {
+            emit("@SP", "AM=M+1");
+            emit("A=A-1", "M=D");
+            topInD = false;
+        }
+    }
+
+    /**
+     * Makes sure the top of the stack is in D, taking it out of memory if
+     * it isn't already.
+     */
+    private void takeTop() {
+        if(!topInD) {
+            emit("@SP", "AM=M-1");
+            emit("D=M");
+            topInD = true;
+        }
+    }
+
+    private static String getPointerName(Segment seg) {
+        switch(seg) {
+            case LOCAL:    return "LCL";
+            case ARGUMENT: return "ARG";
+            case THIS:     return "THIS";
+            case THAT:     return "THAT";
+            default:       return null;
+        }
+    }
+
+    /**
+     * @return The symbol for a segment that's at a fixed place, or null if
+     *         the segment moves around.
+     */
+    private String getFixedAddress(Segment seg, int index) {
+        switch(seg) {
+            case STATIC:  return fileName + "." + index;
+            case POINTER: return (index == 0 ? "THIS" : "THAT");
+            case TEMP:    return "R" + (5 + index);
+            default:      return null;
+        }
+    }
+
+    @Override
+    public void writePush(Segment seg, int index) {
+        spill();
+
+        String pointer = getPointerName(seg);
+        if(seg == Segment.CONSTANT) {
+            if(index == 0 || index == 1) {
+                emit("D=" + index);
+            }
+            else {
+                emit("@" + index, "D=A");
+            }
+        }
+        else if(pointer != null) {
+            if(index <= 1) {
+                emit("@" + pointer, (index == 0 ? "A=M" : "A=M+1"));
+            }
+            else {
+                emit("@" + index, "D=A");
+                emit("@" + pointer, "A=D+M");
+            }
+            emit("D=M");
+        }
+        else {
+            emit("@" + getFixedAddress(seg, index), "D=M");
+        }
+
+        topInD = true;
+    }
+
+    @Override
+    public void writePop(Segment seg, int index) {
+        takeTop();
+
+        String pointer = getPointerName(seg);
+        if(pointer != null) {
+            if(index <= MAX_STEPS) {
+                emit("@" + pointer, (index == 0 ? "A=M" : "A=M+1"));
+                for(int i = 1; i < index; i++) {
+                    emit("A=A+1");
+                }
+            }
+            else {
+                // D is busy, so the address has to be worked out elsewhere.
+                emit("@R13", "M=D");
+                emit("@" + index, "D=A");
+                emit("@" + pointer, "D=D+M");
+                emit("@R14", "M=D");
+                emit("@R13", "D=M");
+                emit("@R14", "A=M");
+            }
+            emit("M=D");
+        }
+        else if(seg == Segment.CONSTANT) {
+            throw new IllegalArgumentException("Can't pop into the constant segment");
+        }
+        else {
+            emit("@" + getFixedAddress(seg, index), "M=D");
+        }
+
+        topInD = false;
+    }
+    // endregion
+
+    // region Arithmetic
+    @Override
+    public void writeArithmetic(ArithmeticCommand cmd) {
+        switch(cmd) {
+            case ADD: writeBinary("D=D+M"); break;
+            case SUB: writeBinary("D=M-D"); break;
+            case AND: writeBinary("D=D&M"); break;
+            case OR:  writeBinary("D=D|M"); break;
+
+            case NEG: writeUnary("-"); break;
+            case NOT: writeUnary("!"); break;
+
+            case EQ:
+                takeTop();
+                emit("@SP", "AM=M-1");
+                emit("D=M-D");
+                emit("@R13", "M=D");
+                writeJump(EQ);
+                break;
+
+            // x < y and y > x are the same thing, so __LT does both; they
+            // just put x and y in opposite places.
+            case LT:
+            case GT:
+                takeTop();
+                emit((cmd == ArithmeticCommand.LT ? "@R14" : "@R13"), "M=D");
+                emit("@SP", "AM=M-1");
+                emit("D=M");
+                emit((cmd == ArithmeticCommand.LT ? "@R13" : "@R14"), "M=D");
+                writeJump(LT);
+                break;
+
+            case MULTIPLY: writeCall("Math.multiply", 2); break;
+            case DIVIDE:   writeCall("Math.divide", 2); break;
+        }
+    }
+
+    /**
+     * x is in memory and y is in D, and the result stays in D.
+     */
+    private void writeBinary(String comp) {
+        takeTop();
+        emit("@SP", "AM=M-1");
+        emit(comp);
+    }
+
+    private void writeUnary(String op) {
+        if(topInD) {
+            emit("D=" + op + "D");
+        }
+        else {
+            emit("@SP", "A=M-1");
+            emit("M=" + op + "M");
+        }
+    }
+
+    /**
+     * Jumps to a runtime routine, with the address to come back to in D.
+     * Every routine leaves its result in D.
+     */
+    private void writeJump(String routine) {
+        String returnLabel = toSymbol(functionName != null ? functionName : "") + "$ret." + returnCount++;
+
+        emit("@" + returnLabel, "D=A");
+        emit("@" + routine, "0;JMP");
+        emitLabel(returnLabel);
+
+        topInD = true;
+    }
+    // endregion
+
+    // region Program flow
+    private String getLabelSymbol(String label) {
+        return toSymbol((functionName != null ? functionName : "") + "$" + label);
+    }
+
+    @Override
+    public void writeLabel(String label) {
+        spill();
+        emitLabel(getLabelSymbol(label));
+    }
+
+    @Override
+    public void writeGoto(String label) {
+        spill();
+        emit("@" + getLabelSymbol(label), "0;JMP");
+    }
+
+    @Override
+    public void writeIf(String label) {
+        takeTop();
+        emit("@" + getLabelSymbol(label), "D;JNE");
+        topInD = false;
+    }
+    // endregion
+
+    // region Functions
+    @Override
+    public void writeFunction(String name, int nLocals) {
+        spill();
+
+        functionName = name;
+        if(fileName == null) {
+            fileName = name.substring(0, Math.max(0, name.indexOf('.')));
+        }
+        emitLabel(toSymbol(name));
+
+        if(nLocals > 0) {
+            emit("@SP", "A=M");
+            for(int i = 0; i < nLocals; i++) {
+                emit("M=0");
+                if(i < nLocals - 1) {
+                    emit("A=A+1");
+                }
+            }
+            emit("D=A+1");
+            emit("@SP", "M=D");
+        }
+    }
+
+    /**
+     * The arguments have to be in memory, since they're going to become
+     * the callee's argument segment.
+     */
+    @Override
+    public void writeCall(String name, int nArgs) {
+        spill();
+
+        emit("@" + toSymbol(name), "D=A");
+        emit("@R13", "M=D");
+        if(nArgs <= 1) {
+            emit("@R14", "M=" + nArgs);
+        }
+        else {
+            emit("@" + nArgs, "D=A");
+            emit("@R14", "M=D");
+        }
+
+        writeJump(CALL);
+    }
+
+    @Override
+    public void writeReturn() {
+        takeTop();
+        emit("@" + RETURN, "0;JMP");
+        topInD = false;
+    }
+    // endregion
+
+    // region Runtime
+    /**
+     * Writes the routines that everything else jumps to. These need to be
+     * in every program exactly once.
+     * @param bootstrap If set, this also sets up the stack and calls Sys.init.
+     *                  Otherwise, the routines are just jumped over.
+     */
+    public void writeRuntime(boolean bootstrap) {
+        spill();
+
+        if(bootstrap) {
+            emit("@256", "D=A");
+            emit("@SP", "M=D");
+            writeCall("Sys.init", 0);
+            topInD = false;
+
+            // Sys.init should never return, but if it does, this stops us
+            // from running straight into the routines below.
+            emitLabel("__HALT");
+            emit("@__HALT", "0;JMP");
+        }
+        else {
+            emit("@__START", "0;JMP");
+        }
+
+        // Call, with the function's address in R13, the number of arguments
+        // in R14 and the return address in D. This saves the caller's frame,
+        // points ARG at the arguments and LCL at the new frame.
+        emitLabel(CALL);
+        emit("@SP", "AM=M+1");
+        emit("A=A-1", "M=D");
+        for(String pointer : new String[] { "LCL", "ARG", "THIS", "THAT" }) {
+            emit("@" + pointer, "D=M");
+            emit("@SP", "AM=M+1");
+            emit("A=A-1", "M=D");
+        }
+        emit("@R14", "D=M");
+        emit("@5", "D=D+A");
+        emit("@SP", "D=M-D");
+        emit("@ARG", "M=D");
+        emit("@SP", "D=M");
+        emit("@LCL", "M=D");
+        emit("@R13", "A=M");
+        emit("0;JMP");
+
+        // Return, with the return value in D. Instead of writing the value
+        // where the arguments started, it's left in D, so the caller carries
+        // on with it as the top of the stack.
+        emitLabel(RETURN);
+        emit("@R13", "M=D");
+        emit("@LCL", "D=M");
+        emit("@R14", "M=D");
+        emit("@5", "A=D-A");
+        emit("D=M");
+        emit("@R15", "M=D");
+        emit("@ARG", "D=M");
+        emit("@SP", "M=D");
+        for(String pointer : new String[] { "THAT", "THIS", "ARG", "LCL" }) {
+            emit("@R14", "AM=M-1");
+            emit("D=M");
+            emit("@" + pointer, "M=D");
+        }
+        emit("@R13", "D=M");
+        emit("@R15", "A=M");
+        emit("0;JMP");
+
+        // x = y, with x - y in R13. Since everything wraps around, x - y is
+        // only ever 0 when they're equal.
+        emitLabel(EQ);
+        emit("@R15", "M=D");
+        emit("@R13", "D=M");
+        emit("@" + TRUE, "D;JEQ");
+        emitLabel(FALSE);
+        emit("D=0");
+        emit("@R15", "A=M");
+        emit("0;JMP");
+        emitLabel(TRUE);
+        emit("D=-1");
+        emit("@R15", "A=M");
+        emit("0;JMP");
+
+        // x < y, with x in R13 and y in R14. Just doing x - y can overflow
+        // when the signs are different, so that case is checked first.
+        emitLabel(LT);
+        emit("@R15", "M=D");
+        emit("@R13", "D=M");
+        emit("@__LT_NEGATIVE", "D;JLT");
+        emit("@R14", "D=M");
+        emit("@" + FALSE, "D;JLT");
+        emit("@__LT_SAME_SIGN", "0;JMP");
+        emitLabel("__LT_NEGATIVE");
+        emit("@R14", "D=M");
+        emit("@" + TRUE, "D;JGE");
+        emitLabel("__LT_SAME_SIGN");
+        emit("@R14", "D=M");
+        emit("@R13", "D=M-D");
+        emit("@" + TRUE, "D;JLT");
+        emit("@" + FALSE, "0;JMP");
+
+        if(!bootstrap) {
+            emitLabel("__START");
+        }
+    }
+    // endregion
+}
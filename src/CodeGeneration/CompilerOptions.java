@@ -0,0 +1,201 @@
+package CodeGeneration;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.Optimization.Inliner;
+
+/**
+ * Everything that changes what code the compiler generates. By default,
+ * nothing is turned on, so the output matches a plain textbook compiler.
+ */
+public class CompilerOptions {
+
+    /**
+     * Clean up the generated VM code with the peephole optimizer.
+     */
+    private boolean peephole = false;
+
+    /**
+     * Work out constant parts of expressions ahead of time, and replace
+     * multiplying by small constants with adds.
+     */
+    private boolean constantFolding = false;
+
+    /**
+     * Build each string literal once, into a static variable, instead of
+     * every time it's used. This isn't part of -O, since every use of a
+     * literal ends up sharing one String.
+     */
+    private boolean stringPooling = false;
+
+    /**
+     * Leave out statements that can never run (like anything after a
+     * return), branches on a constant condition, and labels nothing jumps to.
+     */
+    private boolean deadCodeElimination = false;
+
+    /**
+     * Don't save and restore THIS around calls to other objects' methods.
+     * The VM's call and return already do that, so it's just extra work.
+     */
+    private boolean leanCalls = false;
+
+    /**
+     * Let locals that are never needed at the same time share a slot, and
+     * move locals that never have to survive a call into temps.
+     */
+    private boolean localPacking = false;
+
+    /**
+     * Copy small leaf subroutines into their callers instead of calling
+     * them. This needs the whole program, so it only does anything when a
+     * directory is compiled (or run). The budget is the most instructions
+     * a subroutine can have and still get copied.
+     */
+    private boolean inlining = false;
+    private int inlineBudget = Inliner.DEFAULT_BUDGET;
+
+    public CompilerOptions() {
+
+    }
+
+    /**
+     * @return Options with every optimization turned on.
+     */
+    public static CompilerOptions optimized() {
+        CompilerOptions options = new CompilerOptions();
+        options.applyFlag("-O");
+
+        return options;
+    }
+
+    /**
+     * Turns on whatever a command line flag asks for.
+     * @return False if the flag isn't one of ours.
+     */
+    public boolean applyFlag(String flag) {
+        switch(flag) {
+            case "-O":
+            case "--optimize":
+                setPeephole(true);
+                setConstantFolding(true);
+                setDeadCodeElimination(true);
+                setLeanCalls(true);
+                setLocalPacking(true);
+                return true;
+
+            case "--peephole":
+                setPeephole(true);
+                return true;
+
+            case "--fold":
+                setConstantFolding(true);
+                return true;
+
+            case "--dead-code":
+                setDeadCodeElimination(true);
+                return true;
+
+            case "--lean-calls":
+                setLeanCalls(true);
+                return true;
+
+            case "--pack-locals":
+                setLocalPacking(true);
+                return true;
+
+            case "--inline":
+                setInlining(true);
+                return true;
+
+            case "--pool-strings":
+                setStringPooling(true);
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return A short string that's different for any two sets of options
+     *         that could give different output. Anything new that changes
+     *         the generated code needs to show up in here, or the compile
+     *         cache will happily hand back code built with the wrong options.
+     */
+    public String getFingerprint() {
+        return "peephole=" + peephole +
+               ";fold=" + constantFolding +
+               ";strings=" + stringPooling +
+               ";dead=" + deadCodeElimination +
+               ";lean=" + leanCalls +
+               ";locals=" + localPacking +
+               ";inline=" + (inlining ? inlineBudget : 0);
+    }
+
+    public boolean isPeephole() {
+        return peephole;
+    }
+
+    public void setPeephole(boolean peephole) {
+        this.peephole = peephole;
+    }
+
+    public boolean isConstantFolding() {
+        return constantFolding;
+    }
+
+    public void setConstantFolding(boolean constantFolding) {
+        this.constantFolding = constantFolding;
+    }
+
+    public boolean isStringPooling() {
+        return stringPooling;
+    }
+
+    public void setStringPooling(boolean stringPooling) {
+        this.stringPooling = stringPooling;
+    }
+
+    public boolean isDeadCodeElimination() {
+        return deadCodeElimination;
+    }
+
+    public void setDeadCodeElimination(boolean deadCodeElimination) {
+        this.deadCodeElimination = deadCodeElimination;
+    }
+
+    public boolean isLeanCalls() {
+        return leanCalls;
+    }
+
+    public void setLeanCalls(boolean leanCalls) {
+        this.leanCalls = leanCalls;
+    }
+
+    public boolean isLocalPacking() {
+        return localPacking;
+    }
+
+    public void setLocalPacking(boolean localPacking) {
+        this.localPacking = localPacking;
+    }
+
+    public boolean isInlining() {
+        return inlining;
+    }
+
+    public void setInlining(boolean inlining) {
+        this.inlining = inlining;
+    }
+
+    public int getInlineBudget() {
+        return inlineBudget;
+    }
+
+    public void setInlineBudget(int inlineBudget) {
+        this.inlineBudget = inlineBudget;
+    }
+}
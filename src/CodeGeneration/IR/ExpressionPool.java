@@ -0,0 +1,253 @@
+package CodeGeneration.IR;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.Segment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Holds expressions as trees, so that they can be looked at (and changed)
+ * before any VM code gets written for them. Rather than having an object
+ * for every node, a node is just an index into a handful of arrays, and
+ * nodes get handed out from the end. Once an expression is written, it can
+ * all be thrown away in one go with release().
+ *
+ * What each array means depends on the kind of node:
+ *  - CONSTANT: value is the (16-bit) value
+ *  - VARIABLE: left is the segment's ordinal, value is the index
+ *  - CODE:     value is which buffer holds the code. This is used for
+ *              anything that can't be reasoned about (calls, array
+ *              accesses, strings), which gets compiled ahead of time.
+ *  - UNARY:    value is the command's ordinal, left is the operand
+ *  - BINARY:   value is the command's ordinal, left and right are the operands
+ */
+public class ExpressionPool {
+    public static final int CONSTANT = 0;
+    public static final int VARIABLE = 1;
+    public static final int CODE = 2;
+    public static final int UNARY = 3;
+    public static final int BINARY = 4;
+
+    private static final Segment[] SEGMENTS = Segment.values();
+    private static final ArithmeticCommand[] COMMANDS = ArithmeticCommand.values();
+
+    private int[] kinds = new int[64];
+    private int[] values = new int[64];
+    private int[] lefts = new int[64];
+    private int[] rights = new int[64];
+    private int size = 0;
+
+    /**
+     * Buffers for CODE nodes. These get reused after a release(), so a
+     * whole file only ever needs as many as its most complicated expression.
+     */
+    private List<InstructionBuffer> buffers = new ArrayList<>();
+    private int buffersUsed = 0;
+
+    // region Creating nodes
+    private int add(int kind, int value, int left, int right) {
+        if(size == kinds.length) {
+            int newLength = size * 2;
+            kinds = Arrays.copyOf(kinds, newLength);
+            values = Arrays.copyOf(values, newLength);
+            lefts = Arrays.copyOf(lefts, newLength);
+            rights = Arrays.copyOf(rights, newLength);
+        }
+
+        kinds[size] = kind;
+        values[size] = value;
+        lefts[size] = left;
+        rights[size] = right;
+        return size++;
+    }
+
+    /**
+     * @param value Gets cut down to 16 bits, the same as the Hack machine would.
+     */
+    public int constant(int value) {
+        return add(CONSTANT, (short) value, -1, -1);
+    }
+
+    public int variable(Segment seg, int index) {
+        return add(VARIABLE, index, seg.ordinal(), -1);
+    }
+
+    /**
+     * Makes a node for code which gets compiled ahead of time. Whatever
+     * gets written to getCode(node) is what this node stands for.
+     */
+    public int code() {
+        if(buffersUsed == buffers.size()) {
+            buffers.add(new InstructionBuffer());
+        }
+
+        InstructionBuffer buffer = buffers.get(buffersUsed);
+        buffer.clear();
+
+        return add(CODE, buffersUsed++, -1, -1);
+    }
+
+    public int unary(ArithmeticCommand cmd, int operand) {
+        return add(UNARY, cmd.ordinal(), operand, -1);
+    }
+
+    public int binary(ArithmeticCommand cmd, int left, int right) {
+        return add(BINARY, cmd.ordinal(), left, right);
+    }
+    // endregion
+
+    // region Releasing nodes
+    /**
+     * @return Something to pass to release() later on.
+     */
+    public int mark() {
+        return size;
+    }
+
+    /**
+     * Throws away every node made since mark() was called.
+     */
+    public void release(int mark) {
+        for(int node = size - 1; node >= mark; node--) {
+            if(kinds[node] == CODE) {
+                buffersUsed--;
+            }
+        }
+
+        size = mark;
+    }
+    // endregion
+
+    // region Getters
+    public int getKind(int node) {
+        return kinds[node];
+    }
+
+    public int getValue(int node) {
+        return values[node];
+    }
+
+    public int getLeft(int node) {
+        return lefts[node];
+    }
+
+    public int getRight(int node) {
+        return rights[node];
+    }
+
+    public boolean isConstant(int node) {
+        return kinds[node] == CONSTANT;
+    }
+
+    public boolean isConstant(int node, int value) {
+        return kinds[node] == CONSTANT && values[node] == value;
+    }
+
+    public Segment getSegment(int node) {
+        return SEGMENTS[lefts[node]];
+    }
+
+    public ArithmeticCommand getCommand(int node) {
+        return COMMANDS[values[node]];
+    }
+
+    public InstructionBuffer getCode(int node) {
+        return buffers.get(values[node]);
+    }
+
+    /**
+     * @return True if evaluating the node can't change anything. In other
+     *         words, it doesn't call anything, so skipping it is harmless.
+     */
+    public boolean isPure(int node) {
+        switch(kinds[node]) {
+            case CONSTANT:
+            case VARIABLE:
+                return true;
+
+            case CODE:
+                return !getCode(node).hasCalls();
+
+            case UNARY:
+                return isPure(lefts[node]);
+
+            default:
+                return isPure(lefts[node]) && isPure(rights[node]);
+        }
+    }
+    // endregion
+
+    // region Writing
+    /**
+     * Writes a constant. VM code can only push non-negative constants, so
+     * negative ones get built out of positive ones.
+     */
+    public static void writeConstant(int value, CommandWriter out) {
+        if(value >= 0) {
+            out.writePush(Segment.CONSTANT, value);
+        }
+        else if(value == Short.MIN_VALUE) {
+            // -32768 can't be negated in 16 bits, but it's also ~32767.
+            out.writePush(Segment.CONSTANT, Short.MAX_VALUE);
+            out.writeArithmetic(ArithmeticCommand.NOT);
+        }
+        else {
+            out.writePush(Segment.CONSTANT, -value);
+            out.writeArithmetic(ArithmeticCommand.NEG);
+        }
+    }
+
+    /**
+     * Writes the node exactly as it stands, without trying anything clever.
+     */
+    public void writeTo(int node, CommandWriter out) {
+        switch(kinds[node]) {
+            case CONSTANT:
+                writeConstant(values[node], out);
+                break;
+
+            case VARIABLE:
+                out.writePush(getSegment(node), values[node]);
+                break;
+
+            case CODE:
+                getCode(node).writeTo(out);
+                break;
+
+            case UNARY:
+                writeTo(lefts[node], out);
+                out.writeArithmetic(getCommand(node));
+                break;
+
+            case BINARY:
+                writeTo(lefts[node], out);
+                writeTo(rights[node], out);
+                writeOperator(getCommand(node), out);
+                break;
+        }
+    }
+
+    /**
+     * Writes a binary operator, assuming both operands are on the stack.
+     */
+    public static void writeOperator(ArithmeticCommand cmd, CommandWriter out) {
+        if(cmd == ArithmeticCommand.MULTIPLY || cmd == ArithmeticCommand.DIVIDE) {
+            // Both of these commands are implemented as part of the OS, rather
+            // than part of the base language. Thus, we'll just insert the
+            // function call here.
+            out.writeCall("Math." + cmd.getVMName(), 2);
+        }
+        else {
+            out.writeArithmetic(cmd);
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,157 @@
+package CodeGeneration.IR;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+/**
+ * Every kind of node in a SyntaxTree. Each one notes what its token is,
+ * what its value means (if anything), and what children it has, in order.
+ * Square brackets mean the child might not be there.
+ */
+public enum NodeKind {
+    // region Declarations
+    /**
+     * Token: class name. Children: CLASS_VAR_DEC, SUBROUTINE and UNSUPPORTED,
+     * in the order they showed up.
+     */
+    CLASS,
+
+    /**
+     * Token: 'static' or 'field'. Children: TYPE, and then a NAME per variable.
+     */
+    CLASS_VAR_DEC,
+
+    /**
+     * Token: something in the class body that we skipped over.
+     */
+    UNSUPPORTED,
+
+    /**
+     * Token: 'constructor', 'function' or 'method'.
+     * Children: TYPE (the return type), NAME, PARAMETER_LIST, VAR_DEC..., STATEMENTS
+     */
+    SUBROUTINE,
+
+    /**
+     * Children: PARAMETER...
+     */
+    PARAMETER_LIST,
+
+    /**
+     * Children: TYPE, NAME
+     */
+    PARAMETER,
+
+    /**
+     * Token: 'var'. Children: TYPE, and then a NAME per variable.
+     */
+    VAR_DEC,
+
+    /**
+     * Token: a type keyword ('int', 'void' and so on), or a class name.
+     */
+    TYPE,
+
+    /**
+     * Token: an identifier.
+     */
+    NAME,
+    // endregion
+
+    // region Statements
+    /**
+     * Token: 'else' if this is an else branch, otherwise nothing.
+     * Children: LET, IF, WHILE, DO and RETURN
+     */
+    STATEMENTS,
+
+    /**
+     * Token: 'let'. Value: 1 if it's storing into an array.
+     * Children: NAME, [EXPRESSION (the array index)], EXPRESSION
+     */
+    LET,
+
+    /**
+     * Token: 'if'. Children: EXPRESSION, STATEMENTS, [STATEMENTS (the else)]
+     */
+    IF,
+
+    /**
+     * Token: 'while'. Children: EXPRESSION, STATEMENTS
+     */
+    WHILE,
+
+    /**
+     * Token: 'do'. Children: CALL
+     */
+    DO,
+
+    /**
+     * Token: 'return'. Children: [EXPRESSION]
+     */
+    RETURN,
+    // endregion
+
+    // region Expressions
+    /**
+     * Jack has no precedence, so an expression is just a list.
+     * Children: term, and then OPERATOR, term, OPERATOR, term...
+     */
+    EXPRESSION,
+
+    /**
+     * Token: the binary operator's symbol.
+     */
+    OPERATOR,
+
+    /**
+     * Token: the int literal.
+     */
+    INT_CONSTANT,
+
+    /**
+     * Token: the string literal.
+     */
+    STRING_CONSTANT,
+
+    /**
+     * Token: 'true', 'false', 'null' or 'this'.
+     */
+    KEYWORD_CONSTANT,
+
+    /**
+     * Token: the variable's name.
+     */
+    VARIABLE,
+
+    /**
+     * Token: the array's name. Children: EXPRESSION (the index)
+     */
+    ARRAY_ACCESS,
+
+    /**
+     * Token: the subroutine's name. Value: 1 if there's a class or object
+     * name in front of it (as in "obj.name()"), which is then the first child.
+     * Children: [NAME], EXPRESSION... (the arguments)
+     */
+    CALL,
+
+    /**
+     * Token: the unary operator's symbol. Children: the term.
+     */
+    UNARY,
+
+    /**
+     * Token: '('. Children: EXPRESSION
+     */
+    PARENTHESES;
+    // endregion
+
+    /**
+     * @return True if this kind of node shows up as a term in an expression.
+     */
+    public boolean isTerm() {
+        return ordinal() >= INT_CONSTANT.ordinal();
+    }
+}
@@ -0,0 +1,178 @@
+package CodeGeneration.IR;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import SyntaxAnalysis.KeywordType;
+import SyntaxAnalysis.Tokens.IdentifierToken;
+import SyntaxAnalysis.Tokens.KeywordToken;
+import SyntaxAnalysis.Tokens.Token;
+
+import java.util.Arrays;
+
+/**
+ * The parse tree of a whole class. Just like ExpressionPool, a node is an
+ * index into a handful of arrays rather than an object of its own, so
+ * even a huge class is only a few arrays. Children are kept as a linked
+ * list: each node knows its first child and its next sibling.
+ *
+ * See NodeKind for what the token, value and children mean for each kind.
+ * Punctuation isn't kept at all, since the kind of node already says
+ * where it goes.
+ */
+public class SyntaxTree {
+    public static final int NONE = -1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private int[] kinds;
+    private int[] values;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private Token[] tokens;
+    private int size = 0;
+
+    public SyntaxTree() {
+        this(256);
+    }
+
+    public SyntaxTree(int capacity) {
+        kinds = new int[capacity];
+        values = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokens = new Token[capacity];
+    }
+
+    // region Building
+    /**
+     * Makes a node that isn't attached to anything yet.
+     */
+    public int add(NodeKind kind, Token token) {
+        if(size == kinds.length) {
+            int newLength = size * 2;
+            kinds = Arrays.copyOf(kinds, newLength);
+            values = Arrays.copyOf(values, newLength);
+            firstChildren = Arrays.copyOf(firstChildren, newLength);
+            lastChildren = Arrays.copyOf(lastChildren, newLength);
+            nextSiblings = Arrays.copyOf(nextSiblings, newLength);
+            tokens = Arrays.copyOf(tokens, newLength);
+        }
+
+        kinds[size] = kind.ordinal();
+        values[size] = 0;
+        firstChildren[size] = NONE;
+        lastChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        tokens[size] = token;
+        return size++;
+    }
+
+    /**
+     * Makes a node and adds it as the last child of the parent.
+     */
+    public int addChild(int parent, NodeKind kind, Token token) {
+        int node = add(kind, token);
+        append(parent, node);
+        return node;
+    }
+
+    /**
+     * Adds an existing node as the last child of the parent.
+     */
+    public void append(int parent, int child) {
+        if(firstChildren[parent] == NONE) {
+            firstChildren[parent] = child;
+        }
+        else {
+            nextSiblings[lastChildren[parent]] = child;
+        }
+        lastChildren[parent] = child;
+    }
+
+    public void setValue(int node, int value) {
+        values[node] = value;
+    }
+    // endregion
+
+    // region Getters
+    /**
+     * @return The class node. Everything else is under this.
+     */
+    public int getRoot() {
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NodeKind getKind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public boolean is(int node, NodeKind kind) {
+        return node != NONE && kinds[node] == kind.ordinal();
+    }
+
+    public int getValue(int node) {
+        return values[node];
+    }
+
+    public Token getToken(int node) {
+        return tokens[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * @return The nth child (starting at 0), or NONE if there aren't that many.
+     */
+    public int getChild(int node, int n) {
+        int child = firstChildren[node];
+        for(int i = 0; i < n && child != NONE; i++) {
+            child = nextSiblings[child];
+        }
+
+        return child;
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+
+        return count;
+    }
+
+    public IdentifierToken getIdentifier(int node) {
+        return (IdentifierToken) tokens[node];
+    }
+
+    public KeywordType getKeyword(int node) {
+        return ((KeywordToken) tokens[node]).getValue();
+    }
+
+    /**
+     * @return The name of a TYPE node's type, as it would be written in Jack.
+     */
+    public String getTypeName(int node) {
+        Token token = tokens[node];
+        if(token instanceof KeywordToken) {
+            return ((KeywordToken) token).getValue().toString().toLowerCase();
+        }
+
+        return ((IdentifierToken) token).getValue();
+    }
+    // endregion
+}
@@ -4,6 +4,7 @@ package CodeGeneration;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import SyntaxAnalysis.Tokens.SourcePosition;
 import SyntaxAnalysis.Tokens.Token;
 
 import java.util.InputMismatchException;
@@ -11,6 +12,20 @@ import java.util.InputMismatchException;
 public class IllegalSyntaxException extends InputMismatchException {
     private int lineNumber;
 
+    /**
+     * Where on the line the problem is, counting from 1. This is 0 if we
+     * don't know.
+     */
+    private int column;
+
+    /**
+     * The exact bytes that are the problem, if we know them. The length is
+     * 0 if we don't.
+     */
+    private int offset;
+    private int length;
+    private String description;
+
     public IllegalSyntaxException() {
         this(-1);
     }
@@ -20,16 +35,66 @@ public class IllegalSyntaxException extends InputMismatchException {
     }
 
     public IllegalSyntaxException(int lineNumber, String s) {
-        super("(Line " + lineNumber + ") " + s);
+        this(lineNumber, 0, s);
+    }
+
+    public IllegalSyntaxException(int lineNumber, int column, String s) {
+        this(lineNumber, column, s, "(Line " + lineNumber + (column > 0 ? ", column " + column : "") + ") " + s);
+    }
+
+    /**
+     * For when the message needs to be something other than the position
+     * followed by the description.
+     */
+    protected IllegalSyntaxException(int lineNumber, int column, String description, String message) {
+        super(message);
 
         this.lineNumber = lineNumber;
+        this.column = column;
+        this.description = description;
     }
 
     public IllegalSyntaxException(Token t, String s) {
-        this(t.getLineNumber(), s);
+        this(t.getPosition(), t.getColumn(), s);
+    }
+
+    /**
+     * This is a factory instead of a constructor so that it can't get mixed
+     * up with the line number one.
+     * @param position A packed position, see SourcePosition.
+     * @param column Where it is on the line (see LineMap), or 0 if we don't know.
+     */
+    public static IllegalSyntaxException at(long position, int column, String s) {
+        return new IllegalSyntaxException(position, column, s);
+    }
+
+    private IllegalSyntaxException(long position, int column, String s) {
+        this(SourcePosition.getLine(position), column, s);
+
+        this.offset = SourcePosition.getOffset(position);
+        this.length = SourcePosition.getLength(position);
     }
 
     public int getLineNumber() {
         return lineNumber;
     }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The message without the position in front of it.
+     */
+    public String getDescription() {
+        return description;
+    }
 }
@@ -0,0 +1,375 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IR.ExpressionPool;
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.Segment;
+
+import static CodeGeneration.IR.ExpressionPool.*;
+
+/**
+ * Simplifies expression trees before they get written, and then writes
+ * them in a way that avoids the OS's multiply where it can.
+ *
+ * Everything here follows the Hack machine's rules: values are 16 bits and
+ * wrap around on overflow, and division truncates towards zero. Anything
+ * whose answer we can't be sure of (dividing by zero, or -32768 / -1) is
+ * left for the program to do at runtime.
+ *
+ * Simplifications:
+ *  - Operators whose operands are both constants get worked out.
+ *  - x + 0, x - 0, x | 0, x * 1, x / 1, x & -1 (and the mirrored forms)
+ *    become x.
+ *  - 0 - x, x * -1 and x / -1 become -x.
+ *  - x * 0 and x & 0 become 0. If x calls something, it still gets called,
+ *    but its result is thrown away.
+ *  - (x + a) + b and (x * a) * b become x + (a + b) and x * (a * b).
+ *  - --x and ~~x become x.
+ *
+ * Multiplying by a small constant is written as a chain of adds. Temp 1
+ * is used to hold onto whatever's being doubled.
+ */
+public class ExpressionOptimizer {
+
+    /**
+     * Longest chain of adds we'll write instead of calling Math.multiply.
+     * Math.multiply runs through its loop 16 times, so even quite a long
+     * chain is a lot cheaper.
+     */
+    static final int MAX_CHAIN_LENGTH = 24;
+
+    /**
+     * Returned by fold() when the answer can't be worked out ahead of time.
+     * This is outside of 16 bits, so it can never be a real answer.
+     */
+    static final int NOT_FOLDABLE = Integer.MIN_VALUE;
+
+    private ExpressionPool pool;
+
+    public ExpressionOptimizer(ExpressionPool pool) {
+        this.pool = pool;
+    }
+
+    // region Simplifying
+    /**
+     * Simplifies the tree under the node. The original nodes are left alone;
+     * anything that changes gets a new node.
+     * @return The simplified version of the node (which might be the same node).
+     */
+    public int optimize(int node) {
+        switch(pool.getKind(node)) {
+            case UNARY:
+                return simplifyUnary(node, pool.getCommand(node), optimize(pool.getLeft(node)));
+
+            case BINARY:
+                return simplifyBinary(node, pool.getCommand(node),
+                                      optimize(pool.getLeft(node)), optimize(pool.getRight(node)));
+
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * @param node The original node, or -1 if there isn't one.
+     */
+    private int simplifyUnary(int node, ArithmeticCommand cmd, int operand) {
+        if(pool.isConstant(operand)) {
+            int value = pool.getValue(operand);
+            return pool.constant(cmd == ArithmeticCommand.NEG ? -value : ~value);
+        }
+
+        // --x or ~~x
+        if(pool.getKind(operand) == UNARY && pool.getCommand(operand) == cmd) {
+            return pool.getLeft(operand);
+        }
+
+        if(node >= 0 && pool.getLeft(node) == operand) {
+            return node;
+        }
+        return pool.unary(cmd, operand);
+    }
+
+    /**
+     * @param node The original node, or -1 if there isn't one.
+     */
+    private int simplifyBinary(int node, ArithmeticCommand cmd, int left, int right) {
+        boolean leftConst = pool.isConstant(left);
+        boolean rightConst = pool.isConstant(right);
+
+        if(leftConst && rightConst) {
+            int value = fold(cmd, pool.getValue(left), pool.getValue(right));
+            if(value != NOT_FOLDABLE) {
+                return pool.constant(value);
+            }
+        }
+
+        if(rightConst) {
+            int b = pool.getValue(right);
+
+            // (x + a) + b, (x - a) - b and so on. Wrapping around doesn't
+            // change the answer, so these can be combined.
+            if(pool.getKind(left) == BINARY && pool.isConstant(pool.getRight(left))) {
+                ArithmeticCommand leftCmd = pool.getCommand(left);
+                int a = pool.getValue(pool.getRight(left));
+
+                if(isAddOrSub(cmd) && isAddOrSub(leftCmd)) {
+                    int total = (leftCmd == ArithmeticCommand.ADD ? a : -a) +
+                                (cmd == ArithmeticCommand.ADD ? b : -b);
+                    return simplifyBinary(-1, ArithmeticCommand.ADD, pool.getLeft(left), pool.constant(total));
+                }
+                if(cmd == ArithmeticCommand.MULTIPLY && leftCmd == ArithmeticCommand.MULTIPLY) {
+                    return simplifyBinary(-1, cmd, pool.getLeft(left), pool.constant(a * b));
+                }
+            }
+
+            switch(cmd) {
+                case ADD:
+                case SUB:
+                case OR:
+                    if(b == 0) {
+                        return left;
+                    }
+                    break;
+
+                case AND:
+                    if(b == -1) {
+                        return left;
+                    }
+                    if(b == 0) {
+                        return zero(left, right);
+                    }
+                    break;
+
+                case MULTIPLY:
+                case DIVIDE:
+                    if(b == 1) {
+                        return left;
+                    }
+                    if(b == -1) {
+                        // -32768 / -1 would fold to -32768 as -x, but fold()
+                        // leaves it for runtime, so this has to as well.
+                        if(cmd == ArithmeticCommand.DIVIDE && pool.isConstant(left, Short.MIN_VALUE)) {
+                            break;
+                        }
+                        return simplifyUnary(-1, ArithmeticCommand.NEG, left);
+                    }
+                    if(b == 0 && cmd == ArithmeticCommand.MULTIPLY) {
+                        return zero(left, right);
+                    }
+                    break;
+            }
+        }
+
+        if(leftConst) {
+            int a = pool.getValue(left);
+
+            switch(cmd) {
+                case ADD:
+                case OR:
+                    if(a == 0) {
+                        return right;
+                    }
+                    break;
+
+                case SUB:
+                    if(a == 0) {
+                        return simplifyUnary(-1, ArithmeticCommand.NEG, right);
+                    }
+                    break;
+
+                case AND:
+                    if(a == -1) {
+                        return right;
+                    }
+                    if(a == 0) {
+                        return zero(right, left);
+                    }
+                    break;
+
+                case MULTIPLY:
+                    if(a == 1) {
+                        return right;
+                    }
+                    if(a == -1) {
+                        return simplifyUnary(-1, ArithmeticCommand.NEG, right);
+                    }
+                    if(a == 0) {
+                        return zero(right, left);
+                    }
+                    break;
+            }
+        }
+
+        if(node >= 0 && pool.getLeft(node) == left && pool.getRight(node) == right) {
+            return node;
+        }
+        return pool.binary(cmd, left, right);
+    }
+
+    /**
+     * Something which always comes out as 0. If the other operand can't
+     * simply be skipped, it still gets run, and is then and-ed with 0.
+     */
+    private int zero(int operand, int zero) {
+        if(pool.isPure(operand)) {
+            return pool.constant(0);
+        }
+
+        return pool.binary(ArithmeticCommand.AND, operand, zero);
+    }
+
+    private static boolean isAddOrSub(ArithmeticCommand cmd) {
+        return cmd == ArithmeticCommand.ADD || cmd == ArithmeticCommand.SUB;
+    }
+
+    /**
+     * Works out a binary operator the same way the Hack machine (and the
+     * OS) would.
+     * @return The answer, or NOT_FOLDABLE.
+     */
+    static int fold(ArithmeticCommand cmd, int a, int b) {
+        switch(cmd) {
+            case ADD:      return (short) (a + b);
+            case SUB:      return (short) (a - b);
+            case AND:      return a & b;
+            case OR:       return a | b;
+            case EQ:       return (a == b ? -1 : 0);
+            case GT:       return (a > b ? -1 : 0);
+            case LT:       return (a < b ? -1 : 0);
+            case MULTIPLY: return (short) (a * b);
+
+            case DIVIDE:
+                // Dividing by zero is an error we want the program to hit at
+                // runtime, and -32768 / -1 doesn't fit in 16 bits.
+                if(b == 0 || (a == Short.MIN_VALUE && b == -1)) {
+                    return NOT_FOLDABLE;
+                }
+                return (short) (a / b);
+
+            default:
+                return NOT_FOLDABLE;
+        }
+    }
+    // endregion
+
+    // region Writing
+    public void write(int node, CommandWriter out) {
+        switch(pool.getKind(node)) {
+            case UNARY:
+                write(pool.getLeft(node), out);
+                out.writeArithmetic(pool.getCommand(node));
+                break;
+
+            case BINARY:
+                int left = pool.getLeft(node);
+                int right = pool.getRight(node);
+                ArithmeticCommand cmd = pool.getCommand(node);
+
+                if(cmd == ArithmeticCommand.MULTIPLY) {
+                    if(pool.isConstant(right) && writeMultiply(left, pool.getValue(right), out)) {
+                        break;
+                    }
+                    if(pool.isConstant(left) && writeMultiply(right, pool.getValue(left), out)) {
+                        break;
+                    }
+                }
+
+                write(left, out);
+                write(right, out);
+                ExpressionPool.writeOperator(cmd, out);
+                break;
+
+            default:
+                pool.writeTo(node, out);
+        }
+    }
+
+    /**
+     * Writes x * factor as a chain of adds, going through the bits of the
+     * factor from the bottom up. The stack holds the total so far, and
+     * x * 2^i is kept either in x itself (if it's a variable) or in temp 1.
+     *
+     * @return False if the chain would be too long, in which case nothing
+     *         was written.
+     */
+    private boolean writeMultiply(int x, int factor, CommandWriter out) {
+        boolean isVariable = pool.getKind(x) == VARIABLE;
+
+        int length = chainLength(factor, isVariable);
+        if(length < 0 || length > MAX_CHAIN_LENGTH) {
+            return false;
+        }
+
+        Segment seg;
+        int index;
+        if(isVariable) {
+            seg = pool.getSegment(x);
+            index = pool.getValue(x);
+        }
+        else {
+            write(x, out);
+            out.writePop(Segment.TEMP, Segment.MULTIPLY_TEMP);
+            seg = Segment.TEMP;
+            index = Segment.MULTIPLY_TEMP;
+        }
+
+        int n = Math.abs(factor);
+        int top = 31 - Integer.numberOfLeadingZeros(n);
+        boolean first = true;
+
+        for(int i = 0; i < top; i++) {
+            if((n & (1 << i)) != 0) {
+                out.writePush(seg, index);
+                if(!first) {
+                    out.writeArithmetic(ArithmeticCommand.ADD);
+                }
+                first = false;
+            }
+
+            // Double it. The last doubling is the top bit, and is left on
+            // the stack to be added in.
+            out.writePush(seg, index);
+            out.writePush(seg, index);
+            out.writeArithmetic(ArithmeticCommand.ADD);
+            if(i < top - 1) {
+                out.writePop(Segment.TEMP, Segment.MULTIPLY_TEMP);
+                seg = Segment.TEMP;
+                index = Segment.MULTIPLY_TEMP;
+            }
+        }
+
+        if(!first) {
+            out.writeArithmetic(ArithmeticCommand.ADD);
+        }
+        if(factor < 0) {
+            out.writeArithmetic(ArithmeticCommand.NEG);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return How many commands writeMultiply() would write (not counting
+     *         x itself), or -1 if it can't handle the factor at all.
+     */
+    static int chainLength(int factor, boolean isVariable) {
+        int n = Math.abs(factor);
+        if(n < 2 || n > Short.MAX_VALUE) {
+            return -1;
+        }
+
+        int top = 31 - Integer.numberOfLeadingZeros(n);
+        int otherBits = Integer.bitCount(n) - 1;
+
+        return (isVariable ? 0 : 1)        // pop temp 1
+               + 4 * top - 1               // doublings (all but the last get popped)
+               + 2 * otherBits             // a push and an add for every other bit
+               + (factor < 0 ? 1 : 0);     // neg
+    }
+    // endregion
+}
@@ -0,0 +1,259 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Knows which functions in a program are small enough to copy straight into
+ * whoever calls them, and writes out those copies. The whole program gets
+ * compiled once without any inlining and add()ed here, and then the real
+ * compile asks canInline() at every call.
+ *
+ * Only "leaf" functions can be inlined: straight-line code, no calls, no
+ * jumps, and no statics (since those belong to whichever class the code
+ * ends up in). That's getters, setters and little bits of arithmetic, which
+ * is exactly what gets called the most. Since a leaf calls nothing, it also
+ * can't be recursive.
+ *
+ * Where things go in an inlined copy:
+ *  - The arguments and locals go in temp 2 and up. Temp 0 and temp 1 are
+ *    already used by the code generator (see Segment), so those are left
+ *    alone.
+ *  - For a method, "this" goes in pointer 1 and its fields are read through
+ *    THAT. This means THIS never changes, so the caller doesn't have to
+ *    save and restore it around the "call". THAT is fair game, since a real
+ *    call could change it too.
+ *  - The return value is left on the stack, just like a real return.
+ */
+public class Inliner {
+
+    /**
+     * How many temps we're allowed to use. See Segment for who gets which.
+     */
+    private static final int TEMP_COUNT = Segment.LAST_TEMP - Segment.FIRST_SHARED_TEMP + 1;
+
+    /**
+     * How many instructions a function can have (not counting the function
+     * line or the return) and still get inlined. A real call costs about 7
+     * VM instructions at the call site, plus the return dance for a method.
+     */
+    public static final int DEFAULT_BUDGET = 12;
+
+    private static class Candidate {
+        private final int nLocals;
+
+        /**
+         * True if the function starts with "push argument 0; pop pointer 0".
+         * That's been taken off of the body, and "this" is used as "that".
+         */
+        private final boolean method;
+        private final List<Instruction> body;
+
+        private Candidate(int nLocals, boolean method, List<Instruction> body) {
+            this.nLocals = nLocals;
+            this.method = method;
+            this.body = body;
+        }
+    }
+
+    private final int budget;
+    private final Map<String, Candidate> candidates = new HashMap<>();
+
+    public Inliner(int budget) {
+        this.budget = budget;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    // region Finding candidates
+    /**
+     * Goes through some VM code (usually one class) and remembers any
+     * function that's small and simple enough to inline.
+     */
+    public void add(InstructionBuffer code) {
+        List<Instruction> instructions = code.getInstructions();
+
+        int start = -1;
+        for(int i = 0; i <= instructions.size(); i++) {
+            if(i == instructions.size() || instructions.get(i).is(InstructionType.FUNCTION)) {
+                if(start >= 0) {
+                    addFunction(instructions.get(start), instructions.subList(start + 1, i));
+                }
+                start = i;
+            }
+        }
+    }
+
+    private void addFunction(Instruction function, List<Instruction> code) {
+        boolean method = code.size() >= 2 &&
+                         code.get(0).isPush(Segment.ARGUMENT, 0) && code.get(1).isPop(Segment.POINTER, 0);
+        List<Instruction> body = code.subList(method ? 2 : 0, code.size());
+
+        // The return has to be the last thing, and can't be anywhere else.
+        if(body.isEmpty() || !body.get(body.size() - 1).is(InstructionType.RETURN)) {
+            return;
+        }
+        body = body.subList(0, body.size() - 1);
+
+        int nLocals = function.getIndex();
+        if(body.size() + 2 * nLocals > budget) {
+            return;
+        }
+
+        for(Instruction instruction : body) {
+            if(!isInlinable(instruction, method, nLocals)) {
+                return;
+            }
+        }
+
+        candidates.put(function.getName(), new Candidate(nLocals, method, new ArrayList<>(body)));
+    }
+
+    private static boolean isInlinable(Instruction instruction, boolean method, int nLocals) {
+        switch(instruction.getType()) {
+            case PUSH:
+            case POP:
+                switch(instruction.getSegment()) {
+                    case CONSTANT:
+                        return true;
+                    case ARGUMENT:
+                        // Jack can't assign to "this", but if something did,
+                        // it'd move where the fields are in our copy.
+                        return !(method && instruction.is(InstructionType.POP) && instruction.getIndex() == 0);
+                    case LOCAL:
+                        return instruction.getIndex() < nLocals;
+                    case THIS:
+                        return method;
+                    default:
+                        // Statics belong to the class, THAT and pointer are
+                        // what we're using for "this", and the temps are ours.
+                        return false;
+                }
+
+            case ARITHMETIC:
+                // These two turn into calls to Math, which might have inlined
+                // code of its own using the same temps.
+                return !instruction.is(ArithmeticCommand.MULTIPLY) && !instruction.is(ArithmeticCommand.DIVIDE);
+
+            default:
+                return false;
+        }
+    }
+    // endregion
+
+    // region Inlining
+    /**
+     * @return True if a call to the function with this many arguments can be
+     *         swapped for writeInline().
+     */
+    public boolean canInline(String name, int nArgs) {
+        Candidate candidate = candidates.get(name);
+        if(candidate == null || (candidate.method && nArgs < 1)) {
+            return false;
+        }
+
+        return getArgumentTemps(candidate, nArgs) + candidate.nLocals <= TEMP_COUNT &&
+               usesOnlyArguments(candidate, nArgs);
+    }
+
+    /**
+     * Writes the function's body instead of a call. The arguments need to
+     * already be on the stack, same as for a call, and afterwards the return
+     * value is on the stack.
+     */
+    public void writeInline(String name, int nArgs, CommandWriter out) {
+        Candidate candidate = candidates.get(name);
+
+        // The last argument is on top, so they come off backwards.
+        for(int arg = nArgs - 1; arg >= 0; arg--) {
+            Instruction place = getArgument(candidate, arg);
+            out.writePop(place.getSegment(), place.getIndex());
+        }
+
+        // Locals always start at 0.
+        int firstLocal = Segment.FIRST_SHARED_TEMP + getArgumentTemps(candidate, nArgs);
+        for(int local = 0; local < candidate.nLocals; local++) {
+            out.writePush(Segment.CONSTANT, 0);
+            out.writePop(Segment.TEMP, firstLocal + local);
+        }
+
+        for(Instruction instruction : candidate.body) {
+            if(!instruction.is(InstructionType.PUSH) && !instruction.is(InstructionType.POP)) {
+                instruction.writeTo(out);
+                continue;
+            }
+
+            Segment seg = instruction.getSegment();
+            int index = instruction.getIndex();
+            switch(seg) {
+                case ARGUMENT:
+                    Instruction place = getArgument(candidate, index);
+                    seg = place.getSegment();
+                    index = place.getIndex();
+                    break;
+                case LOCAL:
+                    seg = Segment.TEMP;
+                    index += firstLocal;
+                    break;
+                case THIS:
+                    seg = Segment.THAT;
+                    break;
+            }
+
+            if(instruction.is(InstructionType.PUSH)) {
+                out.writePush(seg, index);
+            }
+            else {
+                out.writePop(seg, index);
+            }
+        }
+    }
+
+    /**
+     * @return Where an argument lives in the inlined copy. This is only an
+     *         Instruction because that's a handy way to hold a segment and
+     *         an index together.
+     */
+    private static Instruction getArgument(Candidate candidate, int arg) {
+        if(candidate.method) {
+            return (arg == 0 ? Instruction.push(Segment.POINTER, 1)
+                             : Instruction.push(Segment.TEMP, Segment.FIRST_SHARED_TEMP + arg - 1));
+        }
+
+        return Instruction.push(Segment.TEMP, Segment.FIRST_SHARED_TEMP + arg);
+    }
+
+    private static int getArgumentTemps(Candidate candidate, int nArgs) {
+        return (candidate.method ? nArgs - 1 : nArgs);
+    }
+
+    /**
+     * Makes sure the body doesn't use an argument that the call doesn't
+     * give it (which would've read garbage off the stack anyway).
+     */
+    private static boolean usesOnlyArguments(Candidate candidate, int nArgs) {
+        for(Instruction instruction : candidate.body) {
+            if((instruction.is(InstructionType.PUSH) || instruction.is(InstructionType.POP)) &&
+               instruction.getSegment() == Segment.ARGUMENT && instruction.getIndex() >= nArgs) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public int getCandidateCount() {
+        return candidates.size();
+    }
+    // endregion
+}
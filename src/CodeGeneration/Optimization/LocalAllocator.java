@@ -0,0 +1,377 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sits in front of whatever the VM code is really being written to, and
+ * gives a function's local variables as few slots as it can get away with.
+ * Like the peephole optimizer, it holds onto one function at a time.
+ *
+ * Each var used to get its own slot for the whole function, even if it was
+ * only used for a few lines. Here we work out where each local is live (that
+ * is, where its value might still be read later) by following the jumps in
+ * the VM code. Two locals which are never live at the same time can share a
+ * slot, so fewer slots are needed, and the function line asks for fewer
+ * locals. Every call pushes a 0 for each local, so this is a little quicker
+ * for every call, and recursive functions use less of the stack too.
+ *
+ * Some locals don't need to be in the LOCAL segment at all. If a local is
+ * never live across a call, nothing else can touch it while it matters, so
+ * it can go in a temp instead (which is cheaper to get to, too). That's only
+ * done with temps the function doesn't use for anything else, and never with
+ * temp 0 or temp 1 (see Segment for who gets which). A local that might be
+ * read before it's set relies on starting out as 0, so those stay where the
+ * function line zeroes them.
+ */
+public class LocalAllocator implements CommandWriter {
+
+    private CommandWriter output;
+    private InstructionBuffer function = new InstructionBuffer();
+
+    private int localsIn = 0;
+    private int localsOut = 0;
+    private int movedToTemps = 0;
+
+    /**
+     * @param output Where the rewritten commands go.
+     */
+    public LocalAllocator(CommandWriter output) {
+        this.output = output;
+    }
+
+    /**
+     * @return How many locals the functions asked for, all together.
+     */
+    public int getLocalsIn() {
+        return localsIn;
+    }
+
+    /**
+     * @return How many local slots the functions ended up with.
+     */
+    public int getLocalsOut() {
+        return localsOut;
+    }
+
+    /**
+     * @return How many locals were moved into temps instead.
+     */
+    public int getMovedToTemps() {
+        return movedToTemps;
+    }
+
+    public String getSummary() {
+        return "Local slots: " + localsIn + " locals packed into " + localsOut + " slots, with " +
+               movedToTemps + " moved into temps";
+    }
+
+    // region Buffering
+    @Override
+    public void writePush(Segment seg, int index) {
+        function.writePush(seg, index);
+    }
+
+    @Override
+    public void writePop(Segment seg, int index) {
+        function.writePop(seg, index);
+    }
+
+    @Override
+    public void writeArithmetic(ArithmeticCommand cmd) {
+        function.writeArithmetic(cmd);
+    }
+
+    @Override
+    public void writeLabel(String label) {
+        function.writeLabel(label);
+    }
+
+    @Override
+    public void writeGoto(String label) {
+        function.writeGoto(label);
+    }
+
+    @Override
+    public void writeIf(String label) {
+        function.writeIf(label);
+    }
+
+    @Override
+    public void writeCall(String name, int nArgs) {
+        function.writeCall(name, nArgs);
+    }
+
+    @Override
+    public void writeFunction(String name, int nLocals) {
+        passOn();
+        function.writeFunction(name, nLocals);
+    }
+
+    @Override
+    public void writeReturn() {
+        function.writeReturn();
+    }
+
+    @Override
+    public void flush() {
+        passOn();
+        output.flush();
+    }
+
+    private void passOn() {
+        List<Instruction> code = function.getInstructions();
+        if(!code.isEmpty() && code.get(0).is(InstructionType.FUNCTION)) {
+            allocate(code);
+        }
+
+        function.writeTo(output);
+        function.clear();
+    }
+    // endregion
+
+    // region Liveness
+    /**
+     * Rewrites the function in place so its locals use as few slots as
+     * possible. The first instruction has to be the function line.
+     */
+    private void allocate(List<Instruction> code) {
+        int nLocals = code.get(0).getIndex();
+        localsIn += nLocals;
+        if(nLocals == 0) {
+            return;
+        }
+
+        int size = code.size();
+        BitSet[] liveOut = new BitSet[size];
+        BitSet[] liveIn = new BitSet[size];
+        for(int i = 0; i < size; i++) {
+            liveOut[i] = new BitSet(nLocals);
+            liveIn[i] = new BitSet(nLocals);
+        }
+
+        int[][] successors = findSuccessors(code);
+
+        // Liveness flows backwards, so going from the end converges fastest.
+        // Keep going until nothing changes (loops can take a few passes).
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+
+            for(int i = size - 1; i >= 0; i--) {
+                BitSet out = new BitSet(nLocals);
+                for(int next : successors[i]) {
+                    out.or(liveIn[next]);
+                }
+
+                BitSet in = (BitSet) out.clone();
+                Instruction instruction = code.get(i);
+                if(instruction.getSegment() == Segment.LOCAL) {
+                    if(instruction.is(InstructionType.POP)) {
+                        in.clear(instruction.getIndex());
+                    }
+                    else if(instruction.is(InstructionType.PUSH)) {
+                        in.set(instruction.getIndex());
+                    }
+                }
+
+                if(!out.equals(liveOut[i]) || !in.equals(liveIn[i])) {
+                    liveOut[i] = out;
+                    liveIn[i] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        boolean[][] interferes = findInterference(code, liveOut, nLocals);
+
+        // Anything still live at the very start gets read before it's set,
+        // so it has to be one of the zeroed slots.
+        BitSet liveAtStart = liveOut[0];
+        for(int a = liveAtStart.nextSetBit(0); a >= 0; a = liveAtStart.nextSetBit(a + 1)) {
+            for(int b = liveAtStart.nextSetBit(a + 1); b >= 0; b = liveAtStart.nextSetBit(b + 1)) {
+                interferes[a][b] = interferes[b][a] = true;
+            }
+        }
+
+        BitSet acrossCalls = findLiveAcrossCalls(code, liveOut, nLocals);
+        List<Integer> freeTemps = findFreeTemps(code);
+
+        // Locals that were never used at all don't need anywhere to go.
+        BitSet used = new BitSet(nLocals);
+        for(Instruction instruction : code) {
+            if(instruction.getSegment() == Segment.LOCAL) {
+                used.set(instruction.getIndex());
+            }
+        }
+
+        Instruction[] places = new Instruction[nLocals];
+        int slots = 0;
+        for(int local = used.nextSetBit(0); local >= 0; local = used.nextSetBit(local + 1)) {
+            if(!acrossCalls.get(local) && !liveAtStart.get(local)) {
+                places[local] = pickSlot(local, places, interferes, Segment.TEMP, freeTemps);
+                if(places[local] != null) {
+                    movedToTemps++;
+                    continue;
+                }
+            }
+
+            places[local] = pickSlot(local, places, interferes, Segment.LOCAL, null);
+            slots = Math.max(slots, places[local].getIndex() + 1);
+        }
+
+        localsOut += slots;
+        rewrite(code, places, slots);
+    }
+
+    /**
+     * @return For each instruction, the instructions that can run right after it.
+     */
+    private static int[][] findSuccessors(List<Instruction> code) {
+        Map<String, Integer> labels = new HashMap<>();
+        for(int i = 0; i < code.size(); i++) {
+            if(code.get(i).is(InstructionType.LABEL)) {
+                labels.put(code.get(i).getName(), i);
+            }
+        }
+
+        int[][] successors = new int[code.size()][];
+        for(int i = 0; i < code.size(); i++) {
+            Instruction instruction = code.get(i);
+            boolean hasNext = i + 1 < code.size();
+            Integer target = (instruction.is(InstructionType.GOTO) || instruction.is(InstructionType.IF_GOTO)
+                              ? labels.get(instruction.getName()) : null);
+
+            if(instruction.is(InstructionType.RETURN)) {
+                successors[i] = new int[0];
+            }
+            else if(instruction.is(InstructionType.GOTO)) {
+                // A jump out of the function would be a mistake anyway.
+                successors[i] = (target != null ? new int[] { target } : new int[0]);
+            }
+            else if(instruction.is(InstructionType.IF_GOTO) && target != null) {
+                successors[i] = (hasNext ? new int[] { target, i + 1 } : new int[] { target });
+            }
+            else {
+                successors[i] = (hasNext ? new int[] { i + 1 } : new int[0]);
+            }
+        }
+
+        return successors;
+    }
+
+    /**
+     * Two locals interfere if one gets set while the other is still live,
+     * since sharing a slot would wipe out the other one's value.
+     */
+    private static boolean[][] findInterference(List<Instruction> code, BitSet[] liveOut, int nLocals) {
+        boolean[][] interferes = new boolean[nLocals][nLocals];
+
+        for(int i = 0; i < code.size(); i++) {
+            Instruction instruction = code.get(i);
+            if(instruction.is(InstructionType.POP) && instruction.getSegment() == Segment.LOCAL) {
+                int set = instruction.getIndex();
+                for(int live = liveOut[i].nextSetBit(0); live >= 0; live = liveOut[i].nextSetBit(live + 1)) {
+                    if(live != set) {
+                        interferes[set][live] = interferes[live][set] = true;
+                    }
+                }
+            }
+        }
+
+        return interferes;
+    }
+
+    /**
+     * @return Every local that needs to survive a call. Multiply and divide
+     *         count as calls, since that's what they end up as.
+     */
+    private static BitSet findLiveAcrossCalls(List<Instruction> code, BitSet[] liveOut, int nLocals) {
+        BitSet result = new BitSet(nLocals);
+        for(int i = 0; i < code.size(); i++) {
+            Instruction instruction = code.get(i);
+            if(instruction.is(InstructionType.CALL) ||
+               instruction.is(ArithmeticCommand.MULTIPLY) || instruction.is(ArithmeticCommand.DIVIDE)) {
+                result.or(liveOut[i]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The temps this function doesn't already use for something.
+     */
+    private static List<Integer> findFreeTemps(List<Instruction> code) {
+        boolean[] taken = new boolean[Segment.LAST_TEMP + 1];
+        for(Instruction instruction : code) {
+            if(instruction.getSegment() == Segment.TEMP && instruction.getIndex() <= Segment.LAST_TEMP) {
+                taken[instruction.getIndex()] = true;
+            }
+        }
+
+        List<Integer> free = new ArrayList<>();
+        for(int temp = Segment.FIRST_SHARED_TEMP; temp <= Segment.LAST_TEMP; temp++) {
+            if(!taken[temp]) {
+                free.add(temp);
+            }
+        }
+
+        return free;
+    }
+    // endregion
+
+    // region Assigning slots
+    /**
+     * Finds the first slot in the segment that nothing the local interferes
+     * with is already in.
+     * @param choices Which indexes can be used, or null for any of them.
+     * @return The slot (as a push, just to hold the segment and index), or
+     *         null if none of the choices are free.
+     */
+    private static Instruction pickSlot(int local, Instruction[] places, boolean[][] interferes,
+                                        Segment seg, List<Integer> choices) {
+        BitSet taken = new BitSet();
+        for(int other = 0; other < places.length; other++) {
+            if(places[other] != null && interferes[local][other] && places[other].getSegment() == seg) {
+                taken.set(places[other].getIndex());
+            }
+        }
+
+        if(choices == null) {
+            return Instruction.push(seg, taken.nextClearBit(0));
+        }
+        for(int choice : choices) {
+            if(!taken.get(choice)) {
+                return Instruction.push(seg, choice);
+            }
+        }
+
+        return null;
+    }
+
+    private static void rewrite(List<Instruction> code, Instruction[] places, int slots) {
+        code.set(0, Instruction.function(code.get(0).getName(), slots));
+
+        for(int i = 1; i < code.size(); i++) {
+            Instruction instruction = code.get(i);
+            if(instruction.getSegment() != Segment.LOCAL) {
+                continue;
+            }
+
+            Instruction place = places[instruction.getIndex()];
+            code.set(i, instruction.is(InstructionType.PUSH) ? Instruction.push(place.getSegment(), place.getIndex())
+                                                             : Instruction.pop(place.getSegment(), place.getIndex()));
+        }
+    }
+    // endregion
+}
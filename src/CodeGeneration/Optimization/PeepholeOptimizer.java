@@ -0,0 +1,309 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sits between the compilation engine and whatever the VM code is really
+ * being written to. Commands are held onto one function at a time, cleaned
+ * up with a handful of rewrite rules, and then passed on.
+ *
+ * The rules (applied over and over until none of them match):
+ *  1. push X n; pop X n            -> (nothing)
+ *  2. not; not  /  neg; neg        -> (nothing)
+ *  3. push constant 1; neg; not    -> push constant 0
+ *  4. push constant 0; not; if-goto L  /  push constant 1; neg; if-goto L
+ *                                  -> goto L
+ *     push constant k; if-goto L   -> goto L (k != 0), or nothing (k == 0)
+ *  5. not; if-goto A; goto B; label A
+ *                                  -> if-goto B; label A   (jump over a jump)
+ *  6. goto L, where L labels one of the instructions immediately after
+ *                                  -> (nothing)
+ *  7. goto L / if-goto L, where L is immediately followed by goto M
+ *                                  -> goto M / if-goto M   (jump to a jump)
+ *
+ * Rule 1 is what cleans up "do obj.method()", where the return value gets
+ * shuffled through temp 0 only to be thrown away right after. Rules 3 and 4
+ * handle "while(true)", and rules 5 and 6 strip the jumps out of empty or
+ * else-less if statements.
+ */
+public class PeepholeOptimizer implements CommandWriter {
+    private CommandWriter output;
+    private InstructionBuffer function = new InstructionBuffer();
+
+    private int instructionsIn = 0;
+    private int instructionsOut = 0;
+
+    /**
+     * @param output Where the optimized commands go.
+     */
+    public PeepholeOptimizer(CommandWriter output) {
+        this.output = output;
+    }
+
+    /**
+     * @return How many commands came in from the engine.
+     */
+    public int getInstructionsIn() {
+        return instructionsIn;
+    }
+
+    /**
+     * @return How many commands were passed on after optimizing.
+     */
+    public int getInstructionsOut() {
+        return instructionsOut;
+    }
+
+    public int getInstructionsSaved() {
+        return instructionsIn - instructionsOut;
+    }
+
+    // region Buffering
+    @Override
+    public void writePush(Segment seg, int index) {
+        instructionsIn++;
+        function.writePush(seg, index);
+    }
+
+    @Override
+    public void writePop(Segment seg, int index) {
+        instructionsIn++;
+        function.writePop(seg, index);
+    }
+
+    @Override
+    public void writeArithmetic(ArithmeticCommand cmd) {
+        instructionsIn++;
+        function.writeArithmetic(cmd);
+    }
+
+    @Override
+    public void writeLabel(String label) {
+        instructionsIn++;
+        function.writeLabel(label);
+    }
+
+    @Override
+    public void writeGoto(String label) {
+        instructionsIn++;
+        function.writeGoto(label);
+    }
+
+    @Override
+    public void writeIf(String label) {
+        instructionsIn++;
+        function.writeIf(label);
+    }
+
+    @Override
+    public void writeCall(String name, int nArgs) {
+        instructionsIn++;
+        function.writeCall(name, nArgs);
+    }
+
+    @Override
+    public void writeFunction(String name, int nLocals) {
+        // Labels (and therefore jumps) never cross function boundaries,
+        // so one function is exactly the window we want.
+        passOn();
+
+        instructionsIn++;
+        function.writeFunction(name, nLocals);
+    }
+
+    @Override
+    public void writeReturn() {
+        instructionsIn++;
+        function.writeReturn();
+    }
+
+    @Override
+    public void flush() {
+        passOn();
+        output.flush();
+    }
+
+    private void passOn() {
+        optimize(function.getInstructions());
+
+        instructionsOut += function.size();
+        function.writeTo(output);
+        function.clear();
+    }
+    // endregion
+
+    // region Rules
+    /**
+     * Applies the rules to the list in place until nothing changes.
+     */
+    static void optimize(List<Instruction> code) {
+        int i = 0;
+        while(i < code.size()) {
+            if(applyRules(code, i)) {
+                // Whatever we just did might've made a new match possible
+                // a little earlier on, so back up a bit.
+                i = Math.max(0, i - 3);
+            }
+            else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Tries every rule at the given position.
+     * @return True if something changed.
+     */
+    private static boolean applyRules(List<Instruction> code, int i) {
+        Instruction a = code.get(i);
+        Instruction b = get(code, i + 1);
+        Instruction c = get(code, i + 2);
+        Instruction d = get(code, i + 3);
+
+        // 1. push X n; pop X n
+        if(a.is(InstructionType.PUSH) && a.getSegment() != Segment.CONSTANT &&
+           b != null && b.isPop(a.getSegment(), a.getIndex())) {
+            remove(code, i, 2);
+            return true;
+        }
+
+        // 2. not; not  /  neg; neg
+        if(b != null && a.is(InstructionType.ARITHMETIC) &&
+           (a.is(ArithmeticCommand.NOT) || a.is(ArithmeticCommand.NEG)) &&
+           b.is(a.getCommand())) {
+            remove(code, i, 2);
+            return true;
+        }
+
+        // 3. push constant 1; neg; not  (that's "not true")
+        if(a.isPush(Segment.CONSTANT, 1) && b != null && b.is(ArithmeticCommand.NEG) &&
+           c != null && c.is(ArithmeticCommand.NOT)) {
+            remove(code, i + 1, 2);
+            code.set(i, Instruction.push(Segment.CONSTANT, 0));
+            return true;
+        }
+
+        // 4. Jumps on a constant condition
+        if(a.isConstant() && b != null) {
+            if(b.is(InstructionType.IF_GOTO)) {
+                if(a.getIndex() == 0) {
+                    remove(code, i, 2);
+                }
+                else {
+                    remove(code, i, 1);
+                    code.set(i, Instruction.goTo(b.getName()));
+                }
+                return true;
+            }
+
+            boolean isTrue = (a.getIndex() == 0 && b.is(ArithmeticCommand.NOT)) ||
+                             (a.getIndex() == 1 && b.is(ArithmeticCommand.NEG));
+            if(isTrue && c != null && c.is(InstructionType.IF_GOTO)) {
+                remove(code, i, 2);
+                code.set(i, Instruction.goTo(c.getName()));
+                return true;
+            }
+        }
+
+        // 5. not; if-goto A; goto B; label A
+        // Note that this is only the same thing if the condition is a real
+        // boolean (0 or -1). For something like "if(x & 1)", "not" gives us
+        // -2 which still counts as true. Thus, we only do this right after
+        // a comparison, since those always give a real boolean.
+        if(a.is(ArithmeticCommand.NOT) && i > 0 && producesBoolean(code.get(i - 1)) &&
+           b != null && b.is(InstructionType.IF_GOTO) &&
+           c != null && c.is(InstructionType.GOTO) &&
+           d != null && d.is(InstructionType.LABEL) && d.getName().equals(b.getName())) {
+            remove(code, i, 2);
+            code.set(i, Instruction.ifGoto(c.getName()));
+            return true;
+        }
+
+        // 6. goto L, where L is right after it
+        if(a.is(InstructionType.GOTO)) {
+            for(int j = i + 1; j < code.size() && code.get(j).is(InstructionType.LABEL); j++) {
+                if(code.get(j).getName().equals(a.getName())) {
+                    remove(code, i, 1);
+                    return true;
+                }
+            }
+        }
+
+        // 7. Jumps to a jump
+        if(a.is(InstructionType.GOTO) || a.is(InstructionType.IF_GOTO)) {
+            String target = finalTarget(code, a.getName());
+            if(!target.equals(a.getName())) {
+                code.set(i, a.is(InstructionType.GOTO) ? Instruction.goTo(target) : Instruction.ifGoto(target));
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean producesBoolean(Instruction instruction) {
+        return instruction.is(ArithmeticCommand.EQ) ||
+               instruction.is(ArithmeticCommand.GT) ||
+               instruction.is(ArithmeticCommand.LT);
+    }
+
+    /**
+     * Follows a label through to wherever it really ends up. That is, if the
+     * label is immediately followed by (any more labels and then) a goto,
+     * we'll end up wherever that goto goes.
+     */
+    private static String finalTarget(List<Instruction> code, String label) {
+        List<String> visited = new ArrayList<>();
+        String target = label;
+
+        while(!visited.contains(target)) {
+            visited.add(target);
+
+            int j = indexOfLabel(code, target);
+            if(j < 0) {
+                return target;
+            }
+
+            while(j < code.size() && code.get(j).is(InstructionType.LABEL)) {
+                j++;
+            }
+
+            if(j < code.size() && code.get(j).is(InstructionType.GOTO)) {
+                target = code.get(j).getName();
+            }
+            else {
+                return target;
+            }
+        }
+
+        // We went around in a circle ("label A; goto B; label B; goto A").
+        // That's an infinite loop, so leave it exactly how it is.
+        return label;
+    }
+
+    private static int indexOfLabel(List<Instruction> code, String label) {
+        for(int j = 0; j < code.size(); j++) {
+            if(code.get(j).is(InstructionType.LABEL) && code.get(j).getName().equals(label)) {
+                return j;
+            }
+        }
+
+        return -1;
+    }
+
+    private static Instruction get(List<Instruction> code, int i) {
+        return (i < code.size() ? code.get(i) : null);
+    }
+
+    private static void remove(List<Instruction> code, int start, int count) {
+        code.subList(start, start + count).clear();
+    }
+    // endregion
+}
@@ -0,0 +1,210 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.Segment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every distinct string literal in a class its own static variable,
+ * so that it only gets built once. Normally, each time a literal is used,
+ * it's built from scratch with a String.new and then an appendChar for
+ * every character. That's a lot of calls (and a lot of leaked memory) for
+ * something like Output.printString("Score: ") in a loop.
+ *
+ * The strings all get built by a generated Class.__strings function, which
+ * any subroutine that uses a literal calls first if the strings aren't
+ * ready yet. After that, each use is just a push static.
+ *
+ * NOTE: This means every use of a literal gets the SAME String object. If
+ * the program changes it (with setCharAt, say) or disposes it, every other
+ * use sees that too. That's why this is opt-in.
+ */
+public class StringPool {
+
+    /**
+     * The static segment is shared by every class in the program, and only
+     * has 240 slots, so this keeps us from hogging it.
+     */
+    public static final int MAX_STRINGS = 32;
+
+    public static final String INIT_FUNCTION = "__strings";
+
+    /**
+     * The first static we're allowed to use. Everything before this belongs
+     * to the class's own static variables.
+     */
+    private final int firstStatic;
+    private final int maxStrings;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    private int uses = 0;
+    private int guards = 0;
+    private int instructionsSaved = 0;
+    private int callsSaved = 0;
+
+    /**
+     * @param staticCount How many static variables the class has already.
+     */
+    public StringPool(int staticCount) {
+        this.firstStatic = staticCount;
+        this.maxStrings = Math.max(0, Math.min(MAX_STRINGS, 240 - staticCount));
+    }
+
+    /**
+     * Makes room for a literal, if there's still room. This should be done
+     * for every literal in the class before any code is written, since
+     * whether a subroutine needs the guard depends on it.
+     * @return True if the literal is (now) in the pool.
+     */
+    public boolean add(String literal) {
+        if(indices.containsKey(literal)) {
+            return true;
+        }
+        if(strings.size() == maxStrings) {
+            return false;
+        }
+
+        indices.put(literal, strings.size());
+        strings.add(literal);
+
+        return true;
+    }
+
+    public boolean contains(String literal) {
+        return indices.containsKey(literal);
+    }
+
+    public boolean isEmpty() {
+        return strings.isEmpty();
+    }
+
+    /**
+     * Notes that a literal is being used, and gets where it lives.
+     * @return The static variable that holds the literal.
+     */
+    public int use(String literal) {
+        uses++;
+
+        // The usual way costs a push and a call for String.new, and then a
+        // push and a call per character. Now it's one push.
+        instructionsSaved += 2 + literal.length() * 2 - 1;
+        callsSaved += 1 + literal.length();
+
+        return getStatic(literal);
+    }
+
+    /**
+     * Same as use(), but without counting it. This is for code that's going
+     * to be thrown away, which doesn't save anything.
+     * @return The static variable that holds the literal.
+     */
+    public int getStatic(String literal) {
+        return firstStatic + indices.get(literal);
+    }
+
+    // region Code
+    /**
+     * Writes the check at the top of a subroutine that makes sure the strings
+     * have been built. The first string's static is 0 until it's built, and
+     * String.new never gives back 0, so that's all we need to look at.
+     */
+    public void writeGuard(String className, String label, CommandWriter out) {
+        guards++;
+        instructionsSaved -= 5;
+
+        out.writePush(Segment.STATIC, firstStatic);
+        out.writeIf(label);
+        out.writeCall(className + "." + INIT_FUNCTION, 0);
+        out.writePop(Segment.TEMP, Segment.DISCARD_TEMP);
+        out.writeLabel(label);
+    }
+
+    /**
+     * Writes the function that builds every string.
+     */
+    public void writeInitializer(String className, CommandWriter out) {
+        out.writeFunction(className + "." + INIT_FUNCTION, 0);
+        instructionsSaved -= 3;
+
+        for(int i = 0; i < strings.size(); i++) {
+            String literal = strings.get(i);
+            writeNew(literal, out);
+            out.writePop(Segment.STATIC, firstStatic + i);
+
+            instructionsSaved -= 3 + literal.length() * 2;
+        }
+
+        out.writePush(Segment.CONSTANT, 0);
+        out.writeReturn();
+    }
+
+    /**
+     * Writes the code that builds a String from scratch. This is how every
+     * literal is done when there's no pool.
+     */
+    public static void writeNew(String literal, CommandWriter out) {
+        out.writePush(Segment.CONSTANT, literal.length());
+        out.writeCall("String.new", 1);
+
+        for(int i = 0; i < literal.length(); i++) {
+            out.writePush(Segment.CONSTANT, literal.charAt(i));
+            out.writeCall("String.appendChar", 2);
+        }
+    }
+    // endregion
+
+    // region Statistics
+    public int getStringCount() {
+        return strings.size();
+    }
+
+    /**
+     * @return How many characters are in all the pooled strings together.
+     */
+    public int getByteCount() {
+        int total = 0;
+        for(String literal : strings) {
+            total += literal.length();
+        }
+
+        return total;
+    }
+
+    public int getUseCount() {
+        return uses;
+    }
+
+    /**
+     * @return How many fewer VM instructions there are, counting the guards
+     *         and the initializer. This can be negative if every literal is
+     *         only used once.
+     */
+    public int getInstructionsSaved() {
+        return instructionsSaved;
+    }
+
+    /**
+     * @return How many calls are skipped each time every use of a literal
+     *         runs once (after the strings have been built).
+     */
+    public int getCallsSaved() {
+        return callsSaved;
+    }
+
+    public String getSummary() {
+        return "String pool: " + getStringCount() + " literals (" + getByteCount() + " bytes) shared by " +
+               getUseCount() + " uses, saving " + getCallsSaved() + " calls per pass and " +
+               getInstructionsSaved() + " VM instructions";
+    }
+    // endregion
+}
@@ -0,0 +1,199 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.*;
+
+import java.util.*;
+
+/**
+ * Works out which functions a whole program can actually get to, so that
+ * the rest can be left out. Every class's VM code gets add()ed, then
+ * shake() follows the calls out from the entry points, and then writeTo()
+ * copies each class's code across without the functions nobody can reach.
+ *
+ * Calls are the only way to get to a function in VM code (there are no
+ * function pointers), so this can't get it wrong as long as it sees every
+ * call. That includes the hidden ones: "call Sys.init" in the bootstrap
+ * code, and multiply and divide, which become calls to Math.
+ *
+ * Code that's going to be written out as it is (like the OS's .vm files,
+ * when we aren't building one big assembly file) can be added as fixed.
+ * Everything in it is kept and everything it calls is reachable, but it
+ * isn't counted in the summary or the dropped list, since none of it is
+ * going to be left out.
+ */
+public class TreeShaker {
+
+    /**
+     * Where a program starts. Sys.init comes from the bootstrap code, and
+     * the OS's Sys.init then calls Main.main.
+     */
+    public static final String MAIN = "Main.main";
+    public static final String[] ENTRY_POINTS = { "Sys.init", MAIN };
+
+    /**
+     * Every function we've seen, and everything it calls. This is in the
+     * order they were added, so the dropped list comes out in order too.
+     */
+    private final Map<String, Set<String>> calls = new LinkedHashMap<>();
+    private final Set<String> fixed = new HashSet<>();
+    private final Set<String> reachable = new HashSet<>();
+    private final List<String> dropped = new ArrayList<>();
+    private int instructionsDropped = 0;
+
+    public TreeShaker() {
+
+    }
+
+    // region Building the call graph
+    /**
+     * Notes down every function in the code, and what it calls.
+     */
+    public void add(InstructionBuffer code) {
+        add(code, false);
+    }
+
+    /**
+     * Same as above, but if the code is fixed, none of its functions are
+     * ever dropped.
+     */
+    public void add(InstructionBuffer code, boolean isFixed) {
+        Set<String> callees = null;
+
+        for(Instruction instruction : code.getInstructions()) {
+            switch(instruction.getType()) {
+                case FUNCTION:
+                    callees = calls.computeIfAbsent(instruction.getName(), name -> new HashSet<>());
+                    if(isFixed) {
+                        fixed.add(instruction.getName());
+                    }
+                    break;
+
+                case CALL:
+                    if(callees != null) {
+                        callees.add(instruction.getName());
+                    }
+                    break;
+
+                case ARITHMETIC:
+                    if(callees != null && instruction.is(ArithmeticCommand.MULTIPLY)) {
+                        callees.add("Math.multiply");
+                    }
+                    else if(callees != null && instruction.is(ArithmeticCommand.DIVIDE)) {
+                        callees.add("Math.divide");
+                    }
+                    break;
+            }
+        }
+    }
+
+    public boolean hasFunction(String name) {
+        return calls.containsKey(name);
+    }
+
+    /**
+     * Finds everything that can be reached from the entry points.
+     * @return False if there's no Main.main, in which case we have no idea
+     *         where the program starts and nothing is dropped.
+     */
+    public boolean shake() {
+        reachable.clear();
+        dropped.clear();
+
+        if(!hasFunction(MAIN)) {
+            reachable.addAll(calls.keySet());
+            return false;
+        }
+
+        Deque<String> toVisit = new ArrayDeque<>(Arrays.asList(ENTRY_POINTS));
+        toVisit.addAll(fixed);
+        while(!toVisit.isEmpty()) {
+            String name = toVisit.pop();
+
+            // Functions we don't have (like the OS, when it's built in)
+            // are somebody else's problem.
+            if(reachable.add(name) && calls.containsKey(name)) {
+                toVisit.addAll(calls.get(name));
+            }
+        }
+
+        for(String name : calls.keySet()) {
+            if(!reachable.contains(name)) {
+                dropped.add(name);
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isReachable(String name) {
+        return reachable.contains(name);
+    }
+    // endregion
+
+    // region Writing
+    /**
+     * Copies the code across, skipping every function that can't be reached.
+     * Anything before the first function (which there shouldn't be) is kept.
+     * @return How many instructions were left out.
+     */
+    public int writeTo(InstructionBuffer code, CommandWriter out) {
+        boolean keep = true;
+        int skipped = 0;
+
+        for(Instruction instruction : code.getInstructions()) {
+            if(instruction.is(InstructionType.FUNCTION)) {
+                keep = isReachable(instruction.getName());
+            }
+
+            if(keep) {
+                instruction.writeTo(out);
+            }
+            else {
+                skipped++;
+            }
+        }
+
+        instructionsDropped += skipped;
+        return skipped;
+    }
+
+    /**
+     * @return Every function that can't be reached, in the order they were
+     *         added. Fixed functions are never in here.
+     */
+    public List<String> getDropped() {
+        return Collections.unmodifiableList(dropped);
+    }
+
+    /**
+     * @return How many instructions writeTo() has left out altogether.
+     */
+    public int getInstructionsDropped() {
+        return instructionsDropped;
+    }
+
+    /**
+     * @return How many functions there were to shake, not counting fixed ones.
+     */
+    public int getFunctionCount() {
+        int count = 0;
+        for(String name : calls.keySet()) {
+            if(!fixed.contains(name)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    public String getSummary() {
+        int total = getFunctionCount();
+        return "Tree shaking: kept " + (total - dropped.size()) + " of " + total +
+               " functions, dropping " + instructionsDropped + " VM instructions";
+    }
+    // endregion
+}
@@ -0,0 +1,258 @@
+package CodeGeneration;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.OutputSink;
+import CodeGeneration.VM.VMWriter;
+import Statistics.CompileStatistics;
+import Statistics.FileStatistics;
+import SyntaxAnalysis.SourceFile;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Compiles Jack code that's already in memory, without going anywhere near
+ * the disk. This is for embedding the compiler in something else; the
+ * command line goes through JackAnalyzer instead, since that's what knows
+ * about .jack files and where their output goes.
+ *
+ * Syntax errors come out as IllegalSyntaxExceptions, and problems with the
+ * sink or writer as IOExceptions. Either way, whatever was generated before
+ * the problem still gets written.
+ */
+public class SourceCompiler {
+
+    private CompilerOptions options;
+
+    /**
+     * Where compileAll() runs each source. If this is null, they all get
+     * compiled one after another on the calling thread.
+     */
+    private ExecutorService executor = null;
+
+    /**
+     * Where timings and counts go for everything this compiles, or null to
+     * not measure anything.
+     */
+    private CompileStatistics statistics = null;
+
+    public SourceCompiler() {
+        this(new CompilerOptions());
+    }
+
+    public SourceCompiler(CompilerOptions options) {
+        this.options = options;
+    }
+
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(CompilerOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Lets compileAll() work on several sources at once. The executor is NOT
+     * shut down by the compiler. Pass null to go back to compiling sequentially.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public CompileStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Turns on timing and counting. Every source compiled after this gets its
+     * own FileStatistics added to the given statistics. Pass null to turn it
+     * back off.
+     */
+    public void setStatistics(CompileStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    // region Single sources
+    public CompilationEngine compile(CharSequence source, OutputSink vm) throws IOException {
+        return compile(source, vm, null);
+    }
+
+    public CompilationEngine compile(CharSequence source, OutputSink vm, Writer xml) throws IOException {
+        return compile(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)), vm, xml);
+    }
+
+    public CompilationEngine compile(Reader source, OutputSink vm) throws IOException {
+        return compile(source, vm, null);
+    }
+
+    public CompilationEngine compile(Reader source, OutputSink vm, Writer xml) throws IOException {
+        return compile(SourceFile.read(source), vm, xml);
+    }
+
+    public CompilationEngine compile(ByteBuffer source, OutputSink vm) throws IOException {
+        return compile(source, vm, null);
+    }
+
+    /**
+     * Compiles one class.
+     * @param source The class's source, from its position up to its limit.
+     *               This doesn't get modified.
+     * @param vm Where the VM code goes.
+     * @param xml Where the parse tree goes, or null if it isn't wanted. This
+     *            gets flushed, but not closed.
+     * @return The engine that did the work, in case its tree or statistics
+     *         are wanted.
+     */
+    public CompilationEngine compile(ByteBuffer source, OutputSink vm, Writer xml) throws IOException {
+        return compile("<source>", source, vm, xml);
+    }
+
+    /**
+     * Same as compile(source, vm, xml).
+     * @param name What the source is called in the statistics, if they're
+     *             turned on.
+     */
+    public CompilationEngine compile(String name, ByteBuffer source, OutputSink vm, Writer xml) throws IOException {
+        XMLWriter xmlWriter = (xml != null ? new XMLWriter(xml) : null);
+        CompilationEngine engine;
+
+        FileStatistics fileStatistics = null;
+        if(statistics != null) {
+            fileStatistics = new FileStatistics(name);
+            fileStatistics.startAllocations();
+
+            // Only the VM code gets counted, since the XML goes through a
+            // Writer we don't own.
+            FileStatistics counted = fileStatistics;
+            OutputSink sink = vm;
+            vm = (bytes, offset, length) -> {
+                sink.write(bytes, offset, length);
+                counted.addBytesWritten(length);
+            };
+        }
+
+        try(VMWriter vmWriter = new VMWriter(vm)) {
+            engine = new CompilationEngine(source, vmWriter, xmlWriter);
+            engine.setOptions(options);
+            engine.setStatistics(fileStatistics);
+            engine.compile();
+        }
+        catch (UncheckedIOException e) {
+            // VMWriter can't throw these itself, so it wraps them.
+            throw e.getCause();
+        }
+        finally {
+            if(fileStatistics != null) {
+                fileStatistics.stopAllocations();
+                statistics.add(fileStatistics);
+            }
+        }
+
+        if(xmlWriter != null && xmlWriter.checkError()) {
+            throw new IOException("Failed to write XML");
+        }
+
+        return engine;
+    }
+
+    /**
+     * Compiles one class straight into a String of VM code.
+     */
+    public String compileToString(CharSequence source) {
+        StringBuilder vm = new StringBuilder(source.length() * 2);
+        try {
+            compile(source, OutputSink.of(vm));
+        }
+        catch (IOException e) {
+            // A StringBuilder can't fail.
+            throw new UncheckedIOException(e);
+        }
+
+        return vm.toString();
+    }
+    // endregion
+
+    // region Batches
+    /**
+     * Compiles a bunch of classes. Each one is compiled on its own, so one
+     * failing doesn't stop the others.
+     * @param sources Each class's source, by whatever name the caller likes
+     *                (such as the class name).
+     * @param sinks Gives the sink for each name. If there's an executor, this
+     *              (and the sinks) can be called from several threads at once.
+     * @return What went wrong with each source that failed, by name. If
+     *         everything compiled, this is empty.
+     */
+    public Map<String, Exception> compileAll(Map<String, ? extends CharSequence> sources,
+                                             Function<String, OutputSink> sinks) {
+        Map<String, Exception> failures = new LinkedHashMap<>();
+
+        if(executor == null) {
+            for(Map.Entry<String, ? extends CharSequence> source : sources.entrySet()) {
+                Exception error = tryCompile(source.getKey(), source.getValue(), sinks.apply(source.getKey()));
+                if(error != null) {
+                    failures.put(source.getKey(), error);
+                }
+            }
+
+            return failures;
+        }
+
+        Map<String, Future<Exception>> results = new LinkedHashMap<>();
+        for(Map.Entry<String, ? extends CharSequence> source : sources.entrySet()) {
+            results.put(source.getKey(),
+                        executor.submit(() -> tryCompile(source.getKey(), source.getValue(),
+                                                       sinks.apply(source.getKey()))));
+        }
+
+        for(Map.Entry<String, Future<Exception>> result : results.entrySet()) {
+            Exception error;
+            try {
+                error = result.getValue().get();
+            }
+            catch (ExecutionException e) {
+                // tryCompile() catches everything it can, so this would be
+                // something like an Error.
+                error = new RuntimeException(e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+            }
+
+            if(error != null) {
+                failures.put(result.getKey(), error);
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * @return Whatever went wrong, or null if nothing did.
+     */
+    private Exception tryCompile(String name, CharSequence source, OutputSink sink) {
+        try {
+            compile(name, StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)), sink, null);
+            return null;
+        }
+        catch (IOException | RuntimeException e) {
+            return e;
+        }
+    }
+    // endregion
+}
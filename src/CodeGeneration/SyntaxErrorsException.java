@@ -0,0 +1,55 @@
+package CodeGeneration;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Every problem that was found in a file, rather than just the first one.
+ * The message has one line per problem, in the order they show up in the
+ * file, and the line number is the first problem's.
+ *
+ * Since this is still an IllegalSyntaxException, anything that only cares
+ * about there being an error doesn't need to know the difference.
+ */
+public class SyntaxErrorsException extends IllegalSyntaxException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<IllegalSyntaxException> errors;
+
+    private SyntaxErrorsException(List<IllegalSyntaxException> errors, String message) {
+        super(errors.get(0).getLineNumber(), errors.get(0).getColumn(), message, message);
+
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * @param errors Every problem, in any order. There must be at least one.
+     */
+    public static SyntaxErrorsException of(List<IllegalSyntaxException> errors) {
+        List<IllegalSyntaxException> sorted = new ArrayList<>(errors);
+        sorted.sort(Comparator.comparingInt(IllegalSyntaxException::getLineNumber)
+                              .thenComparingInt(IllegalSyntaxException::getColumn));
+
+        StringBuilder message = new StringBuilder();
+        message.append(sorted.size()).append(sorted.size() == 1 ? " error" : " errors");
+        for(IllegalSyntaxException error : sorted) {
+            message.append(System.lineSeparator()).append("  ").append(error.getMessage());
+        }
+
+        return new SyntaxErrorsException(sorted, message.toString());
+    }
+
+    /**
+     * @return Every problem, in the order they show up in the file.
+     */
+    public List<IllegalSyntaxException> getErrors() {
+        return errors;
+    }
+}
@@ -13,6 +13,16 @@ public enum ArithmeticCommand {
     MULTIPLY, DIVIDE,
     NOT, NEG;
 
+    private final String vmName = name().toLowerCase();
+
+    /**
+     * @return The name of this command as it appears in VM code. This is
+     *         cached, so no strings get built.
+     */
+    public String getVMName() {
+        return vmName;
+    }
+
     public static ArithmeticCommand fromBinarySymbol(SymbolToken token) {
         return fromBinarySymbol(token.getValue());
     }
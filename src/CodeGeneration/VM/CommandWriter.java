@@ -0,0 +1,40 @@
+package CodeGeneration.VM;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.io.Flushable;
+
+/**
+ * Anything that VM commands can be written to. The compilation engine only
+ * ever talks to one of these, so the commands can be turned straight into
+ * text (VMWriter), or go through other stages (like an optimizer) first.
+ */
+public interface CommandWriter extends Flushable {
+
+    void writePush(Segment seg, int index);
+
+    void writePop(Segment seg, int index);
+
+    void writeArithmetic(ArithmeticCommand cmd);
+
+    void writeLabel(String label);
+
+    void writeGoto(String label);
+
+    void writeIf(String label);
+
+    void writeCall(String name, int nArgs);
+
+    void writeFunction(String name, int nLocals);
+
+    void writeReturn();
+
+    /**
+     * Pushes everything written so far through to the final output.
+     * Anything that holds onto commands MUST pass them on here.
+     */
+    @Override
+    void flush();
+}
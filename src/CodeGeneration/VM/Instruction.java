@@ -0,0 +1,145 @@
+package CodeGeneration.VM;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+/**
+ * A single VM command, held onto in memory rather than written out.
+ * Which fields mean anything depends on the type:
+ *  - PUSH/POP: segment and index
+ *  - ARITHMETIC: command
+ *  - LABEL/GOTO/IF_GOTO: name (the label)
+ *  - CALL/FUNCTION: name, and index (the arg or local count)
+ *  - RETURN: nothing
+ */
+public class Instruction {
+    private final InstructionType type;
+    private final Segment segment;
+    private final ArithmeticCommand command;
+    private final String name;
+    private final int index;
+
+    private Instruction(InstructionType type, Segment segment, ArithmeticCommand command, String name, int index) {
+        this.type = type;
+        this.segment = segment;
+        this.command = command;
+        this.name = name;
+        this.index = index;
+    }
+
+    // region Factories
+    public static Instruction push(Segment seg, int index) {
+        return new Instruction(InstructionType.PUSH, seg, null, null, index);
+    }
+
+    public static Instruction pop(Segment seg, int index) {
+        return new Instruction(InstructionType.POP, seg, null, null, index);
+    }
+
+    public static Instruction arithmetic(ArithmeticCommand cmd) {
+        return new Instruction(InstructionType.ARITHMETIC, null, cmd, null, 0);
+    }
+
+    public static Instruction label(String label) {
+        return new Instruction(InstructionType.LABEL, null, null, label, 0);
+    }
+
+    public static Instruction goTo(String label) {
+        return new Instruction(InstructionType.GOTO, null, null, label, 0);
+    }
+
+    public static Instruction ifGoto(String label) {
+        return new Instruction(InstructionType.IF_GOTO, null, null, label, 0);
+    }
+
+    public static Instruction call(String name, int nArgs) {
+        return new Instruction(InstructionType.CALL, null, null, name, nArgs);
+    }
+
+    public static Instruction function(String name, int nLocals) {
+        return new Instruction(InstructionType.FUNCTION, null, null, name, nLocals);
+    }
+
+    public static Instruction ret() {
+        return new Instruction(InstructionType.RETURN, null, null, null, 0);
+    }
+    // endregion
+
+    public InstructionType getType() {
+        return type;
+    }
+
+    public Segment getSegment() {
+        return segment;
+    }
+
+    public ArithmeticCommand getCommand() {
+        return command;
+    }
+
+    /**
+     * @return The label for LABEL/GOTO/IF_GOTO, or the function name for CALL/FUNCTION.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The segment index for PUSH/POP, or the arg/local count for CALL/FUNCTION.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    // region Matching helpers
+    public boolean is(InstructionType type) {
+        return this.type == type;
+    }
+
+    public boolean is(ArithmeticCommand cmd) {
+        return type == InstructionType.ARITHMETIC && command == cmd;
+    }
+
+    public boolean isPush(Segment seg, int index) {
+        return type == InstructionType.PUSH && segment == seg && this.index == index;
+    }
+
+    public boolean isPop(Segment seg, int index) {
+        return type == InstructionType.POP && segment == seg && this.index == index;
+    }
+
+    public boolean isConstant() {
+        return type == InstructionType.PUSH && segment == Segment.CONSTANT;
+    }
+    // endregion
+
+    public void writeTo(CommandWriter writer) {
+        switch(type) {
+            case PUSH:       writer.writePush(segment, index); break;
+            case POP:        writer.writePop(segment, index); break;
+            case ARITHMETIC: writer.writeArithmetic(command); break;
+            case LABEL:      writer.writeLabel(name); break;
+            case GOTO:       writer.writeGoto(name); break;
+            case IF_GOTO:    writer.writeIf(name); break;
+            case CALL:       writer.writeCall(name, index); break;
+            case FUNCTION:   writer.writeFunction(name, index); break;
+            case RETURN:     writer.writeReturn(); break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch(type) {
+            case PUSH:       return "push " + segment.getVMName() + " " + index;
+            case POP:        return "pop " + segment.getVMName() + " " + index;
+            case ARITHMETIC: return command.getVMName();
+            case LABEL:      return "label " + name;
+            case GOTO:       return "goto " + name;
+            case IF_GOTO:    return "if-goto " + name;
+            case CALL:       return "call " + name + " " + index;
+            case FUNCTION:   return "function " + name + " " + index;
+            default:         return "return";
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package CodeGeneration.VM;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds onto VM commands in memory instead of writing them anywhere.
+ * They can be inspected or changed, and then passed on with writeTo().
+ */
+public class InstructionBuffer implements CommandWriter {
+    private List<Instruction> instructions = new ArrayList<>();
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public int size() {
+        return instructions.size();
+    }
+
+    public void clear() {
+        instructions.clear();
+    }
+
+    /**
+     * @return True if any of the commands is a call.
+     */
+    public boolean hasCalls() {
+        for(Instruction instruction : instructions) {
+            if(instruction.is(InstructionType.CALL)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public void writeTo(CommandWriter writer) {
+        for(Instruction instruction : instructions) {
+            instruction.writeTo(writer);
+        }
+    }
+
+    @Override
+    public void writePush(Segment seg, int index) {
+        instructions.add(Instruction.push(seg, index));
+    }
+
+    @Override
+    public void writePop(Segment seg, int index) {
+        instructions.add(Instruction.pop(seg, index));
+    }
+
+    @Override
+    public void writeArithmetic(ArithmeticCommand cmd) {
+        instructions.add(Instruction.arithmetic(cmd));
+    }
+
+    @Override
+    public void writeLabel(String label) {
+        instructions.add(Instruction.label(label));
+    }
+
+    @Override
+    public void writeGoto(String label) {
+        instructions.add(Instruction.goTo(label));
+    }
+
+    @Override
+    public void writeIf(String label) {
+        instructions.add(Instruction.ifGoto(label));
+    }
+
+    @Override
+    public void writeCall(String name, int nArgs) {
+        instructions.add(Instruction.call(name, nArgs));
+    }
+
+    @Override
+    public void writeFunction(String name, int nLocals) {
+        instructions.add(Instruction.function(name, nLocals));
+    }
+
+    @Override
+    public void writeReturn() {
+        instructions.add(Instruction.ret());
+    }
+
+    /**
+     * Nothing to do; commands stay here until someone asks for them.
+     */
+    @Override
+    public void flush() {
+
+    }
+}
@@ -0,0 +1,18 @@
+package CodeGeneration.VM;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+public enum InstructionType {
+    PUSH, POP, ARITHMETIC,
+    LABEL, GOTO, IF_GOTO,
+    CALL, FUNCTION, RETURN;
+
+    /**
+     * @return True if this transfers control somewhere else.
+     */
+    public boolean isJump() {
+        return this == GOTO || this == IF_GOTO || this == RETURN;
+    }
+}
@@ -0,0 +1,58 @@
+package CodeGeneration.VM;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Wherever generated code ends up. Writers fill up their own buffer and
+ * hand it over in big chunks, so a sink doesn't need to do any buffering
+ * of its own.
+ *
+ * Output is always plain ASCII, which is why it's handed over as bytes.
+ */
+@FunctionalInterface
+public interface OutputSink {
+
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    static OutputSink of(WritableByteChannel channel) {
+        return (bytes, offset, length) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        };
+    }
+
+    static OutputSink of(OutputStream out) {
+        return (bytes, offset, length) -> {
+            out.write(bytes, offset, length);
+            out.flush();
+        };
+    }
+
+    /**
+     * Writes into memory. Throws a BufferOverflowException if there isn't room.
+     */
+    static OutputSink of(ByteBuffer target) {
+        return target::put;
+    }
+
+    /**
+     * Writes into memory, for when the output is wanted as text.
+     */
+    static OutputSink of(StringBuilder target) {
+        return (bytes, offset, length) -> {
+            target.ensureCapacity(target.length() + length);
+            for(int i = offset; i < offset + length; i++) {
+                target.append((char) (bytes[i] & 0xFF));
+            }
+        };
+    }
+}
@@ -9,6 +9,35 @@ import CodeGeneration.VariableTracking.VariableKind;
 public enum Segment {
     CONSTANT, ARGUMENT, LOCAL, STATIC, THIS, THAT, POINTER, TEMP;
 
+    // region Temps
+    /*
+     * Who gets which of the 8 temps. None of the passes that use them know
+     * about each other, so they can't overlap:
+     *  - Temp 0 is the code generator's, for getting return values out of
+     *    the way (and the string pool's guard does the same).
+     *  - Temp 1 holds the number being multiplied in the ExpressionOptimizer's
+     *    chains of adds.
+     *  - Temps 2 to 7 are for the Inliner and the LocalAllocator. Those two
+     *    can share, since an inlined copy's temps show up in the code the
+     *    allocator sees (so it leaves them alone), and a function that uses
+     *    temps never gets inlined.
+     */
+    public static final int DISCARD_TEMP = 0;
+    public static final int MULTIPLY_TEMP = 1;
+    public static final int FIRST_SHARED_TEMP = 2;
+    public static final int LAST_TEMP = 7;
+    // endregion
+
+    private final String vmName = name().toLowerCase();
+
+    /**
+     * @return The name of this segment as it appears in VM code. This is
+     *         cached, so no strings get built.
+     */
+    public String getVMName() {
+        return vmName;
+    }
+
     public static Segment fromVariableKind(VariableKind kind) {
        switch(kind) {
            case STATIC: return STATIC;
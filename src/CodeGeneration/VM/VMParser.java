@@ -0,0 +1,145 @@
+package CodeGeneration.VM;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IllegalSyntaxException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads VM code (as text) and hands each command to a CommandWriter. This
+ * is the opposite of VMWriter, and is mostly for things that we didn't
+ * compile ourselves, like the OS's .vm files.
+ */
+public class VMParser {
+
+    private static final Map<String, Segment> SEGMENTS = new HashMap<>();
+    private static final Map<String, ArithmeticCommand> COMMANDS = new HashMap<>();
+    static {
+        for(Segment seg : Segment.values()) {
+            SEGMENTS.put(seg.getVMName(), seg);
+        }
+        for(ArithmeticCommand cmd : ArithmeticCommand.values()) {
+            // These two are calls in real VM code, so they can't show up.
+            if(cmd != ArithmeticCommand.MULTIPLY && cmd != ArithmeticCommand.DIVIDE) {
+                COMMANDS.put(cmd.getVMName(), cmd);
+            }
+        }
+    }
+
+    private BufferedReader reader;
+    private int lineNumber = 0;
+
+    public VMParser(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads everything, writing each command as it goes.
+     * @throws IllegalSyntaxException if a line isn't a valid command.
+     */
+    public void parse(CommandWriter out) throws IOException {
+        String line;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            int comment = line.indexOf("//");
+            if(comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if(line.isEmpty()) {
+                continue;
+            }
+
+            parseCommand(line.split("\\s+"), out);
+        }
+    }
+
+    private void parseCommand(String[] parts, CommandWriter out) {
+        String command = parts[0];
+
+        ArithmeticCommand arithmetic = COMMANDS.get(command);
+        if(arithmetic != null) {
+            expectLength(parts, 1);
+            out.writeArithmetic(arithmetic);
+            return;
+        }
+
+        switch(command) {
+            case "push":
+            case "pop":
+                expectLength(parts, 3);
+                Segment seg = SEGMENTS.get(parts[1]);
+                if(seg == null) {
+                    throw new IllegalSyntaxException(lineNumber, "Unknown segment " + parts[1]);
+                }
+
+                if(command.equals("push")) {
+                    out.writePush(seg, parseInt(parts[2]));
+                }
+                else {
+                    out.writePop(seg, parseInt(parts[2]));
+                }
+                break;
+
+            case "label":
+                expectLength(parts, 2);
+                out.writeLabel(parts[1]);
+                break;
+
+            case "goto":
+                expectLength(parts, 2);
+                out.writeGoto(parts[1]);
+                break;
+
+            case "if-goto":
+                expectLength(parts, 2);
+                out.writeIf(parts[1]);
+                break;
+
+            case "function":
+                expectLength(parts, 3);
+                out.writeFunction(parts[1], parseInt(parts[2]));
+                break;
+
+            case "call":
+                expectLength(parts, 3);
+                out.writeCall(parts[1], parseInt(parts[2]));
+                break;
+
+            case "return":
+                expectLength(parts, 1);
+                out.writeReturn();
+                break;
+
+            default:
+                throw new IllegalSyntaxException(lineNumber, "Unknown command " + command);
+        }
+    }
+
+    private void expectLength(String[] parts, int length) {
+        if(parts.length != length) {
+            throw new IllegalSyntaxException(lineNumber, parts[0] + " takes " + (length - 1) + " arguments");
+        }
+    }
+
+    private int parseInt(String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if(result >= 0 && result <= 32767) {
+                return result;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Same as being out of range.
+        }
+
+        throw new IllegalSyntaxException(lineNumber, "Expected a number from 0 to 32767, not " + value);
+    }
+}
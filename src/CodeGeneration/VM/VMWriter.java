@@ -4,52 +4,247 @@ package CodeGeneration.VM;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
-public class VMWriter {
-    private PrintStream writer;
+/**
+ * Writes VM commands as text. Everything is built up directly as bytes
+ * inside of one big buffer, which only gets handed to the sink when it
+ * fills up or when flush() is called. For a typical class, that means
+ * the sink gets written to exactly once.
+ */
+public class VMWriter implements CommandWriter, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Longest thing that can be written without checking for space again:
+     * a keyword, a segment name, an int and a newline.
+     */
+    private static final int MAX_FIXED_LENGTH = 64;
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // region Precomputed names
+    private static final byte[] PUSH = ascii("push ");
+    private static final byte[] POP = ascii("pop ");
+    private static final byte[] LABEL = ascii("label ");
+    private static final byte[] GOTO = ascii("goto ");
+    private static final byte[] IF_GOTO = ascii("if-goto ");
+    private static final byte[] CALL = ascii("call ");
+    private static final byte[] FUNCTION = ascii("function ");
+    private static final byte[] RETURN = ascii("return");
+
+    private static final byte[][] SEGMENT_NAMES = new byte[Segment.values().length][];
+    private static final byte[][] COMMAND_NAMES = new byte[ArithmeticCommand.values().length][];
+    static {
+        for(Segment seg : Segment.values()) {
+            SEGMENT_NAMES[seg.ordinal()] = ascii(seg.getVMName() + " ");
+        }
+        for(ArithmeticCommand cmd : ArithmeticCommand.values()) {
+            COMMAND_NAMES[cmd.ordinal()] = ascii(cmd.getVMName());
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+    // endregion
+
+    /**
+     * A buffer that isn't in use by anybody on this thread. Writers take
+     * it when they're created and give it back when they're closed, so
+     * compiling file after file doesn't keep allocating new buffers.
+     */
+    private static final ThreadLocal<byte[]> spareBuffer = new ThreadLocal<>();
+
+    private OutputSink sink;
+    private byte[] buffer;
+    private int count = 0;
+
+    public VMWriter(OutputSink sink) {
+        this.sink = sink;
+
+        buffer = spareBuffer.get();
+        if(buffer != null) {
+            spareBuffer.set(null);
+        }
+        else {
+            buffer = new byte[BUFFER_SIZE];
+        }
+    }
 
     public VMWriter(PrintStream writer) {
-        this.writer = writer;
+        this(OutputSink.of(writer));
+    }
+
+    // region Raw output
+    private void ensureSpace(int length) {
+        if(count + length > buffer.length) {
+            flush();
+        }
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
     }
 
-    private void write(String s) {
-        writer.println(s);
+    /**
+     * Writes out any (ASCII) string. These are names and labels, which can
+     * in theory be of any length, so this checks for room as it goes.
+     */
+    private void put(String s) {
+        int length = s.length();
+        for(int i = 0; i < length; i++) {
+            if(count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Writes the digits of an int straight into the buffer.
+     */
+    private void put(int value) {
+        if(value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for(int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+
+        for(int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        count += digits;
     }
 
+    private void endLine() {
+        put(NEWLINE);
+    }
+    // endregion
+
+    @Override
     public void writePush(Segment seg, int index) {
-        write("push " + seg.toString().toLowerCase() + " " + index);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(PUSH);
+        put(SEGMENT_NAMES[seg.ordinal()]);
+        put(index);
+        endLine();
     }
 
+    @Override
     public void writePop(Segment seg, int index) {
-        write("pop " + seg.toString().toLowerCase() + " " + index);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(POP);
+        put(SEGMENT_NAMES[seg.ordinal()]);
+        put(index);
+        endLine();
     }
 
+    @Override
     public void writeArithmetic(ArithmeticCommand cmd) {
-        write(cmd.toString().toLowerCase());
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(COMMAND_NAMES[cmd.ordinal()]);
+        endLine();
     }
 
+    @Override
     public void writeLabel(String label) {
-        write("label " + label);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(LABEL);
+        put(label);
+        ensureSpace(MAX_FIXED_LENGTH);
+        endLine();
     }
 
+    @Override
     public void writeGoto(String label) {
-        write("goto " + label);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(GOTO);
+        put(label);
+        ensureSpace(MAX_FIXED_LENGTH);
+        endLine();
     }
 
+    @Override
     public void writeIf(String label) {
-        write("if-goto " + label);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(IF_GOTO);
+        put(label);
+        ensureSpace(MAX_FIXED_LENGTH);
+        endLine();
     }
 
+    @Override
     public void writeCall(String name, int nArgs) {
-        write("call " + name + " " + nArgs);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(CALL);
+        put(name);
+        ensureSpace(MAX_FIXED_LENGTH);
+        buffer[count++] = ' ';
+        put(nArgs);
+        endLine();
     }
 
+    @Override
     public void writeFunction(String name, int nLocals) {
-        write("function " + name + " " + nLocals);
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(FUNCTION);
+        put(name);
+        ensureSpace(MAX_FIXED_LENGTH);
+        buffer[count++] = ' ';
+        put(nLocals);
+        endLine();
     }
 
+    @Override
     public void writeReturn() {
-        write("return");
+        ensureSpace(MAX_FIXED_LENGTH);
+        put(RETURN);
+        endLine();
+    }
+
+    /**
+     * Hands everything written so far over to the sink.
+     * @throws UncheckedIOException if the sink fails.
+     */
+    @Override
+    public void flush() {
+        if(count > 0) {
+            try {
+                sink.write(buffer, 0, count);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Flushes, and then lets go of the buffer so the next writer on this
+     * thread can use it. The sink itself is left open; it belongs to whoever
+     * created it.
+     */
+    @Override
+    public void close() {
+        if(buffer != null) {
+            try {
+                flush();
+            }
+            finally {
+                spareBuffer.set(buffer);
+                buffer = null;
+            }
+        }
     }
 }
@@ -0,0 +1,853 @@
+package CodeGeneration;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IR.ExpressionPool;
+import CodeGeneration.IR.NodeKind;
+import CodeGeneration.IR.SyntaxTree;
+import CodeGeneration.Optimization.ExpressionOptimizer;
+import CodeGeneration.Optimization.Inliner;
+import CodeGeneration.Optimization.StringPool;
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.Segment;
+import CodeGeneration.VariableTracking.Variable;
+import CodeGeneration.VariableTracking.VariableKind;
+import CodeGeneration.VariableTracking.VariableTable;
+import SyntaxAnalysis.KeywordType;
+import SyntaxAnalysis.Tokens.IdentifierToken;
+import SyntaxAnalysis.Tokens.IntLiteralToken;
+import SyntaxAnalysis.Tokens.StringLiteralToken;
+import SyntaxAnalysis.Tokens.SymbolToken;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static CodeGeneration.IR.SyntaxTree.NONE;
+
+/**
+ * Walks a SyntaxTree and writes the VM code for it.
+ */
+public class VMGenerator {
+
+    private SyntaxTree tree;
+    private CommandWriter vmWriter;
+    private CompilerOptions options;
+    private VariableTable symbolTable = new VariableTable();
+
+    /**
+     * This is the name of the class. Used when declaring subroutines and labels.
+     */
+    private String className;
+
+    /**
+     * The number of labels so far. This is used to ensure that we always get a unique label.
+     */
+    private int labelCount = 0;
+
+    /**
+     * Expressions get built here before they're written out.
+     */
+    private ExpressionPool expressions = new ExpressionPool();
+    private ExpressionOptimizer expressionOptimizer = new ExpressionOptimizer(expressions);
+
+    /**
+     * Where string literals live, if they're being pooled. This gets set up
+     * once the class's static variables are known.
+     */
+    private StringPool stringPool = null;
+
+    /**
+     * Everything that went wrong, one per subroutine at most.
+     */
+    private final List<IllegalSyntaxException> errors = new ArrayList<>();
+
+    /**
+     * Returned by getConstantCondition() when the condition isn't known
+     * until the program runs. This is outside of 16 bits, so it can never
+     * be a real value.
+     */
+    private static final int NOT_CONSTANT = Integer.MIN_VALUE;
+
+    /**
+     * How deep we are in code that's being thrown away. Nothing gets pruned
+     * in there, so that the instructions we count are the ones that would
+     * have been written without dead code elimination.
+     */
+    private int discardDepth = 0;
+    private int instructionsRemoved = 0;
+
+    /**
+     * Knows which subroutines in the program can be copied in instead of
+     * called. This is null unless inlining is on.
+     */
+    private Inliner inliner = null;
+    private int callsInlined = 0;
+
+    public VMGenerator(SyntaxTree tree, CommandWriter vmWriter, CompilerOptions options) {
+        this.tree = tree;
+        this.vmWriter = vmWriter;
+        this.options = options;
+    }
+
+    public void generate() {
+        compileClass(tree.getRoot());
+    }
+
+    /**
+     * @return The pool of string literals, or null if pooling is off.
+     */
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    public void setInliner(Inliner inliner) {
+        this.inliner = inliner;
+    }
+
+    /**
+     * @return How many calls were replaced with a copy of the subroutine.
+     */
+    public int getCallsInlined() {
+        return callsInlined;
+    }
+
+    /**
+     * @return How many VM commands (labels included) dead code elimination
+     *         got rid of. This is 0 if it's turned off.
+     */
+    public int getInstructionsRemoved() {
+        return instructionsRemoved;
+    }
+
+    // region Labels
+    private String getLabel() {
+        return getLabel("");
+    }
+
+    private String getLabel(String postfix) {
+        String result = String.join(
+                "_", "_", className, Integer.toString(labelCount), postfix
+        );
+
+        labelCount++;
+
+        return result;
+    }
+    // endregion
+
+    private Variable getVariable(int node) {
+        IdentifierToken name = tree.getIdentifier(node);
+        Variable var = symbolTable.get(name);
+        if(var == null) {
+            throw new IllegalSyntaxException(name, "Unknown variable " + name.getValue());
+        }
+
+        return var;
+    }
+
+    private void writePush(Variable var) {
+        vmWriter.writePush(Segment.fromVariableKind(var.getKind()), var.getIndex());
+    }
+
+    private void writePop(Variable var) {
+        vmWriter.writePop(Segment.fromVariableKind(var.getKind()), var.getIndex());
+    }
+
+    // region Declarations
+    private void compileClass(int node) {
+        className = tree.getIdentifier(node).getValue();
+
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            switch(tree.getKind(child)) {
+                case CLASS_VAR_DEC:
+                    defineVariables(child, VariableKind.fromKeyword(tree.getKeyword(child)));
+                    break;
+
+                case SUBROUTINE:
+                    // Class variables always come before any subroutines, so
+                    // this is the first point where we know where the pooled
+                    // strings can go.
+                    if(options.isStringPooling() && stringPool == null) {
+                        createStringPool(node);
+                    }
+
+                    // A mistake (like an unknown variable) in one subroutine
+                    // doesn't stop us checking the rest.
+                    try {
+                        compileSubroutine(child);
+                    }
+                    catch (IllegalSyntaxException e) {
+                        errors.add(e);
+                    }
+                    break;
+            }
+        }
+
+        if(!errors.isEmpty()) {
+            throw SyntaxErrorsException.of(errors);
+        }
+
+        if(stringPool != null && !stringPool.isEmpty()) {
+            stringPool.writeInitializer(className, vmWriter);
+        }
+    }
+
+    /**
+     * Puts every string literal in the class into the pool, in the order
+     * they show up. The tree is stored in that same order, so we can just
+     * go through it front to back.
+     */
+    private void createStringPool(int classNode) {
+        stringPool = new StringPool(symbolTable.varCount(VariableKind.STATIC));
+
+        for(int node = classNode; node < tree.size(); node++) {
+            if(tree.is(node, NodeKind.STRING_CONSTANT)) {
+                stringPool.add(((StringLiteralToken) tree.getToken(node)).getValue());
+            }
+        }
+    }
+
+    /**
+     * @return True if anything within the node is a pooled string literal.
+     */
+    private boolean usesPooledStrings(int node) {
+        if(tree.is(node, NodeKind.STRING_CONSTANT)) {
+            return stringPool.contains(((StringLiteralToken) tree.getToken(node)).getValue());
+        }
+
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            if(usesPooledStrings(child)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Puts every variable from a CLASS_VAR_DEC or VAR_DEC into the symbol table.
+     */
+    private void defineVariables(int node, VariableKind kind) {
+        int typeNode = tree.getFirstChild(node);
+        String typeName = tree.getTypeName(typeNode);
+
+        for(int name = tree.getNextSibling(typeNode); name != NONE; name = tree.getNextSibling(name)) {
+            symbolTable.define(tree.getIdentifier(name), typeName, kind);
+        }
+    }
+
+    private void compileSubroutine(int node) {
+        symbolTable.startSubroutine();
+
+        KeywordType routineType = tree.getKeyword(node);
+        if(routineType == KeywordType.METHOD) {
+            symbolTable.define("this", className, VariableKind.ARG);
+        }
+
+        int returnType = tree.getFirstChild(node);
+        int name = tree.getNextSibling(returnType);
+        int parameters = tree.getNextSibling(name);
+
+        for(int param = tree.getFirstChild(parameters); param != NONE; param = tree.getNextSibling(param)) {
+            int typeNode = tree.getFirstChild(param);
+            symbolTable.define(tree.getIdentifier(tree.getNextSibling(typeNode)), tree.getTypeName(typeNode), VariableKind.ARG);
+        }
+
+        int child = tree.getNextSibling(parameters);
+        while(tree.is(child, NodeKind.VAR_DEC)) {
+            defineVariables(child, VariableKind.VAR);
+            child = tree.getNextSibling(child);
+        }
+
+        // At this point, the symbol table knows the number of local variables we have.
+        // Thus, we can go ask it when we load construct the VM function definition.
+        vmWriter.writeFunction(
+                className + "." + tree.getIdentifier(name).getValue(),
+                symbolTable.varCount(VariableKind.VAR)
+        );
+
+        // In the case of constructors, we need to allocate space for the object
+        // and then also align the THIS segment.
+        if(routineType == KeywordType.CONSTRUCTOR) {
+            vmWriter.writePush(Segment.CONSTANT, symbolTable.varCount(VariableKind.FIELD));
+            vmWriter.writeCall("Memory.alloc", 1);
+
+            vmWriter.writePop(Segment.POINTER, 0);
+        }
+        else if(routineType == KeywordType.METHOD) {
+            // All method calls implicitly get the THIS pointer passed in as the
+            // first argument. Thus, we need to offset all future arguments
+            // by one. Also, we need to align the THIS segment appropriately.
+            vmWriter.writePush(Segment.ARGUMENT, 0);
+            vmWriter.writePop(Segment.POINTER, 0);
+        }
+
+        // Any subroutine could be the first one to use a string, so they
+        // all need to check that the strings are there.
+        if(stringPool != null && usesPooledStrings(child)) {
+            stringPool.writeGuard(className, getLabel("STRINGS-READY"), vmWriter);
+        }
+
+        // Now that that's done, we can get onto the rest of the subroutine
+        compileStatements(child);
+    }
+    // endregion
+
+    // region Statements
+    /**
+     * @return False if the statements can never finish (because they always
+     *         return, or get stuck in a loop), in which case anything after
+     *         them is unreachable. Without dead code elimination, this is
+     *         always true, since nobody is going to look.
+     */
+    private boolean compileStatements(int node) {
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            if(!compileStatement(child)) {
+                // Still compiled, so that any mistakes in there get reported,
+                // but none of it goes anywhere.
+                int rest = tree.getNextSibling(child);
+                if(rest != NONE) {
+                    discard(() -> {
+                        for(int dead = rest; dead != NONE; dead = tree.getNextSibling(dead)) {
+                            compileStatement(dead);
+                        }
+                    });
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return False if the statement can never finish. See compileStatements().
+     */
+    private boolean compileStatement(int node) {
+        switch(tree.getKind(node)) {
+            case LET:    compileLet(node); return true;
+            case DO:     compileDo(node); return true;
+            case IF:     return compileIf(node);
+            case WHILE:  return compileWhile(node);
+            case RETURN: compileReturn(node); return !isPruning();
+            default:     return true;
+        }
+    }
+
+    private void compileDo(int node) {
+        compileSubroutineCall(tree.getFirstChild(node));
+
+        // All functions return something, even void functions. However,
+        // we discard anything that comes out of a 'Do' call.
+        vmWriter.writePop(Segment.TEMP, Segment.DISCARD_TEMP);
+    }
+
+    private void compileLet(int node) {
+        int name = tree.getFirstChild(node);
+        Variable var = getVariable(name);
+
+        if(tree.getValue(node) == 0) {
+            compileExpression(tree.getNextSibling(name));
+
+            // Now the value to push is sitting on the stack... we can store it.
+            writePop(var);
+        }
+        else {
+            int index = tree.getNextSibling(name);
+            compileExpression(index);
+            compileExpression(tree.getNextSibling(index));
+
+            // Well this is annoying... now at this point, we have the array index
+            // UNDER the value we want to store. We'll need to temporarily save it.
+            vmWriter.writePop(Segment.TEMP, Segment.DISCARD_TEMP);
+
+            // Ok, now the array offset is on the top. Thus, we can calculate the
+            // target address we want to store the value at.
+            writePush(var);
+            vmWriter.writeArithmetic(ArithmeticCommand.ADD);
+
+            // Now we'll adjust the THAT segment to point where at our target address.
+            vmWriter.writePop(Segment.POINTER, 1);
+
+            // Ok, now that everything is aligned, we can restore the value we
+            // saved in TEMP and then store it.
+            vmWriter.writePush(Segment.TEMP, Segment.DISCARD_TEMP);
+            vmWriter.writePop(Segment.THAT, 0);
+        }
+    }
+
+    private boolean compileWhile(int node) {
+        String baseLabel = getLabel();
+        String whileStart = baseLabel + "WHILE-START";
+        String whileEnd = baseLabel + "WHILE-END";
+
+        int condition = tree.getFirstChild(node);
+        int body = tree.getNextSibling(condition);
+
+        int constant = getConstantCondition(condition);
+        if(constant != NOT_CONSTANT && !isTaken(constant)) {
+            // while(false) never runs at all. That's the label, the
+            // condition, not, if-goto, the body, goto and the other label.
+            discard(() -> compileExpression(condition));
+            discard(() -> compileStatements(body));
+            instructionsRemoved += 5;
+            return true;
+        }
+
+        vmWriter.writeLabel(whileStart);
+
+        if(constant != NOT_CONSTANT) {
+            // while(true) never checks anything, and since Jack doesn't have
+            // break, it never ends either. There's no need for the condition,
+            // the not, the if-goto or the end label.
+            discard(() -> compileExpression(condition));
+            instructionsRemoved += 3;
+
+            compileStatements(body);
+            vmWriter.writeGoto(whileStart);
+            return false;
+        }
+
+        compileExpression(condition);
+
+        // We want to make the jump to the end if the while condition is false.
+        // Thus, we'll have to perform a NOT before we do the if-goto
+        vmWriter.writeArithmetic(ArithmeticCommand.NOT);
+        vmWriter.writeIf(whileEnd);
+
+        compileStatements(body);
+
+        // Now that we've gone through the contents of the while loop,
+        // we'll want to go back to the start. And being the end of the loop,
+        // the end label comes right after.
+        vmWriter.writeGoto(whileStart);
+        vmWriter.writeLabel(whileEnd);
+
+        return true;
+    }
+
+    private boolean compileIf(int node) {
+        String baseLabel = getLabel();
+        String endBranch1 = baseLabel + "END-IF";
+        String endBranch2 = baseLabel + "END-ELSE";
+
+        int condition = tree.getFirstChild(node);
+        int body = tree.getNextSibling(condition);
+        int elseBody = tree.getNextSibling(body);
+
+        int constant = getConstantCondition(condition);
+        if(constant != NOT_CONSTANT) {
+            // Only one of the branches can ever run, so that's all we keep.
+            // Everything else (the not, if-goto, goto and both labels) goes.
+            discard(() -> compileExpression(condition));
+            instructionsRemoved += 5;
+
+            int taken = (isTaken(constant) ? body : elseBody);
+            int skipped = (isTaken(constant) ? elseBody : body);
+            if(skipped != NONE) {
+                discard(() -> compileStatements(skipped));
+            }
+
+            return (taken == NONE || compileStatements(taken));
+        }
+
+        compileExpression(condition);
+
+        // So we have the result of the expression within the "if" statement.
+        // Now to see if we jump. Note, however, that we want to jump past
+        // the first portion of code ONLY IF the result of the expression is
+        // false.
+        vmWriter.writeArithmetic(ArithmeticCommand.NOT);
+        vmWriter.writeIf(endBranch1);
+
+        boolean bodyFinishes = compileStatements(body);
+
+        // It's much simpler to assume that we have an else, and then
+        // always make that jump. In other words, that label always exists
+        // even if we have no else branch. When we're pruning, though, the
+        // jump (and its label) only gets written if something can use it.
+        boolean needsElseJump = !isPruning() || (elseBody != NONE && bodyFinishes);
+        if(needsElseJump) {
+            vmWriter.writeGoto(endBranch2);
+        }
+        vmWriter.writeLabel(endBranch1);
+
+        boolean elseFinishes = true;
+        if(elseBody != NONE) {
+            elseFinishes = compileStatements(elseBody);
+        }
+
+        // Again, due to our assumption above, this always exists even if
+        // it technically doesn't need to sometimes.
+        if(needsElseJump) {
+            vmWriter.writeLabel(endBranch2);
+        }
+        else {
+            instructionsRemoved += 2;
+        }
+
+        return bodyFinishes || elseFinishes;
+    }
+
+    private void compileReturn(int node) {
+        int expression = tree.getFirstChild(node);
+        if(expression != NONE) {
+            // This will leave the appropriate return value sitting
+            // on the stack.
+            compileExpression(expression);
+        }
+        else {
+            // Even for void functions, we return a 0.
+            vmWriter.writePush(Segment.CONSTANT, 0);
+        }
+        vmWriter.writeReturn();
+    }
+    // endregion
+
+    // region Dead code
+    private boolean isPruning() {
+        return options.isDeadCodeElimination() && discardDepth == 0;
+    }
+
+    /**
+     * Compiles something as usual, but throws away the code. This way,
+     * unreachable code still gets checked for mistakes, and we know how
+     * much of it there was. Anything that counts what ended up in the output
+     * (like pooled strings or inlined calls) has to check discardDepth, so
+     * it doesn't count code that never made it there.
+     */
+    private void discard(Runnable compile) {
+        CommandWriter realWriter = vmWriter;
+        InstructionBuffer thrownAway = new InstructionBuffer();
+
+        vmWriter = thrownAway;
+        discardDepth++;
+        try {
+            compile.run();
+        }
+        finally {
+            discardDepth--;
+            vmWriter = realWriter;
+        }
+
+        instructionsRemoved += thrownAway.size();
+    }
+
+    /**
+     * Conditions are compiled as "not; if-goto", and if-goto jumps on
+     * anything but 0. So the branch is only taken when the condition is
+     * exactly true (-1), and "if(5)" skips its body. Odd, but that's what
+     * the code without pruning does, so we have to match it.
+     */
+    private static boolean isTaken(int condition) {
+        return (short) condition == -1;
+    }
+
+    /**
+     * @return The condition's value, if it's made of nothing but constants
+     *         (like "true" or "~(1 = 2)"), or NOT_CONSTANT. This is always
+     *         NOT_CONSTANT if we aren't pruning.
+     */
+    private int getConstantCondition(int node) {
+        if(!isPruning() || !isConstantExpression(node)) {
+            return NOT_CONSTANT;
+        }
+
+        int mark = expressions.mark();
+        try {
+            int root = expressionOptimizer.optimize(buildExpression(node));
+            return (expressions.isConstant(root) ? expressions.getValue(root) : NOT_CONSTANT);
+        }
+        finally {
+            expressions.release(mark);
+        }
+    }
+
+    private boolean isConstantExpression(int node) {
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            // Operators are in between the terms, and never change anything.
+            if(!tree.is(child, NodeKind.OPERATOR) && !isConstantTerm(child)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isConstantTerm(int node) {
+        switch(tree.getKind(node)) {
+            case INT_CONSTANT:
+                return true;
+
+            case KEYWORD_CONSTANT:
+                return tree.getKeyword(node) != KeywordType.THIS;
+
+            case UNARY:
+                return isConstantTerm(tree.getFirstChild(node));
+
+            case PARENTHESES:
+                return isConstantExpression(tree.getFirstChild(node));
+
+            default:
+                return false;
+        }
+    }
+    // endregion
+
+    // region Expressions
+    /**
+     * Compiles a whole expression and writes its VM code. The expression
+     * is turned into an ExpressionPool tree first, so that it can be
+     * simplified (if that's turned on) before anything gets written.
+     */
+    private void compileExpression(int node) {
+        int mark = expressions.mark();
+
+        int root = buildExpression(node);
+        if(options.isConstantFolding()) {
+            expressionOptimizer.write(expressionOptimizer.optimize(root), vmWriter);
+        }
+        else {
+            expressions.writeTo(root, vmWriter);
+        }
+
+        expressions.release(mark);
+    }
+
+    /**
+     * @return The ExpressionPool node for the expression.
+     */
+    private int buildExpression(int node) {
+        int term = tree.getFirstChild(node);
+        int result = buildTerm(term);
+
+        // Jack doesn't have any precedence, so everything so far is
+        // always the left side.
+        for(int op = tree.getNextSibling(term); op != NONE; op = tree.getNextSibling(term)) {
+            term = tree.getNextSibling(op);
+
+            SymbolToken symbol = (SymbolToken) tree.getToken(op);
+            result = expressions.binary(ArithmeticCommand.fromBinarySymbol(symbol), result, buildTerm(term));
+        }
+
+        return result;
+    }
+
+    /**
+     * Constants, variables and operators get their own nodes; anything else
+     * (calls, array accesses, strings) gets compiled right away into a CODE node.
+     *
+     * @return The ExpressionPool node for the term.
+     */
+    private int buildTerm(int node) {
+        switch(tree.getKind(node)) {
+            case INT_CONSTANT:
+                return expressions.constant(((IntLiteralToken) tree.getToken(node)).getValue());
+
+            case KEYWORD_CONSTANT:
+                switch(tree.getKeyword(node)) {
+                    case NULL:
+                    case FALSE:
+                        return expressions.constant(0);
+                    case TRUE:
+                        // This gets written as "push constant 1; neg"
+                        return expressions.constant(-1);
+                    case THIS:
+                        return expressions.variable(Segment.POINTER, 0);
+                    default:
+                        throw new IllegalArgumentException("Unsupported const keyword " + tree.getToken(node));
+                }
+
+            case VARIABLE:
+                Variable var = getVariable(node);
+                return expressions.variable(Segment.fromVariableKind(var.getKind()), var.getIndex());
+
+            case UNARY:
+                SymbolToken symbol = (SymbolToken) tree.getToken(node);
+                return expressions.unary(ArithmeticCommand.fromUnarySymbol(symbol), buildTerm(tree.getFirstChild(node)));
+
+            case PARENTHESES:
+                return buildExpression(tree.getFirstChild(node));
+
+            case STRING_CONSTANT:
+                String literal = ((StringLiteralToken) tree.getToken(node)).getValue();
+                if(stringPool != null && stringPool.contains(literal)) {
+                    // Dead code doesn't get to count towards what the pool saved.
+                    int index = (discardDepth > 0 ? stringPool.getStatic(literal) : stringPool.use(literal));
+                    return expressions.variable(Segment.STATIC, index);
+                }
+                return buildOpaqueTerm(node);
+
+            default:
+                return buildOpaqueTerm(node);
+        }
+    }
+
+    /**
+     * None of these can be simplified, so we compile them right now, and
+     * hold onto the code for later.
+     */
+    private int buildOpaqueTerm(int node) {
+        int result = expressions.code();
+
+        CommandWriter realWriter = vmWriter;
+        vmWriter = expressions.getCode(result);
+        try {
+            compileOpaqueTerm(node);
+        }
+        finally {
+            vmWriter = realWriter;
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the terms that buildTerm() can't do anything with.
+     */
+    private void compileOpaqueTerm(int node) {
+        switch(tree.getKind(node)) {
+            case STRING_CONSTANT:
+                StringPool.writeNew(((StringLiteralToken) tree.getToken(node)).getValue(), vmWriter);
+                break;
+
+            case ARRAY_ACCESS:
+                // Get the base array address
+                writePush(getVariable(node));
+
+                compileExpression(tree.getFirstChild(node));
+
+                // Now that we have the offset within the square brackets, we can
+                // calculate the desired address with a simple add.
+                vmWriter.writeArithmetic(ArithmeticCommand.ADD);
+
+                // Align the THAT segment based on the calculated offset and then
+                // fetch that value.
+                vmWriter.writePop(Segment.POINTER, 1);
+                vmWriter.writePush(Segment.THAT, 0);
+                break;
+
+            case CALL:
+                compileSubroutineCall(node);
+                break;
+        }
+    }
+    // endregion
+
+    // region Subroutine calls
+    /**
+     * Figures out what to do with a subroutine call. Calls take one
+     * of two forms:
+     *  1. name(expressionList)
+     *  2. obj.name(expressionList)
+     */
+    private void compileSubroutineCall(int node) {
+        IdentifierToken subroutineToken = tree.getIdentifier(node);
+        int child = tree.getFirstChild(node);
+
+        String subroutineName;
+
+        Variable objVar = null;
+        int argCount = 0;
+        boolean inline = false;
+        boolean saveThis = false;
+
+        if(tree.getValue(node) != 0) {
+            IdentifierToken objToken = tree.getIdentifier(child);
+            child = tree.getNextSibling(child);
+
+            objVar = symbolTable.get(objToken);
+
+            // If we found a variable in the symbol table that matches the object,
+            // we know we're calling a method and not a function. Thus, we need
+            // to push the method's pointer onto the stack as the first argument.
+            if(objVar != null) {
+                // The name of the method is based on the class, so we
+                // need to make sure the call is going from that.
+                subroutineName = objVar.getType() + "." + subroutineToken.getValue();
+
+                // But before we push the object's pointer onto the stack, we need
+                // to save our OWN pointer, since it'll get overwritten. An
+                // inlined copy leaves THIS alone, so then there's no need.
+                // Strictly speaking, there's never any need: call and return
+                // already save and restore THIS as part of the frame. The
+                // lean calls option trusts them to do that.
+                inline = canInline(subroutineName, 1 + countArguments(child));
+                saveThis = !inline && !options.isLeanCalls();
+                if(saveThis) {
+                    vmWriter.writePush(Segment.POINTER, 0);
+                }
+                writePush(objVar);
+
+                // Also we have one extra arg so this needs to get incremented!
+                argCount++;
+            }
+            else {
+                // We're calling a function, so we can just use the objectToken
+                // directly.
+                subroutineName = objToken.getValue() + "." + subroutineToken.getValue();
+            }
+        }
+        else {
+
+            // If there is no previous object name, then we know it's
+            // a local method.
+            subroutineName = className + "." + subroutineToken.getValue();
+
+            // Ok, we're calling a method in our own object, but it'll
+            // still want to know which object we're calling it from.
+            // Thus, we still need to put our own pointer on the stack.
+            vmWriter.writePush(Segment.POINTER, 0);
+
+            argCount++;
+        }
+
+        for(; child != NONE; child = tree.getNextSibling(child)) {
+            compileExpression(child);
+            argCount++;
+        }
+
+        if(inline || canInline(subroutineName, argCount)) {
+            inliner.writeInline(subroutineName, argCount, vmWriter);
+            if(discardDepth == 0) {
+                callsInlined++;
+            }
+            return;
+        }
+
+        vmWriter.writeCall(subroutineName, argCount);
+
+        // If we did just complete a method call (IN ANOTHER OBJECT),
+        // we'll need to restore the THIS segment back to where it
+        // was before. Now this is a bit of a pain because it's
+        // buried under the return value.
+        if(saveThis) {
+            // We'll want to get the return value out of the way.
+            vmWriter.writePop(Segment.TEMP, Segment.DISCARD_TEMP);
+
+            // Now we can restore the THIS address.
+            vmWriter.writePop(Segment.POINTER, 0);
+
+            // And now we can put the return value back on the stack.
+            vmWriter.writePush(Segment.TEMP, Segment.DISCARD_TEMP);
+        }
+    }
+
+    private boolean canInline(String subroutineName, int argCount) {
+        return inliner != null && inliner.canInline(subroutineName, argCount);
+    }
+
+    private int countArguments(int firstArgument) {
+        int count = 0;
+        for(int arg = firstArgument; arg != NONE; arg = tree.getNextSibling(arg)) {
+            count++;
+        }
+
+        return count;
+    }
+    // endregion
+}
@@ -38,7 +38,7 @@ public class Variable {
     public String toString() {
         return name + " (" +
                "type: " + type + ", " +
-               "kind: " + kind.toString().toLowerCase() + ", " +
+               "kind: " + kind.getXMLName() + ", " +
                "index: " + index +
                ") ";
     }
@@ -10,6 +10,16 @@ public enum VariableKind {
     //UNDEF,
     STATIC, FIELD, ARG, VAR;
 
+    private final String xmlName = name().toLowerCase();
+
+    /**
+     * @return The name used for this kind in XML output. This is cached, so
+     *         no strings get built.
+     */
+    public String getXMLName() {
+        return xmlName;
+    }
+
     public static VariableKind fromKeyword(KeywordType keyword) {
         switch(keyword) {
             case STATIC: return STATIC;
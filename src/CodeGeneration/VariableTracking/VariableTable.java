@@ -6,27 +6,105 @@ package CodeGeneration.VariableTracking;
 
 import SyntaxAnalysis.Tokens.IdentifierToken;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import java.util.Arrays;
+
+/**
+ * Keeps track of every variable that's currently visible. This used to be
+ * a HashMap per kind of variable, which meant every lookup went through up
+ * to four HashMaps and every subroutine made two new ones.
+ *
+ * Now everything lives in one array, in the order it was defined, with a
+ * small open-addressing hash table of indices into it. Class variables come
+ * first, so starting a new subroutine just means chopping the array back to
+ * where the subroutine's variables began (and clearing their hash slots).
+ * Nothing gets allocated after the table has grown to fit the biggest
+ * subroutine; even the Variable objects get reused.
+ *
+ * NOTE: Since they're reused, a subroutine's Variables are only good until
+ * the next call to startSubroutine(). Hang onto the kind and index instead.
+ */
 public class VariableTable {
 
-    //private Map<String, Variable> classVariables;
-    //private Map<String, Variable> subroutineVariables;
-
-    private Map<VariableKind, Map<String, Variable>> variables;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Every variable that's visible, from 0 up to count. Anything past that
+     * is left over from an earlier subroutine and is waiting to be reused.
+     */
+    private Variable[] entries = new Variable[INITIAL_CAPACITY];
+    private int count = 0;
+
+    /**
+     * Where the current subroutine's variables start in entries. This only
+     * means anything once startSubroutine() has been called.
+     */
+    private int scopeStart = 0;
+    private boolean inSubroutine = false;
+
+    /**
+     * Set if a class variable gets defined in the middle of a subroutine,
+     * which means the subroutine's variables aren't all at the end anymore.
+     */
+    private boolean scopeMixed = false;
+
+    /**
+     * The hash table. Each slot holds an index into entries, plus one, so
+     * that 0 can mean empty. This is always at least twice as big as count,
+     * so there's always an empty slot to stop a probe.
+     */
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * How many of each kind have been defined, by VariableKind's ordinal.
+     * This is the next index for each kind.
+     */
+    private final int[] kindCounts = new int[VariableKind.values().length];
 
     public VariableTable() {
-        //classVariables = new HashMap<>();
-        variables = new HashMap<>();
-        variables.put(VariableKind.STATIC, new HashMap<>());
-        variables.put(VariableKind.FIELD, new HashMap<>());
+
     }
 
     public void startSubroutine() {
-        //subroutineVariables = new HashMap<>();
-        variables.put(VariableKind.ARG, new HashMap<>());
-        variables.put(VariableKind.VAR, new HashMap<>());
+        if(!inSubroutine) {
+            // Everything so far is a class variable, which all stay.
+            scopeStart = count;
+        }
+        else if(scopeMixed) {
+            removeMixedScope();
+        }
+        else {
+            // Taking them out in the opposite order they were put in puts the
+            // table back exactly how it was, so none of the probes break.
+            for(int i = count - 1; i >= scopeStart; i--) {
+                slots[findSlot(entries[i].name)] = 0;
+            }
+            count = scopeStart;
+        }
+
+        kindCounts[VariableKind.ARG.ordinal()] = 0;
+        kindCounts[VariableKind.VAR.ordinal()] = 0;
+        scopeStart = count;
+        inSubroutine = true;
+    }
+
+    /**
+     * The slow way of starting a new subroutine: keep only the class variables
+     * (moving them down where needed) and re-hash everything.
+     */
+    private void removeMixedScope() {
+        int kept = scopeStart;
+        for(int i = scopeStart; i < count; i++) {
+            VariableKind kind = entries[i].kind;
+            if(kind == VariableKind.STATIC || kind == VariableKind.FIELD) {
+                Variable classVar = entries[i];
+                entries[i] = entries[kept];
+                entries[kept++] = classVar;
+            }
+        }
+
+        count = kept;
+        scopeMixed = false;
+        rehash();
     }
 
     public Variable define(IdentifierToken token, String type, VariableKind kind) {
@@ -37,18 +115,42 @@ public class VariableTable {
         if(get(name) != null) {
             throw new IllegalArgumentException("There's already a variable with the name " + name);
         }
+
+        if((count + 1) * 2 > slots.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            slots = new int[slots.length * 2];
+            rehash();
+        }
+
+        // Interning means that every subroutine with an "i" in it shares the
+        // one String, and that most lookups are decided by the == check in
+        // equals() without looking at the characters.
+        name = name.intern();
+        int index = kindCounts[kind.ordinal()]++;
+
+        Variable newVar = entries[count];
+        if(newVar == null) {
+            newVar = new Variable(name, type, kind, index);
+            entries[count] = newVar;
+        }
         else {
-            Map<String, Variable> targetMap = variables.get(kind);
-            int index = varCount(kind);
-            Variable newVar = new Variable(name, type, kind, index);
-            targetMap.put(name, newVar);
+            newVar.name = name;
+            newVar.type = type;
+            newVar.kind = kind;
+            newVar.index = index;
+        }
+
+        slots[findSlot(name)] = ++count;
 
-            return newVar;
+        if(inSubroutine && (kind == VariableKind.STATIC || kind == VariableKind.FIELD)) {
+            scopeMixed = true;
         }
+
+        return newVar;
     }
 
     public int varCount(VariableKind kind) {
-        return variables.get(kind).size();
+        return kindCounts[kind.ordinal()];
     }
 
     public Variable get(IdentifierToken token) {
@@ -56,15 +158,32 @@ public class VariableTable {
     }
 
     public Variable get(String name) {
-        for(Map<String, Variable> subTable : variables.values()) {
-            Variable result = subTable.get(name);
+        int slot = slots[findSlot(name)];
+        return (slot != 0 ? entries[slot - 1] : null);
+    }
 
-            if(result != null) {
-                return result;
-            }
+    // region Hashing
+    /**
+     * Finds the slot a name is in, or the empty slot where it would go.
+     */
+    private int findSlot(String name) {
+        int mask = slots.length - 1;
+        int h = name.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+
+        while(slots[i] != 0 && !entries[slots[i] - 1].name.equals(name)) {
+            i = (i + 1) & mask;
         }
 
-        return null;
+        return i;
+    }
+
+    private void rehash() {
+        Arrays.fill(slots, 0);
+        for(int i = 0; i < count; i++) {
+            slots[findSlot(entries[i].name)] = i + 1;
+        }
     }
+    // endregion
 
 }
@@ -0,0 +1,366 @@
+package CodeGeneration;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IR.NodeKind;
+import CodeGeneration.IR.SyntaxTree;
+import CodeGeneration.VariableTracking.Variable;
+import CodeGeneration.VariableTracking.VariableKind;
+import CodeGeneration.VariableTracking.VariableTable;
+import SyntaxAnalysis.KeywordType;
+import SyntaxAnalysis.Tokens.IdentifierToken;
+import SyntaxAnalysis.Tokens.KeywordToken;
+import SyntaxAnalysis.Tokens.SourcePosition;
+
+import static CodeGeneration.IR.SyntaxTree.NONE;
+
+/**
+ * Walks a SyntaxTree and writes out the XML version of it. The tree
+ * doesn't keep punctuation around, so that gets filled back in here.
+ *
+ * This keeps its own table of variables, since the XML notes what every
+ * variable is as it gets defined and used.
+ */
+public class XMLGenerator {
+
+    private static final KeywordToken CLASS_KEYWORD = new KeywordToken(SourcePosition.NONE, null, KeywordType.CLASS);
+
+    private SyntaxTree tree;
+    private XMLWriter xml;
+    private VariableTable symbolTable = new VariableTable();
+
+    public XMLGenerator(SyntaxTree tree, XMLWriter xml) {
+        this.tree = tree;
+        this.xml = xml;
+    }
+
+    public void generate() {
+        writeClass(tree.getRoot());
+    }
+
+    private Variable getVariable(int node) {
+        IdentifierToken name = tree.getIdentifier(node);
+        Variable var = symbolTable.get(name);
+        if(var == null) {
+            throw new IllegalSyntaxException(name, "Unknown variable " + name.getValue());
+        }
+
+        return var;
+    }
+
+    // region Declarations
+    private void writeClass(int node) {
+        xml.open("class");
+
+        xml.write(CLASS_KEYWORD);
+        xml.write(tree.getToken(node));
+        xml.writeSymbol('{');
+
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            switch(tree.getKind(child)) {
+                case CLASS_VAR_DEC:
+                    writeVarDec(child, "classVarDec", VariableKind.fromKeyword(tree.getKeyword(child)));
+                    break;
+
+                case SUBROUTINE:
+                    writeSubroutine(child);
+                    break;
+
+                default:
+                    xml.writeLine(tree.getToken(child).toXML() + "(Unsupported)");
+            }
+        }
+
+        xml.writeSymbol('}');
+
+        xml.close("class");
+    }
+
+    /**
+     * Handles both class variables and local variables, which only
+     * really differ by their tag.
+     */
+    private void writeVarDec(int node, String tag, VariableKind kind) {
+        xml.open(tag);
+
+        xml.write(tree.getToken(node));
+
+        int typeNode = tree.getFirstChild(node);
+        String typeName = tree.getTypeName(typeNode);
+        xml.write(tree.getToken(typeNode));
+
+        for(int name = tree.getNextSibling(typeNode); name != NONE; name = tree.getNextSibling(name)) {
+            Variable newVar = symbolTable.define(tree.getIdentifier(name), typeName, kind);
+            xml.write(newVar, "(def)");
+
+            if(tree.getNextSibling(name) != NONE) {
+                xml.writeSymbol(',');
+            }
+        }
+        xml.writeSymbol(';');
+
+        xml.close(tag);
+    }
+
+    private void writeSubroutine(int node) {
+        symbolTable.startSubroutine();
+        if(tree.getKeyword(node) == KeywordType.METHOD) {
+            symbolTable.define("this", tree.getIdentifier(tree.getRoot()).getValue(), VariableKind.ARG);
+        }
+
+        int returnType = tree.getFirstChild(node);
+        int name = tree.getNextSibling(returnType);
+        int parameters = tree.getNextSibling(name);
+
+        xml.open("subroutineDec");
+
+        xml.write(tree.getToken(node));
+        xml.write(tree.getToken(returnType));
+        xml.write(tree.getToken(name));
+
+        xml.writeSymbol('(');
+        writeParameterList(parameters);
+        xml.writeSymbol(')');
+
+        xml.open("subroutineBody");
+        xml.writeSymbol('{');
+
+        int child = tree.getNextSibling(parameters);
+        while(tree.is(child, NodeKind.VAR_DEC)) {
+            writeVarDec(child, "varDec", VariableKind.VAR);
+            child = tree.getNextSibling(child);
+        }
+
+        writeStatements(child);
+
+        xml.writeSymbol('}');
+        xml.close("subroutineBody");
+
+        xml.close("subroutineDec");
+    }
+
+    private void writeParameterList(int node) {
+        xml.open("parameterList");
+
+        for(int param = tree.getFirstChild(node); param != NONE; param = tree.getNextSibling(param)) {
+            int typeNode = tree.getFirstChild(param);
+            int nameNode = tree.getNextSibling(typeNode);
+
+            xml.write(tree.getToken(typeNode));
+            Variable newVar = symbolTable.define(tree.getIdentifier(nameNode), tree.getTypeName(typeNode), VariableKind.ARG);
+            xml.write(newVar, "(def)");
+
+            if(tree.getNextSibling(param) != NONE) {
+                xml.writeSymbol(',');
+            }
+        }
+
+        xml.close("parameterList");
+    }
+    // endregion
+
+    // region Statements
+    private void writeStatements(int node) {
+        xml.open("statements");
+
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            switch(tree.getKind(child)) {
+                case LET:    writeLet(child); break;
+                case DO:     writeDo(child); break;
+                case IF:     writeIf(child); break;
+                case WHILE:  writeWhile(child); break;
+                case RETURN: writeReturn(child); break;
+            }
+        }
+
+        xml.close("statements");
+    }
+
+    private void writeDo(int node) {
+        xml.open("doStatement");
+
+        xml.write(tree.getToken(node));
+        writeSubroutineCall(tree.getFirstChild(node));
+        xml.writeSymbol(';');
+
+        xml.close("doStatement");
+    }
+
+    private void writeLet(int node) {
+        xml.open("letStatement");
+
+        xml.write(tree.getToken(node));
+
+        int name = tree.getFirstChild(node);
+        xml.write(getVariable(name), "(ref)");
+
+        int expression = tree.getNextSibling(name);
+        if(tree.getValue(node) != 0) {
+            xml.writeSymbol('[');
+            writeExpression(expression);
+            xml.writeSymbol(']');
+
+            expression = tree.getNextSibling(expression);
+        }
+        xml.writeSymbol('=');
+
+        writeExpression(expression);
+
+        xml.writeSymbol(';');
+
+        xml.close("letStatement");
+    }
+
+    private void writeWhile(int node) {
+        int condition = tree.getFirstChild(node);
+
+        xml.open("whileStatement");
+
+        xml.write(tree.getToken(node));
+
+        xml.writeSymbol('(');
+        writeExpression(condition);
+        xml.writeSymbol(')');
+
+        xml.writeSymbol('{');
+        writeStatements(tree.getNextSibling(condition));
+        xml.writeSymbol('}');
+
+        xml.close("whileStatement");
+    }
+
+    private void writeIf(int node) {
+        int condition = tree.getFirstChild(node);
+        int body = tree.getNextSibling(condition);
+        int elseBody = tree.getNextSibling(body);
+
+        xml.open("ifStatement");
+
+        xml.write(tree.getToken(node));
+
+        xml.writeSymbol('(');
+        writeExpression(condition);
+        xml.writeSymbol(')');
+
+        xml.writeSymbol('{');
+        writeStatements(body);
+        xml.writeSymbol('}');
+
+        if(elseBody != NONE) {
+            xml.write(tree.getToken(elseBody));
+
+            xml.writeSymbol('{');
+            writeStatements(elseBody);
+            xml.writeSymbol('}');
+        }
+
+        xml.close("ifStatement");
+    }
+
+    private void writeReturn(int node) {
+        xml.open("returnStatement");
+
+        xml.write(tree.getToken(node));
+
+        int expression = tree.getFirstChild(node);
+        if(expression != NONE) {
+            writeExpression(expression);
+        }
+
+        xml.writeSymbol(';');
+
+        xml.close("returnStatement");
+    }
+    // endregion
+
+    // region Expressions
+    private void writeExpression(int node) {
+        xml.open("expression");
+
+        // Terms and operators take turns, so the operators can just be
+        // written where they are.
+        for(int child = tree.getFirstChild(node); child != NONE; child = tree.getNextSibling(child)) {
+            if(tree.is(child, NodeKind.OPERATOR)) {
+                xml.write(tree.getToken(child));
+            }
+            else {
+                writeTerm(child);
+            }
+        }
+
+        xml.close("expression");
+    }
+
+    private void writeTerm(int node) {
+        xml.open("term");
+
+        switch(tree.getKind(node)) {
+            case INT_CONSTANT:
+            case STRING_CONSTANT:
+            case KEYWORD_CONSTANT:
+                xml.write(tree.getToken(node));
+                break;
+
+            case VARIABLE:
+                xml.write(getVariable(node), "(ref)");
+                break;
+
+            case ARRAY_ACCESS:
+                xml.write(getVariable(node), "(ref)");
+
+                xml.writeSymbol('[');
+                writeExpression(tree.getFirstChild(node));
+                xml.writeSymbol(']');
+                break;
+
+            case CALL:
+                writeSubroutineCall(node);
+                break;
+
+            case UNARY:
+                xml.write(tree.getToken(node));
+                writeTerm(tree.getFirstChild(node));
+                break;
+
+            case PARENTHESES:
+                xml.write(tree.getToken(node));
+                writeExpression(tree.getFirstChild(node));
+                xml.writeSymbol(')');
+                break;
+        }
+
+        xml.close("term");
+    }
+
+    /**
+     * Note that, in our XML format, there is no "subroutineCall" block,
+     * so this just spews out the pieces.
+     */
+    private void writeSubroutineCall(int node) {
+        int child = tree.getFirstChild(node);
+
+        if(tree.getValue(node) != 0) {
+            xml.write(tree.getIdentifier(child), " (class)");
+            xml.writeSymbol('.');
+
+            child = tree.getNextSibling(child);
+        }
+
+        xml.write(tree.getIdentifier(node), " (subroutine)");
+
+        xml.writeSymbol('(');
+        xml.open("expressionList");
+        for(; child != NONE; child = tree.getNextSibling(child)) {
+            writeExpression(child);
+
+            if(tree.getNextSibling(child) != NONE) {
+                xml.writeSymbol(',');
+            }
+        }
+        xml.close("expressionList");
+        xml.writeSymbol(')');
+    }
+    // endregion
+}
@@ -0,0 +1,195 @@
+package CodeGeneration;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VariableTracking.Variable;
+import SyntaxAnalysis.Tokens.IdentifierToken;
+import SyntaxAnalysis.Tokens.Token;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Writes the XML version of the parse tree. This keeps track of the
+ * indentation itself, and everything goes through a buffer, so nothing
+ * reaches the underlying stream until flush() or close().
+ *
+ * IOExceptions are held onto rather than thrown (the same way PrintStream
+ * does it) and can be checked for with checkError().
+ */
+public class XMLWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private final static String INDENT = "  ";
+    private final static String NEWLINE = System.lineSeparator();
+
+    /**
+     * Indentation strings, indexed by level. These get built as needed,
+     * so each level's string only ever gets built once.
+     */
+    private static volatile String[] indents = { "" };
+
+    private Writer writer;
+    private int indentLevel = 0;
+    private IOException error = null;
+
+    public XMLWriter(Writer writer) {
+        this.writer = (writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, BUFFER_SIZE));
+    }
+
+    public XMLWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE));
+    }
+
+    private static String getIndent(int level) {
+        String[] cached = indents;
+        if(level >= cached.length) {
+            String[] grown = Arrays.copyOf(cached, Math.max(level + 1, cached.length * 2));
+            for(int i = cached.length; i < grown.length; i++) {
+                grown[i] = grown[i - 1] + INDENT;
+            }
+
+            indents = grown;
+            cached = grown;
+        }
+
+        return cached[level];
+    }
+
+    // region Raw output
+    private void write(String s) {
+        try {
+            writer.write(s);
+        }
+        catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void startLine() {
+        write(getIndent(indentLevel));
+    }
+
+    private void endLine() {
+        write(NEWLINE);
+    }
+    // endregion
+
+    /**
+     * Writes an opening tag on its own line, and indents everything after it.
+     * @param tag Name of the tag, without brackets.
+     */
+    public void open(String tag) {
+        startLine();
+        write("<");
+        write(tag);
+        write(">");
+        endLine();
+
+        indentLevel++;
+    }
+
+    /**
+     * Unindents, and then writes a closing tag on its own line.
+     * @param tag Name of the tag, without brackets.
+     */
+    public void close(String tag) {
+        indentLevel--;
+
+        startLine();
+        write("</");
+        write(tag);
+        write(">");
+        endLine();
+    }
+
+    /**
+     * Writes a line exactly as given (apart from the indentation).
+     */
+    public void writeLine(String value) {
+        startLine();
+        write(value);
+        endLine();
+    }
+
+    public void write(Token t) {
+        writeLine(t.toXML());
+    }
+
+    public void write(IdentifierToken t, String note) {
+        startLine();
+        write("<identifier> ");
+        write(t.getValue());
+        write(note);
+        write(" </identifier>");
+        endLine();
+    }
+
+    /**
+     * Writes a variable reference or definition. This matches Variable.toXML(note),
+     * but writes the pieces directly rather than building the string first.
+     */
+    public void write(Variable var, String note) {
+        startLine();
+        write("<identifier> ");
+        write(var.getName());
+        write(" (type: ");
+        write(var.getType());
+        write(", kind: ");
+        write(var.getKind().getXMLName());
+        write(", index: ");
+        write(Integer.toString(var.getIndex()));
+        write(") ");
+        write(note);
+        write(" </identifier>");
+        endLine();
+    }
+
+    /**
+     * Writes a symbol which doesn't have a token of its own (or where the
+     * token isn't handy), without having to make one up.
+     */
+    public void writeSymbol(char symbol) {
+        startLine();
+        write("<symbol> ");
+        switch(symbol) {
+            case '<': write("&lt;"); break;
+            case '>': write("&gt;"); break;
+            case '&': write("&amp;"); break;
+            default:
+                try {
+                    writer.write(symbol);
+                }
+                catch (IOException e) {
+                    error = e;
+                }
+        }
+        write(" </symbol>");
+        endLine();
+    }
+
+    public boolean checkError() {
+        flush();
+        return error != null;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        }
+        catch (IOException e) {
+            error = e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+
+        if(error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every OS function that the interpreter has built in. These only get used
+ * when the program doesn't bring its own, so it's fine to run a program
+ * alongside the real OS's .vm files (or a few of them).
+ *
+ * Methods count "this" as one of their arguments, same as in VM code.
+ */
+public enum BuiltIn {
+    MATH_INIT("Math.init", 0),
+    MATH_ABS("Math.abs", 1),
+    MATH_MULTIPLY("Math.multiply", 2),
+    MATH_DIVIDE("Math.divide", 2),
+    MATH_MIN("Math.min", 2),
+    MATH_MAX("Math.max", 2),
+    MATH_SQRT("Math.sqrt", 1),
+
+    MEMORY_INIT("Memory.init", 0),
+    MEMORY_PEEK("Memory.peek", 1),
+    MEMORY_POKE("Memory.poke", 2),
+    MEMORY_ALLOC("Memory.alloc", 1),
+    MEMORY_DEALLOC("Memory.deAlloc", 1),
+
+    ARRAY_NEW("Array.new", 1),
+    ARRAY_DISPOSE("Array.dispose", 1),
+
+    STRING_NEW("String.new", 1),
+    STRING_DISPOSE("String.dispose", 1),
+    STRING_LENGTH("String.length", 1),
+    STRING_CHAR_AT("String.charAt", 2),
+    STRING_SET_CHAR_AT("String.setCharAt", 3),
+    STRING_APPEND_CHAR("String.appendChar", 2),
+    STRING_ERASE_LAST_CHAR("String.eraseLastChar", 1),
+    STRING_INT_VALUE("String.intValue", 1),
+    STRING_SET_INT("String.setInt", 2),
+    STRING_BACK_SPACE("String.backSpace", 0),
+    STRING_DOUBLE_QUOTE("String.doubleQuote", 0),
+    STRING_NEW_LINE("String.newLine", 0),
+
+    OUTPUT_INIT("Output.init", 0),
+    OUTPUT_MOVE_CURSOR("Output.moveCursor", 2),
+    OUTPUT_PRINT_CHAR("Output.printChar", 1),
+    OUTPUT_PRINT_STRING("Output.printString", 1),
+    OUTPUT_PRINT_INT("Output.printInt", 1),
+    OUTPUT_PRINTLN("Output.println", 0),
+    OUTPUT_BACK_SPACE("Output.backSpace", 0),
+
+    SCREEN_INIT("Screen.init", 0),
+    SCREEN_CLEAR_SCREEN("Screen.clearScreen", 0),
+    SCREEN_SET_COLOR("Screen.setColor", 1),
+    SCREEN_DRAW_PIXEL("Screen.drawPixel", 2),
+    SCREEN_DRAW_LINE("Screen.drawLine", 4),
+    SCREEN_DRAW_RECTANGLE("Screen.drawRectangle", 4),
+    SCREEN_DRAW_CIRCLE("Screen.drawCircle", 3),
+
+    KEYBOARD_INIT("Keyboard.init", 0),
+    KEYBOARD_KEY_PRESSED("Keyboard.keyPressed", 0),
+    KEYBOARD_READ_CHAR("Keyboard.readChar", 0),
+    KEYBOARD_READ_LINE("Keyboard.readLine", 1),
+    KEYBOARD_READ_INT("Keyboard.readInt", 1),
+
+    SYS_HALT("Sys.halt", 0),
+    SYS_ERROR("Sys.error", 1),
+    SYS_WAIT("Sys.wait", 1);
+
+    private static final BuiltIn[] VALUES = values();
+    private static final Map<String, BuiltIn> BY_NAME = new HashMap<>();
+    static {
+        for(BuiltIn builtIn : VALUES) {
+            BY_NAME.put(builtIn.vmName, builtIn);
+        }
+    }
+
+    private final String vmName;
+    private final int argCount;
+
+    BuiltIn(String vmName, int argCount) {
+        this.vmName = vmName;
+        this.argCount = argCount;
+    }
+
+    public String getVMName() {
+        return vmName;
+    }
+
+    public int getArgCount() {
+        return argCount;
+    }
+
+    /**
+     * @return The built-in's number (its ordinal), or -1 if there isn't one
+     *         with that name.
+     */
+    public static int lookup(String vmName) {
+        BuiltIn builtIn = BY_NAME.get(vmName);
+        return (builtIn != null ? builtIn.ordinal() : -1);
+    }
+
+    public static BuiltIn get(int number) {
+        return VALUES[number];
+    }
+}
@@ -0,0 +1,627 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The built-in versions of the OS functions. These work on the same RAM as
+ * the program, so the screen really is at 16384, and objects really are on
+ * the heap, but everything runs in Java instead of as VM code.
+ *
+ * A few things are different from the real OS:
+ * - Strings are laid out as [max length, length, chars...]. Only matters
+ *   if the program pokes around in them itself.
+ * - Output doesn't draw text on the screen. It goes to a grid of characters
+ *   (and a log) instead, which is a lot easier to check.
+ * - Keyboard input comes from a script, and keyPressed() never sees a key.
+ *   Since keyPressed() is what most games poll once a frame, it's also how
+ *   we stop programs that would otherwise run forever.
+ */
+public class OperatingSystem {
+
+    // region Memory layout
+    public static final int HEAP_BASE = 2048;
+    public static final int HEAP_END = 16384;
+    public static final int SCREEN = 16384;
+    public static final int KEYBOARD = 24576;
+
+    public static final int SCREEN_WIDTH = 512;
+    public static final int SCREEN_HEIGHT = 256;
+    private static final int WORDS_PER_ROW = SCREEN_WIDTH / 16;
+    // endregion
+
+    // region Characters
+    public static final int TEXT_ROWS = 23;
+    public static final int TEXT_COLUMNS = 64;
+
+    private static final char NEW_LINE = 128;
+    private static final char BACK_SPACE = 129;
+    private static final char DOUBLE_QUOTE = '"';
+    // endregion
+
+    private final short[] ram;
+
+    /**
+     * Free blocks on the heap, by address, with their sizes. Neighbouring
+     * blocks get merged back together when things are freed.
+     */
+    private final TreeMap<Integer, Integer> freeBlocks = new TreeMap<>();
+    private final Map<Integer, Integer> allocations = new HashMap<>();
+    private int heapInUse = 0;
+    private int heapPeak = 0;
+
+    private boolean color = true;
+
+    private final char[][] text = new char[TEXT_ROWS][TEXT_COLUMNS];
+    private int row = 0;
+    private int column = 0;
+    private final StringBuilder log = new StringBuilder();
+
+    private String input = "";
+    private int inputPosition = 0;
+    private long keyPolls = 0;
+    private long maxKeyPolls = 0;
+    private long waited = 0;
+
+    public OperatingSystem(short[] ram) {
+        this.ram = ram;
+
+        freeBlocks.put(HEAP_BASE, HEAP_END - HEAP_BASE);
+        for(char[] line : text) {
+            Arrays.fill(line, ' ');
+        }
+    }
+
+    // region Settings
+    /**
+     * Sets what Keyboard.readChar() and friends read. Newlines end a line.
+     */
+    public void setInput(String input) {
+        this.input = input;
+        this.inputPosition = 0;
+    }
+
+    /**
+     * Stops the program after keyPressed() has been called this many times.
+     * A program like Square polls the keyboard once a frame, and never ends
+     * on its own, so this is how many frames it gets. 0 means no limit.
+     */
+    public void setMaxKeyPolls(long maxKeyPolls) {
+        this.maxKeyPolls = maxKeyPolls;
+    }
+    // endregion
+
+    /**
+     * Runs one of the built-ins.
+     * @param args Where the first argument is in RAM.
+     * @return What the function returns. Void functions return 0, just like
+     *         the real thing.
+     */
+    public short call(BuiltIn fn, int args) {
+        switch(fn) {
+            // region Math
+            case MATH_INIT:
+            case MEMORY_INIT:
+            case OUTPUT_INIT:
+            case SCREEN_INIT:
+            case KEYBOARD_INIT:
+                return 0;
+
+            case MATH_ABS:      return (short) Math.abs(ram[args]);
+            case MATH_MULTIPLY: return (short) (ram[args] * ram[args + 1]);
+            case MATH_DIVIDE:
+                if(ram[args + 1] == 0) {
+                    throw error(fn, "Division by zero");
+                }
+                return (short) (ram[args] / ram[args + 1]);
+            case MATH_MIN:      return (short) Math.min(ram[args], ram[args + 1]);
+            case MATH_MAX:      return (short) Math.max(ram[args], ram[args + 1]);
+            case MATH_SQRT:
+                if(ram[args] < 0) {
+                    throw error(fn, "Can't take the square root of a negative number");
+                }
+                return (short) Math.sqrt(ram[args]);
+            // endregion
+
+            // region Memory
+            case MEMORY_PEEK:
+                return ram[checkAddress(fn, ram[args])];
+            case MEMORY_POKE:
+                ram[checkAddress(fn, ram[args])] = ram[args + 1];
+                return 0;
+
+            case MEMORY_ALLOC:
+            case ARRAY_NEW:
+                if(ram[args] <= 0 && fn == BuiltIn.ARRAY_NEW) {
+                    throw error(fn, "Array size must be positive");
+                }
+                return alloc(fn, ram[args]);
+
+            case MEMORY_DEALLOC:
+            case ARRAY_DISPOSE:
+            case STRING_DISPOSE:
+                deAlloc(fn, ram[args]);
+                return 0;
+            // endregion
+
+            // region String
+            case STRING_NEW:
+                return newString(fn, ram[args]);
+            case STRING_LENGTH:
+                return ram[checkString(fn, ram[args]) + 1];
+            case STRING_CHAR_AT:
+                return ram[checkIndex(fn, ram[args], ram[args + 1])];
+            case STRING_SET_CHAR_AT:
+                ram[checkIndex(fn, ram[args], ram[args + 1])] = ram[args + 2];
+                return 0;
+            case STRING_APPEND_CHAR:
+                appendChar(fn, ram[args], ram[args + 1]);
+                return ram[args];
+            case STRING_ERASE_LAST_CHAR: {
+                int s = checkString(fn, ram[args]);
+                if(ram[s + 1] == 0) {
+                    throw error(fn, "String is empty");
+                }
+                ram[s + 1]--;
+                return 0;
+            }
+            case STRING_INT_VALUE:
+                return (short) parseInt(toJavaString(fn, ram[args]));
+            case STRING_SET_INT: {
+                int s = checkString(fn, ram[args]);
+                ram[s + 1] = 0;
+                for(char c : Integer.toString(ram[args + 1]).toCharArray()) {
+                    appendChar(fn, s, c);
+                }
+                return 0;
+            }
+            case STRING_BACK_SPACE:   return BACK_SPACE;
+            case STRING_DOUBLE_QUOTE: return DOUBLE_QUOTE;
+            case STRING_NEW_LINE:     return NEW_LINE;
+            // endregion
+
+            // region Output
+            case OUTPUT_MOVE_CURSOR:
+                if(ram[args] < 0 || ram[args] >= TEXT_ROWS || ram[args + 1] < 0 || ram[args + 1] >= TEXT_COLUMNS) {
+                    throw error(fn, "Illegal cursor location");
+                }
+                row = ram[args];
+                column = ram[args + 1];
+                return 0;
+            case OUTPUT_PRINT_CHAR:
+                printChar((char) ram[args]);
+                return 0;
+            case OUTPUT_PRINT_STRING:
+                printString(toJavaString(fn, ram[args]));
+                return 0;
+            case OUTPUT_PRINT_INT:
+                printString(Integer.toString(ram[args]));
+                return 0;
+            case OUTPUT_PRINTLN:
+                println();
+                return 0;
+            case OUTPUT_BACK_SPACE:
+                backSpace();
+                return 0;
+            // endregion
+
+            // region Screen
+            case SCREEN_CLEAR_SCREEN:
+                Arrays.fill(ram, SCREEN, KEYBOARD, (short) 0);
+                return 0;
+            case SCREEN_SET_COLOR:
+                color = (ram[args] != 0);
+                return 0;
+            case SCREEN_DRAW_PIXEL:
+                checkPoint(fn, ram[args], ram[args + 1]);
+                fillRow(ram[args + 1], ram[args], ram[args]);
+                return 0;
+            case SCREEN_DRAW_LINE:
+                checkPoint(fn, ram[args], ram[args + 1]);
+                checkPoint(fn, ram[args + 2], ram[args + 3]);
+                drawLine(ram[args], ram[args + 1], ram[args + 2], ram[args + 3]);
+                return 0;
+            case SCREEN_DRAW_RECTANGLE:
+                checkPoint(fn, ram[args], ram[args + 1]);
+                checkPoint(fn, ram[args + 2], ram[args + 3]);
+                if(ram[args] > ram[args + 2] || ram[args + 1] > ram[args + 3]) {
+                    throw error(fn, "Illegal rectangle coordinates");
+                }
+                for(int y = ram[args + 1]; y <= ram[args + 3]; y++) {
+                    fillRow(y, ram[args], ram[args + 2]);
+                }
+                return 0;
+            case SCREEN_DRAW_CIRCLE:
+                drawCircle(fn, ram[args], ram[args + 1], ram[args + 2]);
+                return 0;
+            // endregion
+
+            // region Keyboard
+            case KEYBOARD_KEY_PRESSED:
+                if(maxKeyPolls > 0 && keyPolls == maxKeyPolls) {
+                    throw new ProgramStoppedException("Stopped after " + maxKeyPolls + " frames", false);
+                }
+                keyPolls++;
+                return ram[KEYBOARD];
+            case KEYBOARD_READ_CHAR: {
+                char c = readChar();
+                printChar(c);
+                return (short) c;
+            }
+            case KEYBOARD_READ_LINE:
+                return readLine(fn, ram[args]);
+            case KEYBOARD_READ_INT: {
+                short line = readLine(fn, ram[args]);
+                int value = parseInt(toJavaString(fn, line));
+                deAlloc(fn, line);
+                return (short) value;
+            }
+            // endregion
+
+            // region Sys
+            case SYS_HALT:
+                throw new ProgramStoppedException("Sys.halt", false);
+            case SYS_ERROR:
+                throw new ProgramStoppedException("Sys.error(" + ram[args] + ")", true);
+            case SYS_WAIT:
+                if(ram[args] < 0) {
+                    throw error(fn, "Duration must be positive");
+                }
+                waited += ram[args];
+                return 0;
+            // endregion
+
+            default:
+                throw new IllegalStateException("Unhandled built-in " + fn);
+        }
+    }
+
+    private static ProgramStoppedException error(BuiltIn fn, String message) {
+        return new ProgramStoppedException(fn.getVMName() + ": " + message, true);
+    }
+
+    // region Memory
+    private short alloc(BuiltIn fn, int size) {
+        if(size <= 0) {
+            // The real OS allows String.new(0), which still takes up a word.
+            size = 1;
+        }
+
+        for(Map.Entry<Integer, Integer> block : freeBlocks.entrySet()) {
+            if(block.getValue() >= size) {
+                int address = block.getKey();
+                freeBlocks.remove(address);
+                if(block.getValue() > size) {
+                    freeBlocks.put(address + size, block.getValue() - size);
+                }
+
+                allocations.put(address, size);
+                heapInUse += size;
+                heapPeak = Math.max(heapPeak, heapInUse);
+
+                // Memory from the real OS isn't cleared, but there's no point
+                // making things random here.
+                Arrays.fill(ram, address, address + size, (short) 0);
+                return (short) address;
+            }
+        }
+
+        throw error(fn, "Heap overflow (" + heapInUse + " words in use)");
+    }
+
+    private void deAlloc(BuiltIn fn, int address) {
+        Integer size = allocations.remove(address);
+        if(size == null) {
+            throw error(fn, address + " isn't an allocated block");
+        }
+        heapInUse -= size;
+
+        // Merge with whatever's free on either side.
+        Map.Entry<Integer, Integer> after = freeBlocks.ceilingEntry(address);
+        if(after != null && after.getKey() == address + size) {
+            freeBlocks.remove(after.getKey());
+            size += after.getValue();
+        }
+        Map.Entry<Integer, Integer> before = freeBlocks.floorEntry(address);
+        if(before != null && before.getKey() + before.getValue() == address) {
+            address = before.getKey();
+            size += before.getValue();
+        }
+        freeBlocks.put(address, size);
+    }
+
+    private int checkAddress(BuiltIn fn, int address) {
+        if(address < 0 || address >= ram.length) {
+            throw error(fn, "Illegal address " + address);
+        }
+
+        return address;
+    }
+    // endregion
+
+    // region Strings
+    private short newString(BuiltIn fn, int maxLength) {
+        if(maxLength < 0) {
+            throw error(fn, "Maximum length must be non-negative");
+        }
+
+        short s = alloc(fn, 2 + maxLength);
+        ram[s] = (short) maxLength;
+        ram[s + 1] = 0;
+
+        return s;
+    }
+
+    private int checkString(BuiltIn fn, int s) {
+        Integer size = allocations.get(s);
+        if(size == null || size < 2 + ram[s]) {
+            throw error(fn, s + " isn't a String");
+        }
+
+        return s;
+    }
+
+    /**
+     * @return The address of the character.
+     */
+    private int checkIndex(BuiltIn fn, int s, int index) {
+        checkString(fn, s);
+        if(index < 0 || index >= ram[s + 1]) {
+            throw error(fn, "String index out of bounds");
+        }
+
+        return s + 2 + index;
+    }
+
+    private void appendChar(BuiltIn fn, int s, int c) {
+        checkString(fn, s);
+        if(ram[s + 1] == ram[s]) {
+            throw error(fn, "String is full");
+        }
+
+        ram[s + 2 + ram[s + 1]] = (short) c;
+        ram[s + 1]++;
+    }
+
+    private String toJavaString(BuiltIn fn, int s) {
+        checkString(fn, s);
+
+        char[] chars = new char[ram[s + 1]];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ram[s + 2 + i];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Same as String.intValue(): reads digits (and a leading minus) until it
+     * runs into something that isn't one.
+     */
+    private static int parseInt(String value) {
+        int result = 0;
+        int i = 0;
+        boolean negative = (!value.isEmpty() && value.charAt(0) == '-');
+        if(negative) {
+            i++;
+        }
+
+        for(; i < value.length() && Character.isDigit(value.charAt(i)); i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+
+        return (negative ? -result : result);
+    }
+    // endregion
+
+    // region Output
+    private void printString(String value) {
+        for(int i = 0; i < value.length(); i++) {
+            printChar(value.charAt(i));
+        }
+    }
+
+    private void printChar(char c) {
+        if(c == NEW_LINE) {
+            println();
+            return;
+        }
+        if(c == BACK_SPACE) {
+            backSpace();
+            return;
+        }
+
+        text[row][column] = (c >= ' ' && c <= '~' ? c : '?');
+        log.append(c);
+
+        column++;
+        if(column == TEXT_COLUMNS) {
+            println();
+        }
+    }
+
+    private void println() {
+        log.append('\n');
+        column = 0;
+        row = (row + 1) % TEXT_ROWS;
+    }
+
+    private void backSpace() {
+        if(column > 0) {
+            column--;
+        }
+        else if(row > 0) {
+            row--;
+            column = TEXT_COLUMNS - 1;
+        }
+
+        text[row][column] = ' ';
+        if(log.length() > 0) {
+            log.setLength(log.length() - 1);
+        }
+    }
+    // endregion
+
+    // region Screen
+    private static void checkPoint(BuiltIn fn, int x, int y) {
+        if(x < 0 || x >= SCREEN_WIDTH || y < 0 || y >= SCREEN_HEIGHT) {
+            throw error(fn, "Illegal coordinates (" + x + ", " + y + ")");
+        }
+    }
+
+    /**
+     * Sets or clears every pixel in a row from x1 to x2 (inclusive). Whole
+     * words in the middle get done in one go.
+     */
+    private void fillRow(int y, int x1, int x2) {
+        int base = SCREEN + y * WORDS_PER_ROW;
+        int first = x1 / 16;
+        int last = x2 / 16;
+
+        for(int word = first; word <= last; word++) {
+            int from = (word == first ? x1 % 16 : 0);
+            int to = (word == last ? x2 % 16 : 15);
+
+            // Bits from..to, which is every bit for a whole word.
+            int mask = (int) ((1L << (to + 1)) - (1L << from));
+            if(color) {
+                ram[base + word] |= (short) mask;
+            }
+            else {
+                ram[base + word] &= (short) ~mask;
+            }
+        }
+    }
+
+    private void drawLine(int x1, int y1, int x2, int y2) {
+        if(y1 == y2) {
+            fillRow(y1, Math.min(x1, x2), Math.max(x1, x2));
+            return;
+        }
+
+        // Plain Bresenham.
+        int dx = Math.abs(x2 - x1);
+        int dy = -Math.abs(y2 - y1);
+        int stepX = (x1 < x2 ? 1 : -1);
+        int stepY = (y1 < y2 ? 1 : -1);
+        int err = dx + dy;
+
+        while(true) {
+            fillRow(y1, x1, x1);
+            if(x1 == x2 && y1 == y2) {
+                break;
+            }
+
+            int err2 = 2 * err;
+            if(err2 >= dy) {
+                err += dy;
+                x1 += stepX;
+            }
+            if(err2 <= dx) {
+                err += dx;
+                y1 += stepY;
+            }
+        }
+    }
+
+    private void drawCircle(BuiltIn fn, int x, int y, int r) {
+        if(r < 0 || r > 181) {
+            throw error(fn, "Illegal radius " + r);
+        }
+        checkPoint(fn, x - r, y - r);
+        checkPoint(fn, x + r, y + r);
+
+        for(int dy = -r; dy <= r; dy++) {
+            int half = (int) Math.sqrt(r * r - dy * dy);
+            fillRow(y + dy, x - half, x + half);
+        }
+    }
+    // endregion
+
+    // region Keyboard
+    private char readChar() {
+        if(inputPosition == input.length()) {
+            throw new ProgramStoppedException("Ran out of input", false);
+        }
+
+        char c = input.charAt(inputPosition++);
+        return (c == '\n' ? NEW_LINE : c);
+    }
+
+    private short readLine(BuiltIn fn, int message) {
+        printString(toJavaString(fn, message));
+
+        StringBuilder line = new StringBuilder();
+        char c;
+        while((c = readChar()) != NEW_LINE) {
+            line.append(c);
+            printChar(c);
+        }
+        println();
+
+        short s = newString(fn, line.length());
+        for(int i = 0; i < line.length(); i++) {
+            appendChar(fn, s, line.charAt(i));
+        }
+
+        return s;
+    }
+    // endregion
+
+    // region Results
+    /**
+     * @return Everything that's been printed, in order.
+     */
+    public String getOutputLog() {
+        return log.toString();
+    }
+
+    /**
+     * @return What the text on the screen looks like now, without the blank
+     *         lines at the end.
+     */
+    public String getTextScreen() {
+        StringBuilder result = new StringBuilder();
+        int lastRow = TEXT_ROWS - 1;
+        while(lastRow >= 0 && new String(text[lastRow]).isBlank()) {
+            lastRow--;
+        }
+
+        for(int i = 0; i <= lastRow; i++) {
+            result.append(new String(text[i]).stripTrailing()).append('\n');
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * @return A hash of every pixel on the screen, so two runs can be checked
+     *         against each other without keeping the whole thing around.
+     */
+    public int getScreenChecksum() {
+        return Arrays.hashCode(Arrays.copyOfRange(ram, SCREEN, KEYBOARD));
+    }
+
+    public long getKeyPolls() {
+        return keyPolls;
+    }
+
+    public long getWaited() {
+        return waited;
+    }
+
+    public int getHeapInUse() {
+        return heapInUse;
+    }
+
+    public int getHeapPeak() {
+        return heapPeak;
+    }
+    // endregion
+}
@@ -0,0 +1,370 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.Segment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes VM commands (from the compiler, or from a VMParser) and decodes them
+ * into a VMProgram. Since this is just another CommandWriter, the compiler
+ * can write straight into it, with no text in between.
+ *
+ * Anything that can't be worked out until everything is in (like where a
+ * function starts, or where each class's statics go) is written as a
+ * placeholder and fixed up in build().
+ */
+public class ProgramBuilder implements CommandWriter {
+
+    /**
+     * Where statics start, same as on the real machine.
+     */
+    public static final int STATIC_BASE = 16;
+    public static final int STATIC_LIMIT = 256;
+
+    private static final int TEMP_BASE = 5;
+    private static final int POINTER_BASE = 3;
+
+    private int[] code = new int[1024];
+    private int size = 0;
+
+    private final List<String> functionNames = new ArrayList<>();
+    private final Map<String, Integer> functionIndices = new HashMap<>();
+    private int[] entries = new int[64];
+
+    /**
+     * Where each function starts, in the order they were written, along with
+     * which function it was. This is how we know who owns each instruction.
+     */
+    private int[] starts = new int[64];
+    private int[] startFunctions = new int[64];
+    private int startCount = 0;
+
+    // region Label state
+    private String functionName = null;
+    private final Map<String, Integer> labels = new HashMap<>();
+
+    /**
+     * Jumps in the current function that point at a label we haven't seen
+     * yet. These get filled in when the function ends.
+     */
+    private final List<Integer> pendingJumps = new ArrayList<>();
+    private final List<String> pendingLabels = new ArrayList<>();
+    // endregion
+
+    // region Static state
+    private String className = null;
+    private final List<String> classNames = new ArrayList<>();
+    private final Map<String, Integer> classIndices = new HashMap<>();
+
+    /**
+     * How many statics each class uses (the highest index, plus one).
+     */
+    private int[] staticCounts = new int[16];
+    private int classIndex = -1;
+
+    /**
+     * Every instruction that touches a static, and which class's static it
+     * is. The address gets filled in once we know how many statics every
+     * class has.
+     */
+    private final List<Integer> staticUses = new ArrayList<>();
+    private final List<Integer> staticClasses = new ArrayList<>();
+    // endregion
+
+    public ProgramBuilder() {
+
+    }
+
+    // region Commands
+    @Override
+    public void writePush(Segment seg, int index) {
+        switch(seg) {
+            case CONSTANT: emit(VMProgram.PUSH_CONSTANT, index); break;
+            case LOCAL:    emit(VMProgram.PUSH_LOCAL, index); break;
+            case ARGUMENT: emit(VMProgram.PUSH_ARGUMENT, index); break;
+            case THIS:     emit(VMProgram.PUSH_THIS, index); break;
+            case THAT:     emit(VMProgram.PUSH_THAT, index); break;
+            default:
+                emit(VMProgram.PUSH_FIXED, getFixedAddress(seg, index));
+        }
+    }
+
+    @Override
+    public void writePop(Segment seg, int index) {
+        switch(seg) {
+            case CONSTANT:
+                throw new IllegalArgumentException("Can't pop to the constant segment");
+            case LOCAL:    emit(VMProgram.POP_LOCAL, index); break;
+            case ARGUMENT: emit(VMProgram.POP_ARGUMENT, index); break;
+            case THIS:     emit(VMProgram.POP_THIS, index); break;
+            case THAT:     emit(VMProgram.POP_THAT, index); break;
+            default:
+                emit(VMProgram.POP_FIXED, getFixedAddress(seg, index));
+        }
+    }
+
+    /**
+     * Works out the address for the segments that don't move around. For
+     * statics this is just the index for now, since the real address comes
+     * later.
+     */
+    private int getFixedAddress(Segment seg, int index) {
+        switch(seg) {
+            case TEMP:
+                if(index > 7) {
+                    throw new IllegalArgumentException("There's no temp " + index);
+                }
+                return TEMP_BASE + index;
+
+            case POINTER:
+                if(index > 1) {
+                    throw new IllegalArgumentException("There's no pointer " + index);
+                }
+                return POINTER_BASE + index;
+
+            case STATIC:
+                if(classIndex < 0) {
+                    throw new IllegalArgumentException("Statics can only be used inside a function");
+                }
+
+                staticUses.add(size);
+                staticClasses.add(classIndex);
+                staticCounts[classIndex] = Math.max(staticCounts[classIndex], index + 1);
+                return index;
+
+            default:
+                throw new IllegalArgumentException("Unsupported segment " + seg);
+        }
+    }
+
+    @Override
+    public void writeArithmetic(ArithmeticCommand cmd) {
+        switch(cmd) {
+            case ADD: emit(VMProgram.ADD, 0); break;
+            case SUB: emit(VMProgram.SUB, 0); break;
+            case NEG: emit(VMProgram.NEG, 0); break;
+            case EQ:  emit(VMProgram.EQ, 0); break;
+            case GT:  emit(VMProgram.GT, 0); break;
+            case LT:  emit(VMProgram.LT, 0); break;
+            case AND: emit(VMProgram.AND, 0); break;
+            case OR:  emit(VMProgram.OR, 0); break;
+            case NOT: emit(VMProgram.NOT, 0); break;
+
+            // Same as VMWriter does it.
+            case MULTIPLY: writeCall("Math.multiply", 2); break;
+            case DIVIDE:   writeCall("Math.divide", 2); break;
+        }
+    }
+
+    @Override
+    public void writeLabel(String label) {
+        if(labels.put(label, size) != null) {
+            throw new IllegalArgumentException("The label " + label + " is used twice in " + functionName);
+        }
+    }
+
+    @Override
+    public void writeGoto(String label) {
+        writeJump(VMProgram.GOTO, label);
+    }
+
+    @Override
+    public void writeIf(String label) {
+        writeJump(VMProgram.IF_GOTO, label);
+    }
+
+    private void writeJump(int opcode, String label) {
+        // Labels can be used before they show up, so all of them wait until
+        // the end of the function.
+        pendingJumps.add(size);
+        pendingLabels.add(label);
+        emit(opcode, 0);
+    }
+
+    @Override
+    public void writeCall(String name, int nArgs) {
+        if(nArgs > 255) {
+            throw new IllegalArgumentException("Too many arguments in the call to " + name);
+        }
+
+        emit(VMProgram.CALL, getFunctionIndex(name) | (nArgs << 16));
+    }
+
+    @Override
+    public void writeFunction(String name, int nLocals) {
+        endFunction();
+
+        int function = getFunctionIndex(name);
+        if(entries[function] >= 0) {
+            throw new IllegalArgumentException("The function " + name + " is defined twice");
+        }
+        entries[function] = size;
+        functionName = name;
+
+        if(startCount == starts.length) {
+            starts = Arrays.copyOf(starts, startCount * 2);
+            startFunctions = Arrays.copyOf(startFunctions, startCount * 2);
+        }
+        starts[startCount] = size;
+        startFunctions[startCount++] = function;
+
+        startClass(name.substring(0, Math.max(0, name.indexOf('.'))));
+
+        emit(VMProgram.FUNCTION, nLocals);
+    }
+
+    @Override
+    public void writeReturn() {
+        emit(VMProgram.RETURN, 0);
+    }
+
+    /**
+     * Nothing's held back, so there's nothing to do here. Everything gets
+     * tidied up in build().
+     */
+    @Override
+    public void flush() {
+
+    }
+    // endregion
+
+    // region Helpers
+    private void emit(int opcode, int operand) {
+        if(functionName == null) {
+            throw new IllegalArgumentException("Commands have to be inside a function");
+        }
+        if(size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+
+        code[size++] = opcode | (operand << VMProgram.OPCODE_BITS);
+    }
+
+    private int getFunctionIndex(String name) {
+        Integer index = functionIndices.get(name);
+        if(index != null) {
+            return index;
+        }
+
+        index = functionNames.size();
+        if(index > 0xFFFF) {
+            throw new IllegalArgumentException("Too many functions");
+        }
+
+        functionNames.add(name);
+        functionIndices.put(name, index);
+
+        if(index == entries.length) {
+            entries = Arrays.copyOf(entries, index * 2);
+        }
+        entries[index] = -1;
+
+        return index;
+    }
+
+    private void startClass(String name) {
+        if(name.equals(className)) {
+            return;
+        }
+
+        className = name;
+        Integer index = classIndices.get(name);
+        if(index == null) {
+            index = classNames.size();
+            classNames.add(name);
+            classIndices.put(name, index);
+
+            if(index == staticCounts.length) {
+                staticCounts = Arrays.copyOf(staticCounts, index * 2);
+            }
+        }
+        classIndex = index;
+    }
+
+    /**
+     * Fills in the jumps for the function that's just been finished.
+     */
+    private void endFunction() {
+        for(int i = 0; i < pendingJumps.size(); i++) {
+            Integer target = labels.get(pendingLabels.get(i));
+            if(target == null) {
+                throw new IllegalArgumentException("There's no label " + pendingLabels.get(i) + " in " + functionName);
+            }
+
+            int pc = pendingJumps.get(i);
+            code[pc] |= target << VMProgram.OPCODE_BITS;
+        }
+
+        pendingJumps.clear();
+        pendingLabels.clear();
+        labels.clear();
+    }
+    // endregion
+
+    /**
+     * Finishes everything off. Any function that got called but never defined
+     * is looked up in the built-ins.
+     * @throws IllegalArgumentException if a function doesn't exist anywhere,
+     *         or the statics don't fit.
+     */
+    public VMProgram build() {
+        endFunction();
+
+        // Each class's statics go right after the one before it, just like
+        // the VM translator does it.
+        int[] staticBases = new int[classNames.size()];
+        int next = STATIC_BASE;
+        for(int i = 0; i < staticBases.length; i++) {
+            staticBases[i] = next;
+            next += staticCounts[i];
+        }
+        if(next > STATIC_LIMIT) {
+            throw new IllegalArgumentException("The program uses " + (next - STATIC_BASE) +
+                                               " statics, but there's only room for " + (STATIC_LIMIT - STATIC_BASE));
+        }
+
+        int[] program = Arrays.copyOf(code, size + 1);
+        for(int i = 0; i < staticUses.size(); i++) {
+            int pc = staticUses.get(i);
+            int index = VMProgram.getOperand(program[pc]);
+            int address = staticBases[staticClasses.get(i)] + index;
+
+            program[pc] = VMProgram.getOpcode(program[pc]) | (address << VMProgram.OPCODE_BITS);
+        }
+        program[size] = VMProgram.HALT;
+
+        int[] functionEntries = Arrays.copyOf(entries, functionNames.size());
+        for(int i = 0; i < functionEntries.length; i++) {
+            if(functionEntries[i] < 0) {
+                int builtIn = BuiltIn.lookup(functionNames.get(i));
+                if(builtIn < 0) {
+                    throw new IllegalArgumentException("The function " + functionNames.get(i) + " doesn't exist");
+                }
+
+                functionEntries[i] = -1 - builtIn;
+            }
+        }
+
+        // Everything between one function's start and the next belongs to the
+        // first one. They're already in order, since code only ever gets added
+        // to the end.
+        int[] owners = new int[size + 1];
+        for(int i = 0; i < startCount; i++) {
+            int to = (i + 1 < startCount ? starts[i + 1] : size);
+            Arrays.fill(owners, starts[i], to, startFunctions[i]);
+        }
+        owners[size] = -1;
+
+        return new VMProgram(program, functionEntries, functionNames.toArray(new String[0]), owners);
+    }
+}
@@ -0,0 +1,111 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.CompilationEngine;
+import CodeGeneration.CompilerOptions;
+import CodeGeneration.Optimization.Inliner;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.VMParser;
+import SyntaxAnalysis.SourceFile;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.List;
+
+/**
+ * Builds a VMProgram straight from source. Jack files get compiled right
+ * into the ProgramBuilder, so nothing gets written to disk, and any .vm
+ * files without a .jack file (like the OS) get read in as they are.
+ */
+public class ProgramLoader {
+
+    private final CompilerOptions options;
+
+    public ProgramLoader(CompilerOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * @param target A directory (which is a whole program), or a single .jack
+     *               or .vm file.
+     * @throws IllegalArgumentException if something doesn't compile, or the
+     *         program doesn't fit together (like calling a function that
+     *         isn't anywhere).
+     */
+    public VMProgram load(File target) throws IOException {
+        List<File> files = new ArrayList<>();
+
+        if(target.isDirectory()) {
+            File[] listed = target.listFiles();
+            if(listed == null) {
+                throw new IOException("Can't list " + target);
+            }
+
+            // Sorted, so that statics get handed out the same way every time.
+            Arrays.sort(listed);
+            for(File file : listed) {
+                String name = file.getName();
+                if(name.endsWith(".jack") ||
+                   (name.endsWith(".vm") && !new File(file.getPath().replace(".vm", ".jack")).exists())) {
+                    files.add(file);
+                }
+            }
+        }
+        else if(target.isFile()) {
+            files.add(target);
+        }
+        else {
+            throw new IllegalArgumentException("Can only read files which exist. (Duh!)");
+        }
+
+        // Inlining needs to know about every subroutine before anything can
+        // be compiled for real, so that means going through everything twice.
+        Inliner inliner = null;
+        if(options.isInlining()) {
+            inliner = new Inliner(options.getInlineBudget());
+            for(File file : files) {
+                InstructionBuffer code = new InstructionBuffer();
+                add(file, code, null);
+                inliner.add(code);
+            }
+        }
+
+        ProgramBuilder builder = new ProgramBuilder();
+        for(File file : files) {
+            add(file, builder, inliner);
+        }
+
+        return builder.build();
+    }
+
+    private void add(File file, CommandWriter builder, Inliner inliner) throws IOException {
+        try {
+            if(file.getName().endsWith(".jack")) {
+                CompilationEngine engine = new CompilationEngine(SourceFile.read(file.toPath()), builder, null);
+                engine.setOptions(options);
+                engine.setInliner(inliner);
+                engine.compile();
+            }
+            else if(file.getName().endsWith(".vm")) {
+                try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                    new VMParser(reader).parse(builder);
+                }
+            }
+            else {
+                throw new IllegalArgumentException("Can only handle directories, jack files and vm files.");
+            }
+        }
+        catch (IllegalArgumentException | IllegalStateException | InputMismatchException e) {
+            throw new IllegalArgumentException(file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+}
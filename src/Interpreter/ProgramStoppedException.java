@@ -0,0 +1,31 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+/**
+ * Thrown (by the OS, usually) when the program has to stop right where it
+ * is. That covers Sys.halt and Sys.error, but also things like running out
+ * of input, or out of frames to run.
+ */
+public class ProgramStoppedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean error;
+
+    public ProgramStoppedException(String reason, boolean error) {
+        super(reason);
+
+        this.error = error;
+    }
+
+    /**
+     * @return True if the program did something wrong, rather than just
+     *         being done.
+     */
+    public boolean isError() {
+        return error;
+    }
+}
@@ -0,0 +1,457 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs a VMProgram, and keeps count of how often every instruction runs so
+ * we can see where the time goes.
+ *
+ * Memory is laid out just like on the Hack computer (the stack at 256, the
+ * heap at 2048, the screen at 16384) and calls build the same frames, so a
+ * program can't tell the difference. The only thing that isn't in RAM is
+ * the code itself.
+ *
+ * If the program has a Sys.init, that's where it starts. If not, it starts
+ * at Main.main and stops when that returns, which is what the built-in
+ * Sys.init would do.
+ */
+public class VMInterpreter {
+
+    private static final int SP = 0;
+    private static final int LCL = 1;
+    private static final int ARG = 2;
+    private static final int THIS = 3;
+    private static final int THAT = 4;
+
+    public static final int STACK_BASE = 256;
+    public static final int STACK_END = 2048;
+
+    private final VMProgram program;
+    private final short[] ram = new short[32768];
+    private final OperatingSystem os = new OperatingSystem(ram);
+
+    /**
+     * How many times each instruction has run.
+     */
+    private final long[] counts;
+    private final long[] builtInCalls = new long[BuiltIn.values().length];
+    private long steps = 0;
+
+    private String stopReason = null;
+    private boolean stoppedByError = false;
+
+    public VMInterpreter(VMProgram program) {
+        this.program = program;
+        this.counts = new long[program.size()];
+    }
+
+    public OperatingSystem getOS() {
+        return os;
+    }
+
+    /**
+     * Runs the program until it stops, or until it's run maxSteps
+     * instructions (0 for no limit).
+     * @return True if the program stopped by itself without an error.
+     */
+    public boolean run(long maxSteps) {
+        int[] code = program.getCode();
+        int[] entries = program.getEntries();
+        long[] counts = this.counts;
+        short[] ram = this.ram;
+        long limit = (maxSteps > 0 ? maxSteps : Long.MAX_VALUE);
+
+        // The first call returns to the HALT at the end.
+        int pc = code.length - 1;
+        int sp = STACK_BASE;
+        int lcl = sp;
+        int arg = sp;
+
+        int boot = program.getFunctionIndex("Sys.init");
+        if(boot < 0 || !program.isDefined(boot)) {
+            boot = program.getFunctionIndex("Main.main");
+            if(boot < 0 || !program.isDefined(boot)) {
+                stop("There's no Sys.init or Main.main", true);
+                return false;
+            }
+        }
+
+        // Call it with no arguments.
+        ram[sp++] = (short) pc;
+        ram[sp++] = (short) lcl;
+        ram[sp++] = (short) arg;
+        ram[sp++] = 0;
+        ram[sp++] = 0;
+        arg = sp - 5;
+        lcl = sp;
+        pc = entries[boot];
+
+        long step = steps;
+        try {
+            while(step < limit) {
+                int instruction = code[pc];
+                int operand = instruction >>> VMProgram.OPCODE_BITS;
+                counts[pc]++;
+                step++;
+
+                switch(instruction & VMProgram.OPCODE_MASK) {
+                    // region Push and pop
+                    case VMProgram.PUSH_CONSTANT:
+                        ram[sp++] = (short) operand;
+                        pc++;
+                        break;
+                    case VMProgram.PUSH_LOCAL:
+                        ram[sp++] = ram[lcl + operand];
+                        pc++;
+                        break;
+                    case VMProgram.PUSH_ARGUMENT:
+                        ram[sp++] = ram[arg + operand];
+                        pc++;
+                        break;
+                    case VMProgram.PUSH_THIS:
+                        ram[sp++] = ram[ram[THIS] + operand];
+                        pc++;
+                        break;
+                    case VMProgram.PUSH_THAT:
+                        ram[sp++] = ram[ram[THAT] + operand];
+                        pc++;
+                        break;
+                    case VMProgram.PUSH_FIXED:
+                        ram[sp++] = ram[operand];
+                        pc++;
+                        break;
+
+                    case VMProgram.POP_LOCAL:
+                        ram[lcl + operand] = ram[--sp];
+                        pc++;
+                        break;
+                    case VMProgram.POP_ARGUMENT:
+                        ram[arg + operand] = ram[--sp];
+                        pc++;
+                        break;
+                    case VMProgram.POP_THIS:
+                        ram[ram[THIS] + operand] = ram[--sp];
+                        pc++;
+                        break;
+                    case VMProgram.POP_THAT:
+                        ram[ram[THAT] + operand] = ram[--sp];
+                        pc++;
+                        break;
+                    case VMProgram.POP_FIXED:
+                        ram[operand] = ram[--sp];
+                        pc++;
+                        break;
+                    // endregion
+
+                    // region Arithmetic
+                    case VMProgram.ADD:
+                        sp--;
+                        ram[sp - 1] += ram[sp];
+                        pc++;
+                        break;
+                    case VMProgram.SUB:
+                        sp--;
+                        ram[sp - 1] -= ram[sp];
+                        pc++;
+                        break;
+                    case VMProgram.NEG:
+                        ram[sp - 1] = (short) -ram[sp - 1];
+                        pc++;
+                        break;
+                    case VMProgram.EQ:
+                        sp--;
+                        ram[sp - 1] = (short) (ram[sp - 1] == ram[sp] ? -1 : 0);
+                        pc++;
+                        break;
+                    case VMProgram.GT:
+                        sp--;
+                        ram[sp - 1] = (short) (ram[sp - 1] > ram[sp] ? -1 : 0);
+                        pc++;
+                        break;
+                    case VMProgram.LT:
+                        sp--;
+                        ram[sp - 1] = (short) (ram[sp - 1] < ram[sp] ? -1 : 0);
+                        pc++;
+                        break;
+                    case VMProgram.AND:
+                        sp--;
+                        ram[sp - 1] &= ram[sp];
+                        pc++;
+                        break;
+                    case VMProgram.OR:
+                        sp--;
+                        ram[sp - 1] |= ram[sp];
+                        pc++;
+                        break;
+                    case VMProgram.NOT:
+                        ram[sp - 1] = (short) ~ram[sp - 1];
+                        pc++;
+                        break;
+                    // endregion
+
+                    // region Flow
+                    case VMProgram.GOTO:
+                        pc = operand;
+                        break;
+                    case VMProgram.IF_GOTO:
+                        pc = (ram[--sp] != 0 ? operand : pc + 1);
+                        break;
+
+                    case VMProgram.CALL: {
+                        int nArgs = operand >>> 16;
+                        int entry = entries[operand & 0xFFFF];
+
+                        if(entry < 0) {
+                            BuiltIn fn = BuiltIn.get(-1 - entry);
+                            if(nArgs != fn.getArgCount()) {
+                                throw new ProgramStoppedException(fn.getVMName() + " takes " + fn.getArgCount() +
+                                                                  " arguments, not " + nArgs, true);
+                            }
+
+                            builtInCalls[fn.ordinal()]++;
+                            saveRegisters(sp, lcl, arg);
+                            short result = os.call(fn, sp - nArgs);
+                            sp -= nArgs;
+                            ram[sp++] = result;
+                            pc++;
+                            break;
+                        }
+
+                        if(sp + 5 > STACK_END) {
+                            throw new ProgramStoppedException("Stack overflow", true);
+                        }
+                        ram[sp++] = (short) (pc + 1);
+                        ram[sp++] = (short) lcl;
+                        ram[sp++] = (short) arg;
+                        ram[sp++] = ram[THIS];
+                        ram[sp++] = ram[THAT];
+                        arg = sp - 5 - nArgs;
+                        lcl = sp;
+                        pc = entry;
+                        break;
+                    }
+
+                    case VMProgram.FUNCTION:
+                        if(sp + operand > STACK_END) {
+                            throw new ProgramStoppedException("Stack overflow", true);
+                        }
+                        for(int i = 0; i < operand; i++) {
+                            ram[sp++] = 0;
+                        }
+                        pc++;
+                        break;
+
+                    case VMProgram.RETURN: {
+                        int frame = lcl;
+                        pc = ram[frame - 5];
+                        ram[arg] = ram[sp - 1];
+                        sp = arg + 1;
+                        ram[THAT] = ram[frame - 1];
+                        ram[THIS] = ram[frame - 2];
+                        arg = ram[frame - 3];
+                        lcl = ram[frame - 4];
+                        break;
+                    }
+
+                    case VMProgram.HALT:
+                        // That's the first call returning, so the program is
+                        // done. This doesn't count as an instruction.
+                        counts[pc]--;
+                        step--;
+                        stop("Returned from " + program.getFunctionName(boot), false);
+                        return true;
+                    // endregion
+
+                    default:
+                        throw new IllegalStateException("Bad opcode at " + pc);
+                }
+            }
+
+            stop("Stopped after " + step + " instructions", false);
+            return false;
+        }
+        catch (ProgramStoppedException e) {
+            stop(e.getMessage(), e.isError());
+            return !e.isError();
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            // The program read or wrote somewhere outside of RAM (or ran off
+            // the stack), which the real machine wouldn't catch either.
+            stop("Illegal memory access in " + getFunctionAt(pc), true);
+            return false;
+        }
+        finally {
+            saveRegisters(sp, lcl, arg);
+            steps = step;
+        }
+    }
+
+    /**
+     * The OS (and anyone looking at RAM afterwards) expects these in their
+     * usual places.
+     */
+    private void saveRegisters(int sp, int lcl, int arg) {
+        ram[SP] = (short) sp;
+        ram[LCL] = (short) lcl;
+        ram[ARG] = (short) arg;
+    }
+
+    private void stop(String reason, boolean error) {
+        stopReason = reason;
+        stoppedByError = error;
+    }
+
+    private String getFunctionAt(int pc) {
+        int owner = (pc >= 0 && pc < counts.length ? program.getOwner(pc) : -1);
+        return (owner >= 0 ? program.getFunctionName(owner) : "(no function)");
+    }
+
+    // region Results
+    public String getStopReason() {
+        return stopReason;
+    }
+
+    public boolean isStoppedByError() {
+        return stoppedByError;
+    }
+
+    /**
+     * @return How many VM instructions have run. Built-ins count as just the
+     *         call.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    public short[] getRAM() {
+        return ram;
+    }
+
+    /**
+     * One line of the profile: either a function, or a call site.
+     */
+    public static class ProfileEntry {
+        private final String name;
+        private final long instructions;
+        private final long calls;
+
+        ProfileEntry(String name, long instructions, long calls) {
+            this.name = name;
+            this.instructions = instructions;
+            this.calls = calls;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return How many instructions ran in the function (not counting any
+         *         functions it called). 0 for call sites and built-ins.
+         */
+        public long getInstructions() {
+            return instructions;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+    }
+
+    /**
+     * @return Every function that ran, most instructions first. Built-ins are
+     *         at the end, ordered by how often they were called.
+     */
+    public List<ProfileEntry> getFunctionProfile() {
+        int[] code = program.getCode();
+        long[] instructions = new long[program.getFunctionCount()];
+        long[] calls = new long[program.getFunctionCount()];
+
+        for(int pc = 0; pc < counts.length; pc++) {
+            int owner = program.getOwner(pc);
+            if(owner >= 0) {
+                instructions[owner] += counts[pc];
+                if(VMProgram.getOpcode(code[pc]) == VMProgram.FUNCTION) {
+                    calls[owner] += counts[pc];
+                }
+            }
+        }
+
+        List<ProfileEntry> result = new ArrayList<>();
+        for(int i = 0; i < instructions.length; i++) {
+            if(instructions[i] > 0) {
+                result.add(new ProfileEntry(program.getFunctionName(i), instructions[i], calls[i]));
+            }
+        }
+        result.sort(Comparator.comparingLong(ProfileEntry::getInstructions).reversed());
+
+        List<ProfileEntry> builtIns = new ArrayList<>();
+        for(BuiltIn fn : BuiltIn.values()) {
+            if(builtInCalls[fn.ordinal()] > 0) {
+                builtIns.add(new ProfileEntry(fn.getVMName() + " (built in)", 0, builtInCalls[fn.ordinal()]));
+            }
+        }
+        builtIns.sort(Comparator.comparingLong(ProfileEntry::getCalls).reversed());
+        result.addAll(builtIns);
+
+        return result;
+    }
+
+    /**
+     * @return The call sites that ran the most, named "caller -> callee", up
+     *         to the given number of them.
+     */
+    public List<ProfileEntry> getHottestCalls(int limit) {
+        int[] code = program.getCode();
+
+        List<ProfileEntry> result = new ArrayList<>();
+        for(int pc = 0; pc < counts.length; pc++) {
+            if(counts[pc] > 0 && VMProgram.getOpcode(code[pc]) == VMProgram.CALL) {
+                int callee = VMProgram.getOperand(code[pc]) & 0xFFFF;
+                String name = getFunctionAt(pc) + " -> " + program.getFunctionName(callee) + " (#" + pc + ")";
+
+                result.add(new ProfileEntry(name, 0, counts[pc]));
+            }
+        }
+        result.sort(Comparator.comparingLong(ProfileEntry::getCalls).reversed());
+
+        return result.subList(0, Math.min(limit, result.size()));
+    }
+
+    /**
+     * @return Everything worth knowing about the run, ready to print.
+     */
+    public String getReport(int hottest) {
+        StringBuilder report = new StringBuilder();
+        report.append(stoppedByError ? "Error: " : "Stopped: ").append(stopReason).append('\n');
+        report.append(String.format("%,d instructions, %,d frames, screen checksum %08x, %d words on the heap (peak %d)%n",
+                                    steps, os.getKeyPolls(), os.getScreenChecksum(),
+                                    os.getHeapInUse(), os.getHeapPeak()));
+
+        report.append("\nInstructions by function:\n");
+        for(ProfileEntry entry : getFunctionProfile()) {
+            if(entry.getInstructions() > 0) {
+                report.append(String.format("%,14d %6.2f%% %,10d calls  %s%n",
+                                            entry.getInstructions(), 100.0 * entry.getInstructions() / Math.max(1, steps),
+                                            entry.getCalls(), entry.getName()));
+            }
+            else {
+                report.append(String.format("%22s %,10d calls  %s%n", "", entry.getCalls(), entry.getName()));
+            }
+        }
+
+        report.append("\nHottest call sites:\n");
+        for(ProfileEntry entry : getHottestCalls(hottest)) {
+            report.append(String.format("%,14d  %s%n", entry.getCalls(), entry.getName()));
+        }
+
+        return report.toString();
+    }
+    // endregion
+}
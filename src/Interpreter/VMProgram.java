@@ -0,0 +1,146 @@
+package Interpreter;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+/**
+ * A whole program of VM code, decoded into something that can be run
+ * quickly. Every command is one int: the low 8 bits are the opcode, and
+ * the rest is its operand. Segments are folded into the opcodes, so
+ * "push local 3" is just PUSH_LOCAL with an operand of 3.
+ *
+ * Labels are gone by this point, since jumps point straight at the
+ * instruction they go to. Calls point at an entry in the function table,
+ * with the number of arguments in the top 8 bits of the operand.
+ *
+ * These get made by ProgramBuilder.
+ */
+public class VMProgram {
+
+    // region Opcodes
+    public static final int PUSH_CONSTANT = 0;
+    public static final int PUSH_LOCAL = 1;
+    public static final int PUSH_ARGUMENT = 2;
+    public static final int PUSH_THIS = 3;
+    public static final int PUSH_THAT = 4;
+
+    /**
+     * Pushes from a fixed address (static, temp and pointer all end up here).
+     */
+    public static final int PUSH_FIXED = 5;
+
+    public static final int POP_LOCAL = 6;
+    public static final int POP_ARGUMENT = 7;
+    public static final int POP_THIS = 8;
+    public static final int POP_THAT = 9;
+    public static final int POP_FIXED = 10;
+
+    public static final int ADD = 11;
+    public static final int SUB = 12;
+    public static final int NEG = 13;
+    public static final int EQ = 14;
+    public static final int GT = 15;
+    public static final int LT = 16;
+    public static final int AND = 17;
+    public static final int OR = 18;
+    public static final int NOT = 19;
+
+    public static final int GOTO = 20;
+    public static final int IF_GOTO = 21;
+    public static final int CALL = 22;
+    public static final int FUNCTION = 23;
+    public static final int RETURN = 24;
+
+    /**
+     * Stops the program. There's one of these at the very end, which is
+     * where the first call returns to.
+     */
+    public static final int HALT = 25;
+
+    public static final int OPCODE_BITS = 8;
+    public static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    // endregion
+
+    private final int[] code;
+
+    /**
+     * Where each function starts, by its index. Functions we don't have
+     * the code for are built into the interpreter, and start at -1 - the
+     * built-in's number.
+     */
+    private final int[] entries;
+    private final String[] functionNames;
+
+    /**
+     * Which function each instruction belongs to, by index.
+     */
+    private final int[] owners;
+
+    VMProgram(int[] code, int[] entries, String[] functionNames, int[] owners) {
+        this.code = code;
+        this.entries = entries;
+        this.functionNames = functionNames;
+        this.owners = owners;
+    }
+
+    public static int getOpcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    public static int getOperand(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    /**
+     * @return How many instructions there are, including the HALT at the end.
+     */
+    public int size() {
+        return code.length;
+    }
+
+    public int[] getEntries() {
+        return entries;
+    }
+
+    public int getFunctionCount() {
+        return functionNames.length;
+    }
+
+    public String getFunctionName(int function) {
+        return functionNames[function];
+    }
+
+    /**
+     * @return The function's index, or -1 if nothing calls or defines it.
+     */
+    public int getFunctionIndex(String name) {
+        for(int i = 0; i < functionNames.length; i++) {
+            if(functionNames[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return True if we have VM code for the function (rather than it
+     *         being built in).
+     */
+    public boolean isDefined(int function) {
+        return entries[function] >= 0;
+    }
+
+    /**
+     * @return The index of the function an instruction is in, or -1 for
+     *         the HALT at the end.
+     */
+    public int getOwner(int pc) {
+        return owners[pc];
+    }
+}
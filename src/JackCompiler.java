@@ -3,34 +3,317 @@
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import Caching.CompileCache;
+import CodeGeneration.Asm.AsmWriter;
+import CodeGeneration.CompilationEngine;
+import CodeGeneration.CompilerOptions;
+import CodeGeneration.Optimization.Inliner;
+import CodeGeneration.SourceCompiler;
+import CodeGeneration.VM.OutputSink;
+import Interpreter.ProgramLoader;
+import Interpreter.VMInterpreter;
+import Server.CompileServer;
+import Statistics.CompileStatistics;
 import SyntaxAnalysis.JackAnalyzer;
-import SyntaxAnalysis.JackTokenizer;
-import SyntaxAnalysis.Tokens.*;
+import SyntaxAnalysis.SourceFile;
 
 import java.io.*;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 
 public class JackCompiler {
 
+    private static final String USAGE =
+            "Usage: JackCompiler [options] <file.jack | directory | ->\n" +
+            "       JackCompiler --serve <port> | --stdio [-j <n>]\n" +
+            "A path of - reads one class from stdin and writes its VM code to stdout.\n" +
+            "Options:\n" +
+            "  -j, --jobs <n>   Compile up to n files at once (0 = one per processor)\n" +
+            "  --no-xml         Don't write the .C.xml parse trees\n" +
+            "  --serve <port>   Stay running and take compile requests on localhost:port\n" +
+            "                   (0 picks a free port)\n" +
+            "  --stdio          Stay running and take compile requests over stdin/stdout\n" +
+            "  --asm            Write one Hack assembly program instead of .vm files.\n" +
+            "                   Other .vm files in the directory (like the OS) go in too.\n" +
+            "  --tree-shake     Leave out every subroutine that can't be reached from Main.main\n" +
+            "                   (or Sys.init). This needs the whole program, and skips the cache.\n" +
+            "  --run            Compile the program in memory and run it, then print what\n" +
+            "                   it printed and where the time went\n" +
+            "  --steps <n>      With --run, stop after n VM instructions\n" +
+            "  --frames <n>     With --run, stop after n calls to Keyboard.keyPressed\n" +
+            "  --input <text>   With --run, what the keyboard reads (\\n ends a line)\n" +
+            "  --stats          Print how long each step took for each file, and how much\n" +
+            "                   of everything there was\n" +
+            "  --stats-json <f> Write the same thing as JSON to file f (- for stdout)\n" +
+            "  --cache <dir>    Reuse output from earlier runs for files that haven't changed\n" +
+            "  --cache-size <n> Maximum size of the cache in MB (default 64)\n" +
+            "  -O, --optimize   Turn on every optimization below\n" +
+            "  --peephole       Clean up the generated VM code with the peephole optimizer\n" +
+            "  --fold           Work out constant expressions ahead of time, and avoid\n" +
+            "                   Math.multiply for small constants\n" +
+            "  --dead-code      Leave out unreachable code, branches on constant conditions\n" +
+            "                   and unused labels\n" +
+            "  --lean-calls     Let call and return keep THIS, instead of saving it around\n" +
+            "                   every method call on another object\n" +
+            "  --pack-locals    Let locals that are never needed at the same time share a\n" +
+            "                   slot, and keep ones that don't outlive a call in temps\n" +
+            "  --inline         Copy small leaf subroutines (like getters and setters) into\n" +
+            "                   their callers, for a directory (not part of -O)\n" +
+            "  --inline-budget <n>  Same, for subroutines up to n instructions (default " +
+            Inliner.DEFAULT_BUDGET + ")\n" +
+            "  --pool-strings   Build each string literal once and reuse it (not part of -O,\n" +
+            "                   since every use then shares the same String)";
+
     public static void main(String[] args) {
 
         // NOTE: This uses some early return statements
         //       to avoid nesting everything in a big 'ol if-else statement
-        if(args.length != 1) {
+        String rawTargetArg = null;
+        String cacheDir = null;
+        long cacheSize = CompileCache.DEFAULT_MAX_BYTES;
+        int jobs = 0;
+        Integer serverPort = null;
+        boolean stdio = false;
+        boolean asm = false;
+        boolean run = false;
+        long steps = 0;
+        long frames = 0;
+        String input = "";
+        boolean stats = false;
+        String statsJSON = null;
+        JackAnalyzer analyzer = new JackAnalyzer();
+
+        try {
+            for(int i = 0; i < args.length; i++) {
+                switch(args[i]) {
+                    case "-j":
+                    case "--jobs":
+                        jobs = Integer.parseInt(args[++i]);
+                        analyzer.setParallelism(jobs);
+                        break;
+
+                    case "--serve":
+                        serverPort = Integer.parseInt(args[++i]);
+                        break;
+
+                    case "--stdio":
+                        stdio = true;
+                        break;
+
+                    case "--asm":
+                        asm = true;
+                        break;
+
+                    case "--run":
+                        run = true;
+                        break;
+
+                    case "--steps":
+                        steps = Long.parseLong(args[++i]);
+                        break;
+
+                    case "--frames":
+                        frames = Long.parseLong(args[++i]);
+                        break;
+
+                    case "--input":
+                        input = args[++i].replace("\\n", "\n");
+                        break;
+
+                    case "--stats":
+                        stats = true;
+                        break;
+
+                    case "--stats-json":
+                        statsJSON = args[++i];
+                        break;
+
+                    case "--inline-budget":
+                        analyzer.getOptions().setInlining(true);
+                        analyzer.getOptions().setInlineBudget(Integer.parseInt(args[++i]));
+                        break;
+
+                    case "--tree-shake":
+                        analyzer.setTreeShaking(true);
+                        break;
+
+                    case "--no-xml":
+                        analyzer.setXMLOutput(false);
+                        break;
+
+                    case "--cache":
+                        cacheDir = args[++i];
+                        break;
+
+                    case "--cache-size":
+                        cacheSize = Long.parseLong(args[++i]) * 1024 * 1024;
+                        break;
+
+                    default:
+                        if(analyzer.getOptions().applyFlag(args[i])) {
+                            break;
+                        }
+                        if((args[i].startsWith("-") && !args[i].equals("-")) || rawTargetArg != null) {
+                            throw new IllegalArgumentException(args[i]);
+                        }
+                        rawTargetArg = args[i];
+                }
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            rawTargetArg = null;
+        }
+
+        // Server mode doesn't take a path at all, since the files come in
+        // with the requests.
+        if(serverPort != null || stdio) {
+            if(rawTargetArg != null || (serverPort != null && stdio)) {
+                System.out.println("Incorrect usage");
+                System.out.println(USAGE);
+                return;
+            }
+
+            try(CompileServer server = new CompileServer(jobs)) {
+                if(stdio) {
+                    server.serve(System.in, System.out);
+                }
+                else {
+                    server.listen(serverPort, System.err);
+                }
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        if(rawTargetArg == null) {
             System.out.println("Incorrect usage");
+            System.out.println(USAGE);
+            return;
+        }
+
+        if(rawTargetArg.equals("-")) {
+            compileStream(analyzer.getOptions(), asm);
             return;
         }
 
-        String rawTargetArg = args[0];
+        File target = new File(rawTargetArg);
+        if(run) {
+            runProgram(target, analyzer.getOptions(), steps, frames, input);
+            return;
+        }
 
-        JackAnalyzer analyzer = new JackAnalyzer();
-        analyzer.add(new File(rawTargetArg));
+        analyzer.add(target);
+
+        // A directory is a whole program, so it gets started up properly.
+        // A single file is just translated, like the VM translator does.
+        if(asm) {
+            if(target.isDirectory()) {
+                analyzer.setAsmOutput(new File(target, target.getName() + ".asm"), true);
+            }
+            else {
+                analyzer.setAsmOutput(new File(target.getPath().replace(".jack", ".asm")), false);
+            }
+        }
+        if(stats || statsJSON != null) {
+            analyzer.setStatistics(new CompileStatistics());
+        }
         try {
+            if(cacheDir != null) {
+                analyzer.setCache(new CompileCache(new File(cacheDir), cacheSize));
+            }
             analyzer.analyze();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        if(stats) {
+            System.out.print(analyzer.getStatistics().toText());
+        }
+        if(statsJSON != null) {
+            writeStatistics(analyzer.getStatistics(), statsJSON);
+        }
+
+        if(analyzer.getFailureCount() > 0) {
+            System.exit(1);
+        }
+
+    }
+
+    /**
+     * Compiles stdin to stdout, for pipelines. Since stdout is the output,
+     * anything else goes to stderr, and a failure gets a non-zero exit code.
+     */
+    private static void compileStream(CompilerOptions options, boolean asm) {
+        try {
+            ByteBuffer source = SourceFile.read(Channels.newChannel(System.in));
+            OutputSink out = OutputSink.of(Channels.newChannel(System.out));
+
+            if(asm) {
+                // There's no file name, so statics are named after the class.
+                try(AsmWriter writer = new AsmWriter(out)) {
+                    writer.writeRuntime(false);
+                    CompilationEngine engine = new CompilationEngine(source, writer, null);
+                    engine.setOptions(options);
+                    engine.compile();
+                }
+            }
+            else {
+                new SourceCompiler(options).compile(source, out);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Failed to compile <stdin>: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void writeStatistics(CompileStatistics statistics, String path) {
+        String json = statistics.toJSON();
+        if(path.equals("-")) {
+            System.out.print(json);
+            return;
+        }
+
+        try(Writer out = new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8)) {
+            out.write(json);
+        }
+        catch (IOException e) {
+            System.err.println("Couldn't write statistics to " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles a program straight into the interpreter and runs it. Nothing
+     * gets written to disk.
+     */
+    private static void runProgram(File target, CompilerOptions options, long steps, long frames, String input) {
+        VMInterpreter interpreter;
+        try {
+            interpreter = new VMInterpreter(new ProgramLoader(options).load(target));
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Failed to load " + target + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        interpreter.getOS().setMaxKeyPolls(frames);
+        interpreter.getOS().setInput(input);
+
+        long start = System.nanoTime();
+        interpreter.run(steps);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.print(interpreter.getOS().getTextScreen());
+        System.out.println();
+        System.out.print(interpreter.getReport(10));
+        System.out.printf("%nRan in %.1f ms%n", elapsed / 1e6);
+
+        if(interpreter.isStoppedByError()) {
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,323 @@
+package Server;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.CompilerOptions;
+import CodeGeneration.SourceCompiler;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a compiler running, so that compiling a file doesn't mean starting
+ * up a whole new JVM every time. Requests come in either over stdin (with
+ * responses on stdout) or over a TCP socket on localhost. Every request gets
+ * compiled on a pool of worker threads, so many can be going at once, even
+ * over the same connection.
+ *
+ * Every message is a single line of ASCII header, followed by a body of
+ * exactly as many bytes as the header says. Requests look like:
+ *
+ *   COMPILE <id> <length> [flags...]   Compile the body as a .jack file.
+ *                                      Flags are the same as the command
+ *                                      line's (-O, --fold, ...), plus --xml
+ *                                      to get the parse tree back as well.
+ *   PING <id> 0                        Check that the server's alive.
+ *   SHUTDOWN <id> 0                    Stop the server once everything
+ *                                      that's already been sent is done.
+ *
+ * The id is anything without spaces, and is sent back with the response.
+ * Responses come back as soon as they're ready, which isn't necessarily
+ * the order the requests were sent in. They look like:
+ *
+ *   OK <id> <vm length> <xml length>   The body is the VM code followed
+ *                                      by the XML (if it was asked for).
+ *   ERROR <id> <length>                The body is what went wrong, such as
+ *                                      a syntax error and its line number.
+ *
+ * A header that can't be read at all gets an ERROR with an id of "-", and
+ * then the connection is closed, since there's no telling where the next
+ * request starts.
+ */
+public class CompileServer implements Closeable {
+
+    /**
+     * Longest header we'll put up with. Anything longer is surely garbage.
+     */
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+    private ServerSocket serverSocket = null;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param threads How many files can be compiled at once. Anything below
+     *                1 means one per available processor.
+     */
+    public CompileServer(int threads) {
+        if(threads < 1) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "compile-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    // region Serving
+    /**
+     * Listens on localhost until a SHUTDOWN request comes in. Each connection
+     * gets its own thread for reading requests.
+     * @param port Port to listen on, or 0 for whatever's free.
+     * @param ready Told which port was picked, once the server is listening.
+     */
+    public void listen(int port, PrintStream ready) throws IOException {
+        try(ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = socket;
+            ready.println("Listening on " + socket.getInetAddress().getHostAddress() + ":" + socket.getLocalPort());
+
+            while(running) {
+                Socket connection;
+                try {
+                    connection = socket.accept();
+                }
+                catch (SocketException e) {
+                    // This is what happens when SHUTDOWN closes the socket.
+                    if(!running) {
+                        break;
+                    }
+                    throw e;
+                }
+
+                Thread thread = new Thread(() -> {
+                    try(Socket c = connection) {
+                        serve(c.getInputStream(), c.getOutputStream());
+                    }
+                    catch (IOException e) {
+                        // The client went away; nothing more we can do for it.
+                    }
+                }, "compile-connection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Reads requests until the input ends (or a SHUTDOWN comes in), and then
+     * waits for every response to be sent before returning. This is used for
+     * both stdin/stdout and each socket connection.
+     */
+    public void serve(InputStream rawIn, OutputStream rawOut) throws IOException {
+        InputStream in = new BufferedInputStream(rawIn);
+        OutputStream out = new BufferedOutputStream(rawOut);
+
+        // Every request that's still compiling is registered here, so we
+        // know when they're all done.
+        Phaser pending = new Phaser(1);
+
+        try {
+            String header;
+            while(running && (header = readHeader(in)) != null) {
+                String[] parts = header.split(" ");
+
+                String id;
+                int length;
+                try {
+                    id = parts[1];
+                    length = Integer.parseInt(parts[2]);
+                    if(length < 0) {
+                        throw new NumberFormatException();
+                    }
+                }
+                catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    sendError(out, "-", "Malformed header: " + header);
+                    break;
+                }
+
+                byte[] body = in.readNBytes(length);
+                if(body.length < length) {
+                    sendError(out, id, "Input ended in the middle of a request");
+                    break;
+                }
+
+                switch(parts[0]) {
+                    case "COMPILE":
+                        pending.register();
+                        workers.execute(() -> {
+                            try {
+                                handleCompile(out, id, body, parts);
+                            }
+                            finally {
+                                pending.arriveAndDeregister();
+                            }
+                        });
+                        break;
+
+                    case "PING":
+                        send(out, "OK " + id + " 0 0", new byte[0], new byte[0]);
+                        break;
+
+                    case "SHUTDOWN":
+                        send(out, "OK " + id + " 0 0", new byte[0], new byte[0]);
+                        shutdown();
+                        break;
+
+                    default:
+                        sendError(out, id, "Unknown command " + parts[0]);
+                }
+            }
+        }
+        finally {
+            pending.arriveAndAwaitAdvance();
+            out.flush();
+        }
+    }
+
+    /**
+     * Stops taking new connections and requests. Anything that's already
+     * being compiled still gets finished.
+     */
+    public void shutdown() {
+        running = false;
+
+        ServerSocket socket = serverSocket;
+        if(socket != null) {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // We're closing it anyway.
+            }
+        }
+    }
+
+    /**
+     * Shuts down, and then waits (a little while) for anything still
+     * compiling to finish and send its response.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        workers.shutdown();
+
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    // endregion
+
+    // region Requests
+    private void handleCompile(OutputStream out, String id, byte[] source, String[] parts) {
+        requests.incrementAndGet();
+
+        CompilerOptions options = new CompilerOptions();
+        boolean withXML = false;
+        for(int i = 3; i < parts.length; i++) {
+            if(parts[i].equals("--xml")) {
+                withXML = true;
+            }
+            else if(!options.applyFlag(parts[i])) {
+                failures.incrementAndGet();
+                sendError(out, id, "Unknown flag " + parts[i]);
+                return;
+            }
+        }
+
+        ByteArrayOutputStream vm = new ByteArrayOutputStream(source.length * 2);
+        StringWriter xml = (withXML ? new StringWriter(source.length * 4) : null);
+
+        try {
+            new SourceCompiler(options).compile(ByteBuffer.wrap(source), vm::write, xml);
+        }
+        catch (IOException | RuntimeException e) {
+            failures.incrementAndGet();
+            sendError(out, id, (e.getMessage() != null ? e.getMessage() : e.toString()));
+            return;
+        }
+
+        byte[] xmlBytes = (xml != null ? xml.toString().getBytes(StandardCharsets.UTF_8) : new byte[0]);
+        send(out, "OK " + id + " " + vm.size() + " " + xmlBytes.length, vm.toByteArray(), xmlBytes);
+    }
+    // endregion
+
+    // region Framing
+    /**
+     * Reads up to (and throws away) the next newline.
+     * @return The header, or null if the input's over.
+     */
+    private static String readHeader(InputStream in) throws IOException {
+        StringBuilder header = new StringBuilder();
+
+        int b = in.read();
+        if(b < 0) {
+            return null;
+        }
+
+        while(b >= 0 && b != '\n') {
+            if(header.length() == MAX_HEADER_LENGTH) {
+                throw new IOException("Header is too long");
+            }
+            if(b != '\r') {
+                header.append((char) b);
+            }
+            b = in.read();
+        }
+
+        return header.toString();
+    }
+
+    private void sendError(OutputStream out, String id, String message) {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        send(out, "ERROR " + id + " " + body.length, body, new byte[0]);
+    }
+
+    /**
+     * Sends a whole response at once. Workers all share the connection's
+     * output, so this makes sure responses don't get mixed together.
+     */
+    private void send(OutputStream out, String header, byte[] body, byte[] extra) {
+        synchronized(out) {
+            try {
+                out.write(header.getBytes(StandardCharsets.US_ASCII));
+                out.write('\n');
+                out.write(body);
+                out.write(extra);
+                out.flush();
+            }
+            catch (IOException e) {
+                // The other end isn't listening anymore. Everything else
+                // that's still running will find that out on its own.
+            }
+        }
+    }
+    // endregion
+}
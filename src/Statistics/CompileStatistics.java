@@ -0,0 +1,170 @@
+package Statistics;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects the FileStatistics for a whole run, and turns them into
+ * something readable (or JSON, for scripts).
+ *
+ * Files can be added from any thread. Since files can be compiled in
+ * parallel, the per-file times can add up to more than the wall time.
+ */
+public class CompileStatistics {
+
+    private final List<FileStatistics> files = new ArrayList<>();
+    private long startTime = 0;
+    private long wallNanos = 0;
+
+    public CompileStatistics() {
+
+    }
+
+    public void start() {
+        startTime = System.nanoTime();
+    }
+
+    public void stop() {
+        wallNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * @return How long the whole run took, from start() to stop().
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public synchronized void add(FileStatistics file) {
+        files.add(file);
+    }
+
+    /**
+     * @return Every file, sorted by name (since they can finish in any order).
+     */
+    public synchronized List<FileStatistics> getFiles() {
+        List<FileStatistics> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(FileStatistics::getName));
+
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * @return Everything added up.
+     */
+    public FileStatistics getTotal() {
+        FileStatistics total = new FileStatistics("total");
+        for(FileStatistics file : getFiles()) {
+            total.add(file);
+        }
+
+        return total;
+    }
+
+    // region Output
+    public String toText() {
+        List<FileStatistics> sorted = getFiles();
+
+        int nameWidth = 5;
+        for(FileStatistics file : sorted) {
+            nameWidth = Math.max(nameWidth, file.getName().length() + (file.isCached() ? 2 : 0));
+        }
+
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Compiled %d files in %.2f ms%n", sorted.size(), wallNanos / 1e6));
+
+        text.append(String.format("%-" + nameWidth + "s", "file"));
+        for(FileStatistics.Phase phase : FileStatistics.Phase.values()) {
+            text.append(String.format(" %8s", phase.getDisplayName()));
+        }
+        text.append(String.format(" %8s %7s %6s %5s %7s %6s %8s %10s%n",
+                                  "total", "tokens", "lines", "subs", "instrs", "labels", "bytes", "alloc"));
+
+        for(FileStatistics file : sorted) {
+            appendRow(text, file.getName() + (file.isCached() ? " *" : ""), file, nameWidth);
+        }
+        appendRow(text, "total", getTotal(), nameWidth);
+
+        text.append("Times are in ms. ");
+        if(sorted.stream().anyMatch(FileStatistics::isCached)) {
+            text.append("* came from the cache. ");
+        }
+        text.append("alloc is an estimate, in KB.").append(System.lineSeparator());
+
+        return text.toString();
+    }
+
+    private static void appendRow(StringBuilder text, String name, FileStatistics file, int nameWidth) {
+        text.append(String.format("%-" + nameWidth + "s", name));
+        for(FileStatistics.Phase phase : FileStatistics.Phase.values()) {
+            text.append(String.format(" %8.3f", file.getNanos(phase) / 1e6));
+        }
+        text.append(String.format(" %8.3f %7d %6d %5d %7d %6d %8d %10s%n",
+                                  file.getTotalNanos() / 1e6, file.getTokens(), file.getLines(),
+                                  file.getSubroutines(), file.getInstructions(), file.getLabels(),
+                                  file.getBytesWritten(),
+                                  (file.getAllocatedBytes() >= 0 ? Long.toString(file.getAllocatedBytes() / 1024) : "-")));
+    }
+
+    public String toJSON() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"wallNanos\": ").append(wallNanos).append(",\n");
+        json.append("  \"total\": ");
+        appendJSON(json, getTotal());
+        json.append(",\n  \"files\": [");
+
+        List<FileStatistics> sorted = getFiles();
+        for(int i = 0; i < sorted.size(); i++) {
+            json.append(i == 0 ? "\n    " : ",\n    ");
+            appendJSON(json, sorted.get(i));
+        }
+        json.append("\n  ]\n}\n");
+
+        return json.toString();
+    }
+
+    private static void appendJSON(StringBuilder json, FileStatistics file) {
+        json.append("{\"name\": \"").append(escape(file.getName())).append('"');
+        json.append(", \"cached\": ").append(file.isCached());
+
+        json.append(", \"nanos\": {");
+        for(FileStatistics.Phase phase : FileStatistics.Phase.values()) {
+            json.append('"').append(phase.getDisplayName()).append("\": ").append(file.getNanos(phase)).append(", ");
+        }
+        json.append("\"total\": ").append(file.getTotalNanos()).append('}');
+
+        json.append(", \"tokens\": ").append(file.getTokens());
+        json.append(", \"lines\": ").append(file.getLines());
+        json.append(", \"subroutines\": ").append(file.getSubroutines());
+        json.append(", \"instructions\": ").append(file.getInstructions());
+        json.append(", \"labels\": ").append(file.getLabels());
+        json.append(", \"bytesWritten\": ").append(file.getBytesWritten());
+        json.append(", \"allocatedBytes\": ");
+        json.append(file.getAllocatedBytes() >= 0 ? Long.toString(file.getAllocatedBytes()) : "null");
+        json.append('}');
+    }
+
+    private static String escape(String value) {
+        StringBuilder result = new StringBuilder();
+        for(char c : value.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            }
+            else if(c < ' ') {
+                result.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+    // endregion
+}
@@ -0,0 +1,85 @@
+package Statistics;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.Segment;
+
+/**
+ * Passes every command straight through, counting them as it goes. This
+ * only gets put in the chain when statistics are turned on.
+ */
+public class CountingWriter implements CommandWriter {
+
+    private final CommandWriter out;
+    private final FileStatistics statistics;
+
+    public CountingWriter(CommandWriter out, FileStatistics statistics) {
+        this.out = out;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void writePush(Segment seg, int index) {
+        statistics.addInstruction();
+        out.writePush(seg, index);
+    }
+
+    @Override
+    public void writePop(Segment seg, int index) {
+        statistics.addInstruction();
+        out.writePop(seg, index);
+    }
+
+    @Override
+    public void writeArithmetic(ArithmeticCommand cmd) {
+        // Multiply and divide turn into calls, but they're still one command.
+        statistics.addInstruction();
+        out.writeArithmetic(cmd);
+    }
+
+    @Override
+    public void writeLabel(String label) {
+        statistics.addLabel();
+        out.writeLabel(label);
+    }
+
+    @Override
+    public void writeGoto(String label) {
+        statistics.addInstruction();
+        out.writeGoto(label);
+    }
+
+    @Override
+    public void writeIf(String label) {
+        statistics.addInstruction();
+        out.writeIf(label);
+    }
+
+    @Override
+    public void writeCall(String name, int nArgs) {
+        statistics.addInstruction();
+        out.writeCall(name, nArgs);
+    }
+
+    @Override
+    public void writeFunction(String name, int nLocals) {
+        statistics.addSubroutine();
+        statistics.addInstruction();
+        out.writeFunction(name, nLocals);
+    }
+
+    @Override
+    public void writeReturn() {
+        statistics.addInstruction();
+        out.writeReturn();
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
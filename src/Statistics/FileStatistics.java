@@ -0,0 +1,201 @@
+package Statistics;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Everything we measured while compiling one file: how long each step took,
+ * and how much of everything there was. One of these only ever gets filled
+ * in by the thread compiling the file, so there's no locking.
+ */
+public class FileStatistics {
+
+    public enum Phase {
+        READ, TOKENIZE, PARSE, XML, CODEGEN, WRITE;
+
+        private final String displayName = name().toLowerCase();
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final String name;
+    private final long[] nanos = new long[Phase.values().length];
+
+    private boolean cached = false;
+    private long tokens = 0;
+    private long lines = 0;
+    private long subroutines = 0;
+    private long instructions = 0;
+    private long labels = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * How much memory got allocated, or -1 if the JVM can't tell us.
+     */
+    private long allocatedBytes = -1;
+    private long allocationStart = -1;
+
+    public FileStatistics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // region Timing
+    public void addTime(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()] += nanos;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return How long every phase took together.
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for(long phaseNanos : nanos) {
+            total += phaseNanos;
+        }
+
+        return total;
+    }
+    // endregion
+
+    // region Allocation
+    /**
+     * Starts counting allocations on this thread. This has to be the same
+     * thread that calls stopAllocations().
+     */
+    public void startAllocations() {
+        allocationStart = getThreadAllocatedBytes();
+    }
+
+    public void stopAllocations() {
+        long end = getThreadAllocatedBytes();
+        if(allocationStart >= 0 && end >= 0) {
+            allocatedBytes = end - allocationStart;
+        }
+    }
+
+    /**
+     * This is only an estimate. The JVM counts in whole allocation buffers,
+     * and it includes anything else the thread did in the meantime.
+     * @return How many bytes the current thread has allocated so far, or -1
+     *         if that isn't supported.
+     */
+    private static long getThreadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if(sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+    // endregion
+
+    // region Counters
+    /**
+     * Adds everything from another file onto this one. This is how totals
+     * are worked out.
+     */
+    void add(FileStatistics other) {
+        for(int i = 0; i < nanos.length; i++) {
+            nanos[i] += other.nanos[i];
+        }
+
+        tokens += other.tokens;
+        lines += other.lines;
+        subroutines += other.subroutines;
+        instructions += other.instructions;
+        labels += other.labels;
+        bytesWritten += other.bytesWritten;
+
+        if(other.allocatedBytes >= 0) {
+            allocatedBytes = Math.max(allocatedBytes, 0) + other.allocatedBytes;
+        }
+    }
+
+    /**
+     * @return True if the output came out of the cache, in which case there
+     *         was nothing to tokenize or compile.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public void setCached(boolean cached) {
+        this.cached = cached;
+    }
+
+    public long getTokens() {
+        return tokens;
+    }
+
+    public void addTokens(long tokens) {
+        this.tokens += tokens;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public void addLines(long lines) {
+        this.lines += lines;
+    }
+
+    public long getSubroutines() {
+        return subroutines;
+    }
+
+    public void addSubroutine() {
+        subroutines++;
+    }
+
+    /**
+     * @return How many VM commands were written, not counting labels.
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public void addInstruction() {
+        instructions++;
+    }
+
+    public long getLabels() {
+        return labels;
+    }
+
+    public void addLabel() {
+        labels++;
+    }
+
+    /**
+     * @return How many bytes of output (VM, XML or assembly) were written.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void addBytesWritten(long bytesWritten) {
+        this.bytesWritten += bytesWritten;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    // endregion
+}
@@ -4,11 +4,36 @@ package SyntaxAnalysis;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import Caching.CompileCache;
+import CodeGeneration.Asm.AsmWriter;
 import CodeGeneration.CompilationEngine;
+import CodeGeneration.CompilerOptions;
+import CodeGeneration.Optimization.Inliner;
+import CodeGeneration.Optimization.LocalAllocator;
+import CodeGeneration.Optimization.PeepholeOptimizer;
+import CodeGeneration.Optimization.StringPool;
+import CodeGeneration.Optimization.TreeShaker;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.OutputSink;
+import CodeGeneration.VM.VMParser;
+import CodeGeneration.VM.VMWriter;
+import CodeGeneration.XMLWriter;
+import Statistics.CompileStatistics;
+import Statistics.FileStatistics;
 
 import java.io.*;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /***
  * Takes multiple Jack files and converts them into more usable data.
@@ -16,7 +41,76 @@ import java.util.List;
  * all into XML, but more useful things will come later.
  */
 public class JackAnalyzer {
-    private List<File> inputFiles = new LinkedList<>();
+    private List<File> inputFiles = new ArrayList<>();
+
+    /**
+     * .vm files that were found next to the .jack files, but which we don't
+     * have the source for (like the OS). These only matter for assembly.
+     */
+    private List<File> vmFiles = new ArrayList<>();
+
+    /**
+     * If either of these are set, files are compiled concurrently.
+     * Otherwise, everything happens on the calling thread.
+     */
+    private ExecutorService executor = null;
+    private int parallelism = 1;
+
+    /**
+     * Whether or not to write the .C.xml parse tree next to each .vm file.
+     */
+    private boolean writeXML = true;
+
+    private CompilerOptions options = new CompilerOptions();
+
+    /**
+     * Where to look for output from earlier runs. If this is null, every
+     * file gets compiled every time.
+     */
+    private CompileCache cache = null;
+
+    /**
+     * If this is set, everything gets turned into one Hack assembly program
+     * instead of a .vm file per class. Each class's assembly is held in
+     * asmOutputs until everything's compiled, so that it can all be written
+     * out in order.
+     */
+    private File asmFile = null;
+    private boolean asmBootstrap = false;
+    private byte[][] asmOutputs;
+
+    /**
+     * If this is set, every class is compiled into memory first, and only
+     * the functions the program can actually reach get written out. Each
+     * class's code waits in programOutputs (and the .vm files without
+     * source in vmOutputs) until the whole program is known.
+     */
+    private boolean treeShaking = false;
+    private TreeShaker treeShaker;
+    private InstructionBuffer[] programOutputs;
+    private FileStatistics[] programStatistics;
+    private List<InstructionBuffer> vmOutputs;
+
+    /**
+     * Which subroutines can be copied into their callers. This gets worked
+     * out before anything is compiled for real, and only if inlining is on.
+     */
+    private Inliner inliner = null;
+
+    /**
+     * Where timings and counts for each file go. If this is null, nothing
+     * gets measured.
+     */
+    private CompileStatistics statistics = null;
+
+    /**
+     * Where everything the analyzer has to say goes (other than errors).
+     * When compiling in parallel, each file's part is held onto until that
+     * file is done, and the reports about the whole program come after.
+     */
+    private PrintStream console = System.out;
+
+    private int failures = 0;
 
     public JackAnalyzer() {
 
@@ -33,6 +127,10 @@ public class JackAnalyzer {
                     if(file.getName().endsWith(".jack")) {
                         inputFiles.add(file);
                     }
+                    else if(file.getName().endsWith(".vm") &&
+                            !new File(file.getPath().replace(".vm", ".jack")).exists()) {
+                        vmFiles.add(file);
+                    }
                 }
             }
             else {
@@ -44,19 +142,321 @@ public class JackAnalyzer {
         }
     }
 
+    /**
+     * Compiles files on the given executor instead of one after another on
+     * the calling thread. Each file gets its own CompilationEngine, so there
+     * is nothing shared between them. Pass null to go back to compiling
+     * sequentially. The executor is NOT shut down by the analyzer.
+     * @param executor Where compile tasks are submitted, or null.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        this.parallelism = 0;
+    }
+
+    /**
+     * Compiles files in parallel using a fork-join pool of the given size.
+     * The pool only lives for the duration of analyze().
+     * @param threads Number of threads. 1 means sequential, and anything
+     *                below 1 means one thread per available processor.
+     */
+    public void setParallelism(int threads) {
+        this.executor = null;
+        this.parallelism = (threads < 1 ? Runtime.getRuntime().availableProcessors() : threads);
+    }
+
+    /**
+     * Turns the .C.xml parse tree output on or off. When it's off, the
+     * engine doesn't do any XML work whatsoever. It's on by default.
+     */
+    public void setXMLOutput(boolean writeXML) {
+        this.writeXML = writeXML;
+    }
+
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
+    public void setOptions(CompilerOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Writes one Hack assembly program, instead of a .vm file per class.
+     * Any .vm files in the directory that don't have a .jack file (like the
+     * OS) get translated into it too. The cache isn't used for this.
+     * @param asmFile Where the program goes, or null to go back to VM code.
+     * @param bootstrap Whether to start the program with the code that sets
+     *                  up the stack and calls Sys.init.
+     */
+    public void setAsmOutput(File asmFile, boolean bootstrap) {
+        this.asmFile = asmFile;
+        this.asmBootstrap = bootstrap;
+    }
+
+    /**
+     * Leaves out every function, method and constructor that can't be
+     * reached from Main.main (or Sys.init). This needs the whole program,
+     * so it only makes sense for a directory. The cache isn't used for this,
+     * since what a class keeps depends on every other class.
+     */
+    public void setTreeShaking(boolean treeShaking) {
+        this.treeShaking = treeShaking;
+    }
+
+    /**
+     * @return What the last tree shaking run left out, or null if it
+     *         wasn't turned on.
+     */
+    public TreeShaker getTreeShaker() {
+        return treeShaker;
+    }
+
+    public CompileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Files whose output is already in the cache get copied from there
+     * instead of compiled. Once everything's done, the cache is trimmed
+     * back down to size and a summary is printed.
+     * @param cache The cache to use, or null to always compile.
+     */
+    public void setCache(CompileCache cache) {
+        this.cache = cache;
+    }
+
+    public CompileStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Turns on timing and counting for every file. Pass null to turn it off.
+     */
+    public void setStatistics(CompileStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public PrintStream getConsole() {
+        return console;
+    }
+
+    public void setConsole(PrintStream console) {
+        this.console = console;
+    }
+
     public void analyze() throws IOException {
-        for(File inputFile : inputFiles) {
-            File outputVMFile = new File(inputFile.getPath().replace(".jack", ".vm"));
-            File outputXMLFile = new File(inputFile.getPath().replace(".jack", ".C.xml"));
+        if(statistics != null) {
+            statistics.start();
+        }
+
+        try {
+            if(asmFile != null) {
+                asmOutputs = new byte[inputFiles.size()][];
+            }
+            inliner = (options.isInlining() ? findInlineCandidates() : null);
+            if(treeShaking) {
+                treeShaker = new TreeShaker();
+                programOutputs = new InstructionBuffer[inputFiles.size()];
+                programStatistics = new FileStatistics[inputFiles.size()];
+            }
+
+            analyzeAll();
+
+            if(treeShaking) {
+                writeShakenProgram();
+            }
+            if(asmFile != null) {
+                writeAsmProgram();
+            }
+        }
+        finally {
+            if(statistics != null) {
+                statistics.stop();
+            }
+            if(cache != null) {
+                cache.trim();
+                console.println(cache.getSummary());
+            }
+        }
+    }
+
+    /**
+     * A file that fails to compile only reports its own errors; the other
+     * files carry on regardless.
+     */
+    private void analyzeAll() throws IOException {
+        failures = 0;
+        if(executor != null) {
+            analyzeInParallel(executor);
+        }
+        else if(parallelism > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                analyzeInParallel(pool);
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        else {
+            // One file failing doesn't stop the rest, same as in parallel.
+            for(int i = 0; i < inputFiles.size(); i++) {
+                try {
+                    analyzeFile(i, console);
+                }
+                catch (IOException | RuntimeException e) {
+                    reportFailure(inputFiles.get(i), e);
+                }
+            }
+        }
+
+        if(failures > 0) {
+            System.err.println(failures + " of " + inputFiles.size() + " files failed to compile.");
+        }
+    }
+
+    private void reportFailure(File file, Exception error) {
+        failures++;
+        System.err.println("Failed to compile " + file + ": " + error.getMessage());
+        System.err.println();
+    }
+
+    /**
+     * @return How many files didn't compile in the last call to analyze().
+     */
+    public int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * Submits every file as its own task. Anything a task prints is held
+     * onto until the task is done, and then everything is printed in the
+     * same order as the files were added.
+     */
+    private void analyzeInParallel(ExecutorService executor) throws IOException {
+        List<Future<Exception>> results = new ArrayList<>(inputFiles.size());
+        List<ByteArrayOutputStream> consoles = new ArrayList<>(inputFiles.size());
+
+        for(int i = 0; i < inputFiles.size(); i++) {
+            int index = i;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            consoles.add(buffer);
+
+            // Errors are caught inside of the task (rather than pulled out of
+            // an ExecutionException) so we get the original exception back.
+            results.add(executor.submit(() -> {
+                try(PrintStream out = new PrintStream(buffer)) {
+                    analyzeFile(index, out);
+                    return null;
+                }
+                catch (IOException | RuntimeException e) {
+                    return e;
+                }
+            }));
+        }
+
+        for(int i = 0; i < results.size(); i++) {
+            Exception error;
+            try {
+                error = results.get(i).get();
+            }
+            catch (ExecutionException e) {
+                error = new IOException(e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + inputFiles.get(i));
+            }
+
+            console.print(consoles.get(i).toString());
+            if(error != null) {
+                reportFailure(inputFiles.get(i), error);
+            }
+        }
+    }
+
+    private void analyzeFile(int index, PrintStream console) throws IOException {
+        File inputFile = inputFiles.get(index);
+        FileStatistics fileStatistics = null;
+        if(statistics != null) {
+            fileStatistics = new FileStatistics(inputFile.getName());
+            fileStatistics.startAllocations();
+        }
+
+        try {
+            compileFile(index, fileStatistics, console);
+        }
+        finally {
+            // Even a file that failed still took time.
+            if(fileStatistics != null) {
+                fileStatistics.stopAllocations();
+                statistics.add(fileStatistics);
+            }
+        }
+    }
 
-            System.out.println("Reading jack from " + inputFile);
-            System.out.println("Writing VM to     " + outputVMFile);
-            System.out.println("Writing XML to    " + outputXMLFile);
-            System.out.println();
+    private void compileFile(int index, FileStatistics fileStatistics, PrintStream console) throws IOException {
+        File inputFile = inputFiles.get(index);
+        File outputVMFile = new File(inputFile.getPath().replace(".jack", ".vm"));
+        File outputXMLFile = new File(inputFile.getPath().replace(".jack", ".C.xml"));
 
-            try(BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-                PrintStream xmlWriter = new PrintStream(outputXMLFile);
-                PrintStream vmWriter = new PrintStream(outputVMFile)) {
+        long readStart = (fileStatistics != null ? System.nanoTime() : 0);
+        ByteBuffer source = SourceFile.read(inputFile.toPath());
+        if(fileStatistics != null) {
+            fileStatistics.addTime(FileStatistics.Phase.READ, System.nanoTime() - readStart);
+        }
+
+        if(treeShaking) {
+            bufferFile(index, source, outputXMLFile, fileStatistics, console);
+            return;
+        }
+        if(asmFile != null) {
+            translateFile(index, source, outputXMLFile, fileStatistics, console);
+            return;
+        }
+
+        // If the cache has this exact source, we don't need to do anything
+        // more than copy the output over.
+        // Inlining pulls in code from other classes, so the source alone
+        // isn't enough to know if the output would be the same.
+        String cacheKey = null;
+        if(cache != null && inliner == null) {
+            cacheKey = cache.getKey(source, options);
+
+            long restoreStart = (fileStatistics != null ? System.nanoTime() : 0);
+            if(cache.restore(cacheKey, outputVMFile, (writeXML ? outputXMLFile : null))) {
+                if(fileStatistics != null) {
+                    fileStatistics.setCached(true);
+                    fileStatistics.addTime(FileStatistics.Phase.WRITE, System.nanoTime() - restoreStart);
+                    addOutputSizes(fileStatistics, outputVMFile, outputXMLFile);
+                }
+
+                console.println("Reading jack from " + inputFile + " (unchanged)");
+                console.println("Writing VM to     " + outputVMFile + " (cached)");
+                if(writeXML) {
+                    console.println("Writing XML to    " + outputXMLFile + " (cached)");
+                }
+                console.println();
+                return;
+            }
+        }
+
+        console.println("Reading jack from " + inputFile);
+        console.println("Writing VM to     " + outputVMFile);
+        if(writeXML) {
+            console.println("Writing XML to    " + outputXMLFile);
+        }
+        console.println();
+
+        File partialVMFile = getPartialFile(outputVMFile);
+        File partialXMLFile = getPartialFile(outputXMLFile);
+        boolean compiled = false;
+        try {
+            try(XMLWriter xmlWriter = (writeXML ? new XMLWriter(new FileOutputStream(partialXMLFile)) : null);
+                FileChannel vmChannel = FileChannel.open(partialVMFile.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                VMWriter vmWriter = new VMWriter(OutputSink.of(vmChannel))) {
 
                 /*
                 JackTokenizer tokenizer = new JackTokenizer(reader);
@@ -68,11 +468,385 @@ public class JackAnalyzer {
                 writer.println("</tokens>");
                  */
 
-                CompilationEngine engine = new CompilationEngine(reader, vmWriter, xmlWriter);
+                CompilationEngine engine = new CompilationEngine(source, vmWriter, xmlWriter);
+                engine.setOptions(options);
+                engine.setStatistics(fileStatistics);
+                engine.setInliner(inliner);
+                engine.compile();
+
+                printStatistics(engine, console);
+            }
+
+            replaceOutput(partialVMFile, outputVMFile);
+            if(writeXML) {
+                replaceOutput(partialXMLFile, outputXMLFile);
+            }
+            compiled = true;
+        }
+        finally {
+            if(!compiled) {
+                discardPartialFiles(partialVMFile, partialXMLFile);
+            }
+        }
+
+        if(fileStatistics != null) {
+            addOutputSizes(fileStatistics, outputVMFile, outputXMLFile);
+        }
+
+        // Only now that everything's been written (and closed) successfully
+        // is it safe to hold onto.
+        if(cacheKey != null) {
+            cache.store(cacheKey, outputVMFile, (writeXML ? outputXMLFile : null));
+        }
+    }
+
+    // region Output files
+    /**
+     * Output gets written here first, and only replaces the real file once
+     * the whole class has compiled. That way a file with syntax errors leaves
+     * the last good output where it was, rather than an empty file.
+     */
+    private static File getPartialFile(File outputFile) {
+        return new File(outputFile.getPath() + ".part");
+    }
+
+    private static void replaceOutput(File partialFile, File outputFile) throws IOException {
+        try {
+            Files.move(partialFile.toPath(), outputFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            // Some file systems can't do it atomically, but replacing it is
+            // still better than writing over it as we go.
+            Files.move(partialFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Cleans up after a class that didn't compile. This is already on the
+     * way out with an exception, so a file we can't delete isn't worth
+     * another one.
+     */
+    private static void discardPartialFiles(File... partialFiles) {
+        for(File partialFile : partialFiles) {
+            partialFile.delete();
+        }
+    }
+    // endregion
+
+    private void addOutputSizes(FileStatistics fileStatistics, File outputVMFile, File outputXMLFile) {
+        fileStatistics.addBytesWritten(outputVMFile.length());
+        if(writeXML) {
+            fileStatistics.addBytesWritten(outputXMLFile.length());
+        }
+    }
+
+    private static void printStatistics(CompilationEngine engine, PrintStream console) {
+        if(engine.getOptions().isInlining()) {
+            console.println("Inlined " + engine.getCallsInlined() + " calls");
+            console.println();
+        }
+
+        if(engine.getOptions().isDeadCodeElimination()) {
+            console.println("Dead code elimination removed " + engine.getDeadCodeRemoved() + " VM instructions");
+            console.println();
+        }
+
+        PeepholeOptimizer peephole = engine.getPeepholeOptimizer();
+        if(peephole != null) {
+            console.println("Peephole optimizer saved " + peephole.getInstructionsSaved() +
+                            " of " + peephole.getInstructionsIn() + " VM instructions");
+            console.println();
+        }
+
+        LocalAllocator localAllocator = engine.getLocalAllocator();
+        if(localAllocator != null) {
+            console.println(localAllocator.getSummary());
+            console.println();
+        }
+
+        StringPool stringPool = engine.getStringPool();
+        if(stringPool != null && !stringPool.isEmpty()) {
+            console.println(stringPool.getSummary());
+            console.println();
+        }
+    }
+
+    // region Assembly
+    /**
+     * Compiles one class straight to assembly, and holds onto it until
+     * writeAsmProgram().
+     */
+    private void translateFile(int index, ByteBuffer source, File outputXMLFile, FileStatistics fileStatistics,
+                               PrintStream console) throws IOException {
+        File inputFile = inputFiles.get(index);
+        String className = inputFile.getName().replace(".jack", "");
+
+        console.println("Reading jack from " + inputFile);
+        if(writeXML) {
+            console.println("Writing XML to    " + outputXMLFile);
+        }
+        console.println();
+
+        ByteArrayOutputStream asm = new ByteArrayOutputStream();
+        File partialXMLFile = getPartialFile(outputXMLFile);
+        boolean compiled = false;
+        try {
+            try(XMLWriter xmlWriter = (writeXML ? new XMLWriter(new FileOutputStream(partialXMLFile)) : null);
+                AsmWriter asmWriter = new AsmWriter(asm::write, className)) {
+
+                CompilationEngine engine = new CompilationEngine(source, asmWriter, xmlWriter);
+                engine.setOptions(options);
+                engine.setStatistics(fileStatistics);
+                engine.setInliner(inliner);
+                engine.compile();
+
+                printStatistics(engine, console);
+            }
+
+            if(writeXML) {
+                replaceOutput(partialXMLFile, outputXMLFile);
+            }
+            compiled = true;
+        }
+        finally {
+            if(!compiled) {
+                discardPartialFiles(partialXMLFile);
+            }
+        }
+
+        asmOutputs[index] = asm.toByteArray();
+        if(fileStatistics != null) {
+            // The assembly doesn't hit the disk until the very end, so this
+            // is just how much of it there is.
+            fileStatistics.addBytesWritten(asmOutputs[index].length);
+            if(writeXML) {
+                fileStatistics.addBytesWritten(outputXMLFile.length());
+            }
+        }
+    }
+
+    /**
+     * Puts the whole program together: the runtime routines first, then every
+     * class in the order they were added, then any leftover .vm files.
+     */
+    private void writeAsmProgram() throws IOException {
+        for(byte[] code : asmOutputs) {
+            if(code == null) {
+                System.err.println("Not writing " + asmFile + ", since not every class compiled.");
+                return;
+            }
+        }
+
+        console.println("Writing asm to    " + asmFile);
+
+        try(FileChannel channel = FileChannel.open(asmFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputSink sink = OutputSink.of(channel);
+
+            try(AsmWriter runtime = new AsmWriter(sink, "__runtime")) {
+                runtime.writeRuntime(asmBootstrap);
+            }
+
+            for(byte[] code : asmOutputs) {
+                sink.write(code, 0, code.length);
+            }
+
+            for(int i = 0; i < vmFiles.size(); i++) {
+                File vmFile = vmFiles.get(i);
+                console.println("Translating VM    " + vmFile);
+
+                try(AsmWriter writer = new AsmWriter(sink, vmFile.getName().replace(".vm", ""))) {
+                    if(vmOutputs != null) {
+                        // Already read in (and shaken) by writeShakenProgram().
+                        vmOutputs.get(i).writeTo(writer);
+                    }
+                    else {
+                        try(BufferedReader reader = new BufferedReader(new FileReader(vmFile))) {
+                            new VMParser(reader).parse(writer);
+                        }
+                    }
+                }
+            }
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        console.println();
+    }
+    // endregion
+
+    // region Inlining
+    /**
+     * Compiles the whole program once, just to see which subroutines are
+     * small enough to inline. Nothing gets written. Anything that doesn't
+     * compile is skipped here, since the real compile will report it.
+     */
+    private Inliner findInlineCandidates() throws IOException {
+        Inliner result = new Inliner(options.getInlineBudget());
+
+        for(File inputFile : inputFiles) {
+            InstructionBuffer code = new InstructionBuffer();
+            try {
+                CompilationEngine engine = new CompilationEngine(SourceFile.read(inputFile.toPath()), code, null);
+                engine.setOptions(options);
                 engine.compile();
+            }
+            catch (RuntimeException e) {
+                continue;
+            }
+            result.add(code);
+        }
+
+        for(File vmFile : vmFiles) {
+            InstructionBuffer code = new InstructionBuffer();
+            try(BufferedReader reader = new BufferedReader(new FileReader(vmFile))) {
+                new VMParser(reader).parse(code);
+            }
+            result.add(code);
+        }
+
+        console.println("Found " + result.getCandidateCount() + " subroutines small enough to inline");
+        console.println();
+
+        return result;
+    }
+    // endregion
+
+    // region Tree shaking
+    /**
+     * Compiles one class into memory, and holds onto it until
+     * writeShakenProgram(). The XML still gets written right away.
+     */
+    private void bufferFile(int index, ByteBuffer source, File outputXMLFile, FileStatistics fileStatistics,
+                            PrintStream console) throws IOException {
+        File inputFile = inputFiles.get(index);
+
+        console.println("Reading jack from " + inputFile);
+        if(writeXML) {
+            console.println("Writing XML to    " + outputXMLFile);
+        }
+        console.println();
+
+        InstructionBuffer code = new InstructionBuffer();
+        File partialXMLFile = getPartialFile(outputXMLFile);
+        boolean compiled = false;
+        try {
+            try(XMLWriter xmlWriter = (writeXML ? new XMLWriter(new FileOutputStream(partialXMLFile)) : null)) {
+                CompilationEngine engine = new CompilationEngine(source, code, xmlWriter);
+                engine.setOptions(options);
+                engine.setStatistics(fileStatistics);
+                engine.setInliner(inliner);
+                engine.compile();
+
+                printStatistics(engine, console);
+            }
+
+            if(writeXML) {
+                replaceOutput(partialXMLFile, outputXMLFile);
+            }
+            compiled = true;
+        }
+        finally {
+            if(!compiled) {
+                discardPartialFiles(partialXMLFile);
+            }
+        }
 
+        programOutputs[index] = code;
+        programStatistics[index] = fileStatistics;
+        if(fileStatistics != null && writeXML) {
+            fileStatistics.addBytesWritten(outputXMLFile.length());
+        }
+    }
+
+    /**
+     * Now that every class is compiled, works out what's reachable and writes
+     * out just that: a .vm file per class, or (for assembly) each class's
+     * part of the program. The .vm files without source are only read here,
+     * for the calls in them; they only get shaken if they're going into the
+     * assembly, since otherwise they aren't ours to rewrite. When they
+     * aren't, they're added as fixed, so the report only covers what was
+     * actually written.
+     */
+    private void writeShakenProgram() throws IOException {
+        for(InstructionBuffer code : programOutputs) {
+            if(code == null) {
+                System.err.println("Not writing anything, since not every class compiled.");
+                return;
+            }
+        }
+
+        vmOutputs = new ArrayList<>(vmFiles.size());
+        for(File vmFile : vmFiles) {
+            InstructionBuffer code = new InstructionBuffer();
+            try(BufferedReader reader = new BufferedReader(new FileReader(vmFile))) {
+                new VMParser(reader).parse(code);
             }
+            vmOutputs.add(code);
+        }
+
+        for(InstructionBuffer code : programOutputs) {
+            treeShaker.add(code);
+        }
+        for(InstructionBuffer code : vmOutputs) {
+            treeShaker.add(code, asmFile == null);
+        }
+
+        if(!treeShaker.shake()) {
+            System.err.println("Warning: there's no " + TreeShaker.MAIN + ", so nothing can be left out.");
+            System.err.println();
+        }
+
+        for(int i = 0; i < inputFiles.size(); i++) {
+            File inputFile = inputFiles.get(i);
+
+            if(asmFile != null) {
+                ByteArrayOutputStream asm = new ByteArrayOutputStream();
+                try(AsmWriter asmWriter = new AsmWriter(asm::write, inputFile.getName().replace(".jack", ""))) {
+                    treeShaker.writeTo(programOutputs[i], asmWriter);
+                }
+                asmOutputs[i] = asm.toByteArray();
+                addBytesWritten(i, asmOutputs[i].length);
+                continue;
+            }
+
+            File outputVMFile = new File(inputFile.getPath().replace(".jack", ".vm"));
+            console.println("Writing VM to     " + outputVMFile);
+
+            try(FileChannel vmChannel = FileChannel.open(outputVMFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                VMWriter vmWriter = new VMWriter(OutputSink.of(vmChannel))) {
+                treeShaker.writeTo(programOutputs[i], vmWriter);
+            }
+            addBytesWritten(i, outputVMFile.length());
+        }
+
+        if(asmFile != null) {
+            for(int i = 0; i < vmOutputs.size(); i++) {
+                InstructionBuffer shaken = new InstructionBuffer();
+                treeShaker.writeTo(vmOutputs.get(i), shaken);
+                vmOutputs.set(i, shaken);
+            }
+        }
+        else {
+            // Nothing else is going to look at these.
+            vmOutputs = null;
+        }
+
+        console.println();
+        if(!treeShaker.getDropped().isEmpty()) {
+            console.println("Left out " + String.join(", ", treeShaker.getDropped()));
+        }
+        console.println(treeShaker.getSummary());
+        console.println();
+    }
 
+    private void addBytesWritten(int index, long bytes) {
+        if(programStatistics[index] != null) {
+            programStatistics[index].addBytesWritten(bytes);
         }
     }
+    // endregion
 }
@@ -4,35 +4,84 @@ package SyntaxAnalysis;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import CodeGeneration.IllegalSyntaxException;
 import SyntaxAnalysis.Tokens.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
 
 /**
  * Serves as a wrapper for a .jack file. This converts the input stream
  * into tokens, one token at a time. It has no concept of what the tokens
  * actually *mean*, it just breaks them up.
+ *
+ * The whole file is one buffer of bytes (see SourceFile), and we walk
+ * across it exactly once. Comments, whitespace, string literals and
+ * symbols are all handled by the same little state machine, so nothing
+ * ever gets re-scanned and we don't build up any per-line lists. Since
+ * Jack code is plain ASCII, the bytes never need to be decoded; only
+ * the text of identifiers and string literals is turned into Strings.
+ * Each token's offset, length, line and column are already known by the
+ * time we make it, so they're packed into it for free (see SourcePosition).
+ *
+ * Anything that can't be a token doesn't stop the tokenizer. It gets noted
+ * down (see getErrors()) and skipped, so the parser can keep going and find
+ * any other problems in the file too.
  */
 public class JackTokenizer {
     private BufferedReader reader;
-    private List<String> currentLine;
-    private boolean unclosedBlockComment = false;
     private Token nextToken;
 
+    /**
+     * The entire source file, from 0 up to bufferLength. If we were given
+     * a reader, this stays null until the first token is requested.
+     */
+    private ByteBuffer buffer;
+    private int bufferLength;
+
+    /**
+     * Where the scanner currently is within the buffer.
+     */
+    private int position = 0;
+
     /**
      * This matches whatever line we are actually on in the file.
      */
-    private int lineNumber = 0;
+    private int lineNumber = 1;
 
+    /**
+     * Where every line starts in the buffer, for working out columns. Every
+     * token shares this, so none of them need to hold onto their own column.
+     */
+    private final LineMap lines = new LineMap();
+
+    private final List<IllegalSyntaxException> errors = new ArrayList<>();
+
+    /**
+     * How many tokens have been read. Timing is only done if someone asked
+     * for it, since it means checking the clock for every token.
+     */
+    private int tokenCount = 0;
+    private boolean timed = false;
+    private long nanos = 0;
 
     public JackTokenizer(BufferedReader in) {
         this.reader = in;
     }
 
+    /**
+     * @param source The whole file, from its position up to its limit.
+     *               This must not change until tokenizing is done.
+     */
+    public JackTokenizer(ByteBuffer source) {
+        // Slicing it means we can always start counting from 0.
+        this.buffer = source.slice();
+        this.bufferLength = buffer.limit();
+    }
+
     /**
      * Gets the next token's line number. Note that this will advance
      * every time you go past the end of a line.
@@ -84,6 +133,40 @@ public class JackTokenizer {
         return currentToken;
     }
 
+    /**
+     * @return Everything that couldn't be turned into a token so far. Each
+     *         one was skipped over (or turned into the closest thing that
+     *         makes sense), so there aren't any holes in the tokens.
+     */
+    public List<IllegalSyntaxException> getErrors() {
+        return errors;
+    }
+
+    private void addError(long position, String message) {
+        errors.add(IllegalSyntaxException.at(position, lines.getColumn(position), message));
+    }
+
+    // region Statistics
+    /**
+     * Turns on timing. This should happen before the first token is read.
+     */
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    /**
+     * @return How long has been spent reading tokens, in nanoseconds. This is
+     *         always 0 unless setTimed() was turned on.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+    // endregion
+
     public Token peek() {
         if(hasMoreTokens()) {
             return nextToken;
@@ -93,6 +176,23 @@ public class JackTokenizer {
         }
     }
 
+    /**
+     * Pulls the entire reader into the buffer. We only ever do this once.
+     * @throws IOException if a read error occurs
+     */
+    private void fillBuffer() throws IOException {
+        buffer = SourceFile.read(reader);
+        bufferLength = buffer.limit();
+    }
+
+    /**
+     * Bytes above 127 come out as chars above 127, which never match
+     * anything but string literal contents (and comments).
+     */
+    private char charAt(int index) {
+        return (char) (buffer.get(index) & 0xFF);
+    }
+
     /**
      * Attempts to grab the next token. If there are no tokens left,
      * then null is returned.
@@ -100,198 +200,185 @@ public class JackTokenizer {
      * @throws IOException if a read error occurs
      */
     private Token readNextToken() throws IOException {
+        Token result;
+        if(!timed) {
+            result = scanToken();
+        }
+        else {
+            long start = System.nanoTime();
+            try {
+                result = scanToken();
+            }
+            finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        if(result != null) {
+            tokenCount++;
+        }
 
-        Token result = null;
+        return result;
+    }
 
-        // Only get another line if we've either parsed this one
-        // or we don't have any line at all yet.
-        if(currentLine == null || currentLine.size() == 0) {
-            getNextLine();
+    private Token scanToken() throws IOException {
+        if(buffer == null) {
+            fillBuffer();
         }
 
-        if(currentLine != null) {
+        while(true) {
+            skipWhitespaceAndComments();
 
-            // Ok, here's where we actually pull the token out of the line.
-            // Most tokens will have been correctly broken into their own
-            // elements of the array. There's some exceptions however:
-            //  1. Some array elements are empty strings.
-            //  2. String literals are also broken up.
-            //
-            // The first case can be solved just by ignoring empty strings.
-            // Note that these never occur at the end of the line, so we can
-            // safely loop through the line until we find something interesting.
-            //
-            // The second needs some special handling. Fortunately, double quotes
-            // also get split into their own array elements. Thus, we can stitch
-            // elements together until we find another double quote. AFAIK, a string
-            // literal cannot span multiple lines. However, some level of checking
-            // should occur so we know when it occurs.
-
-            // So, as I just said, we need to strip out any empty strings.
-            while(currentLine.get(0).isEmpty()) {
-                currentLine.remove(0);
+            if(position >= bufferLength) {
+                return null;
             }
 
-            // Now we can actually start to figure out what the token is
-            // that we're looking at. According to the Jack specs, these are
-            // the possibilities (and the order we'll check for them):
+            // According to the Jack specs, these are the possibilities:
             //  1. Symbols
             //  2. Keywords
             //  3. Integer literals
             //  4. String literals
             //  5. Identifiers
             //
-            // The first three are trivial. The 4th, as previously mentioned,
-            // is easy to spot but a little harder to stitch together.
-            // We save Identifiers for last because we could mix things up
-            // otherwise. That being said, we still make sure it's a valid
-            // identifier. If it is not, then we know there's a syntax error
-            // so we'll give up immediately.
-
-            String tStr = currentLine.get(0);
-            currentLine.remove(0);
-
-            if(SymbolToken.isValid(tStr)) {
-                result = new SymbolToken(lineNumber, tStr);
-            }
-            else if(KeywordToken.isValid(tStr)) {
-                result = new KeywordToken(lineNumber, tStr);
+            // The first character is enough to tell symbols and string literals
+            // apart from everything else. Keywords, integers and identifiers are
+            // all just "words", so we grab the whole word and then figure out
+            // which one it is.
+            char c = charAt(position);
+
+            if(c == '"') {
+                return readStringLiteral();
             }
-            else if(IntLiteralToken.isValid(tStr)) {
-                result = new IntLiteralToken(lineNumber, tStr);
+            else if(SymbolToken.isValid(c)) {
+                position++;
+                return new SymbolToken(SourcePosition.of(position - 1, 1, lineNumber), lines, c);
             }
-            else if(tStr.equals("\"")) {
-                // Ok, so it *looks* like a string literal.
-                StringBuilder rawStr = new StringBuilder();
-                rawStr.append(tStr);
-
-                do {
-                    tStr = currentLine.get(0);
-                    currentLine.remove(0);
-                    rawStr.append(tStr);
-                } while(!tStr.equals("\""));
-
-                String strLiteral = rawStr.toString();
-                if(StringLiteralToken.isValid(strLiteral)) {
-                    result = new StringLiteralToken(lineNumber, strLiteral);
+            else if(IdentifierToken.isValidChar(c)) {
+                int start = position;
+                while(position < bufferLength && IdentifierToken.isValidChar(charAt(position))) {
+                    position++;
+                }
+                int length = position - start;
+                long sourcePosition = SourcePosition.of(start, length, lineNumber);
+
+                // A word starting with a digit can only be an integer. Otherwise,
+                // we save Identifiers for last because we could mix things up
+                // with keywords. Every char in the word has already been checked,
+                // so the word is guaranteed to be a valid identifier at that point.
+                KeywordType keyword;
+                if(c >= '0' && c <= '9') {
+                    int value = IntLiteralToken.parse(buffer, start, length);
+                    if(value < 0) {
+                        // A 0 in its place keeps the parser from tripping over
+                        // the same mistake a second time.
+                        addError(sourcePosition, "Integer constants must be from 0 to 32767");
+                        value = 0;
+                    }
+                    return new IntLiteralToken(sourcePosition, lines, value);
+                }
+                else if((keyword = KeywordToken.lookup(buffer, start, length)) != null) {
+                    return new KeywordToken(sourcePosition, lines, keyword);
                 }
                 else {
-                    throw new RuntimeException("Malformed string literal");
+                    return new IdentifierToken(sourcePosition, lines, buffer, start, length);
                 }
-
-            }
-            else if(IdentifierToken.isValid(tStr)) {
-                result = new IdentifierToken(lineNumber, tStr);
             }
             else {
-                throw new RuntimeException("Malformed input");
+                addError(SourcePosition.of(position, 1, lineNumber),
+                         "Unexpected character " + (c >= ' ' && c < 127 ? "'" + c + "'" : "#" + (int) c));
+                position++;
             }
-
         }
-
-        return result;
     }
 
     /**
-     * Gets the next line, breaks it up according to spaces, and
-     * stores it in currentLine.
-     * @throws IOException if a read error occurs
+     * Handles everything from an opening double quote through to the closing
+     * one. AFAIK, a string literal cannot span multiple lines, so hitting a
+     * newline (or the end of the file) before the closing quote is an error.
+     * If that happens, the literal just ends there.
+     * @return The string literal token.
      */
-    private void getNextLine() throws IOException {
-
-        // When reading, we can have these possibilities:
-        //  1. The line has no usable code (it's empty or has comments)
-        //  2. The line has just usable code
-        //  3. The line has some of each
-        //
-        // In the case of double slash, it's easy; just strip everything that
-        // follows. However, with /* */, it's a little harder. If we have a
-        // line of code has an unclosed /*, we would then want to keep going
-        // through lines until we find a matching */. Note that more code
-        // may follow after the */!
-        //
-        // HOWEVER, this gets harder if we have both code and an unclosed
-        // /* in the line. Then we need to remember that we're looking for */
-        // but not until we're done with the current line. Then we can
-        // resume as normal.
-
-        // We need to invalidate the array.
-        currentLine = null;
-
-        // We will keep going until we get a non-empty line.
-        while(currentLine == null && reader.ready()) {
-            String line = reader.readLine();
-            lineNumber++;
-
-            // First, we'll check if we're in a block. If we are,
-            // we gotta delete until the next */. If that DOESN'T
-            // exist, then we gotta just delete it all.
-            if (unclosedBlockComment) {
-                int oldLength = line.length();
-                line = line.replaceFirst("^.*?\\*/", "");
-
-                // If no deletion occurred, we want to wipe out the
-                // entire line.
-                if(line.length() == oldLength) {
-                    line = "";
-                }
-                else {
-                    unclosedBlockComment = false;
-                }
-            }
+    private Token readStringLiteral() {
+        int start = position;
+        position++;     // Skip the opening quote
 
-            // At this point, the line might just be empty...
-
-            if(!line.isEmpty()) {
-                // First, we'll nuke all contained instances of /* ... */
-                line = line.replaceAll("/\\*.*?\\*/", "");
-
-                // Now we'll nuke the first instance of /* ...
-                // Note that if we DO make a deletion, it means we have an
-                // unclosed comment block! Hence, we'll track the length.
-                // If the length changes, then we know there's an unclosed
-                // block comment.
-                int oldLength = line.length();
-                line = line.replaceFirst("/\\*.*$", "");
-                unclosedBlockComment = (line.length() != oldLength);
+        while(position < bufferLength && charAt(position) != '"') {
+            if(!StringLiteralToken.isValidChar(charAt(position))) {
+                return unterminatedString(start);
+            }
+            position++;
+        }
 
-                // We'll delete the first instance of // ...
-                line = line.replaceFirst("//.*$", "");
+        if(position >= bufferLength) {
+            return unterminatedString(start);
+        }
 
-                // Ok, FINALLY... we can drop any whitespace.
-                line = line.strip();
+        position++;     // Skip the closing quote
+        long sourcePosition = SourcePosition.of(start, position - start, lineNumber);
 
-                // If, after all of that, there's more to the line, we should
-                // be able to extract some meaningful code from it.
-                if(!line.isEmpty()) {
+        // Note that a trailing backslash isn't allowed, since that looks
+        // like an attempt at escaping the closing quote.
+        if(position - start > 2 && charAt(position - 2) == '\\') {
+            addError(sourcePosition, "String literals can't end with a backslash");
+        }
 
-                    // TODO Handle escaped quotes
+        return new StringLiteralToken(sourcePosition, lines, buffer, start + 1, position - start - 2);
+    }
 
-                    // See https://stackoverflow.com/a/11503678
-                    // See https://stackoverflow.com/a/2206432
-                    String regex = String.format(
-                        "\\s+(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)|" +  // Match spaces outside of quotes, or...
-                        "((?<=%1$s)|(?=%1$s))",                    // Match symbols but split around them
-                        "[\\Q" + "{}()[].,;+-*/&|<>=~\"" + "\\E]"  // The list of symbols to detect
-                    );
+    /**
+     * The literal just ends wherever we gave up on it, without a closing quote.
+     */
+    private Token unterminatedString(int start) {
+        long sourcePosition = SourcePosition.of(start, position - start, lineNumber);
+        addError(sourcePosition, "Unterminated string literal");
 
-                    currentLine = new Vector<>(
-                            Arrays.asList(line.split(regex))
-                    );
+        return new StringLiteralToken(sourcePosition, lines, buffer, start + 1, position - start - 1);
+    }
 
-                    /*
-                    for (String word : currentLine) {
-                        System.out.print(word + "_");
+    /**
+     * Moves the scanner past anything which isn't code. That is, whitespace,
+     * line comments and block comments. Line numbers are counted as we go.
+     *
+     * Unlike a line-by-line approach, block comments don't need any special
+     * memory of being "unclosed"; we just keep going until we see the '*' '/'.
+     * If the file ends first, the rest of the file was a comment.
+     */
+    private void skipWhitespaceAndComments() {
+        while(position < bufferLength) {
+            char c = charAt(position);
+
+            if(c == '\n') {
+                lineNumber++;
+                position++;
+                lines.addLine(position);
+            }
+            else if(c == ' ' || c == '\t' || c == '\r' || Character.isWhitespace(c)) {
+                position++;
+            }
+            else if(c == '/' && position + 1 < bufferLength && charAt(position + 1) == '/') {
+                position += 2;
+                while(position < bufferLength && charAt(position) != '\n') {
+                    position++;
+                }
+            }
+            else if(c == '/' && position + 1 < bufferLength && charAt(position + 1) == '*') {
+                position += 2;
+                while(position < bufferLength &&
+                      !(charAt(position) == '*' && position + 1 < bufferLength && charAt(position + 1) == '/')) {
+                    if(charAt(position) == '\n') {
+                        lineNumber++;
+                        lines.addLine(position + 1);
                     }
-                    System.out.println();
-                     */
+                    position++;
                 }
 
+                // Skip the closing */, if there was one.
+                position = Math.min(position + 2, bufferLength);
+            }
+            else {
+                return;
             }
         }
-
-
     }
 
-
 }
@@ -0,0 +1,767 @@
+package SyntaxAnalysis;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IR.NodeKind;
+import CodeGeneration.IR.SyntaxTree;
+import CodeGeneration.IllegalSyntaxException;
+import CodeGeneration.SyntaxErrorsException;
+import SyntaxAnalysis.Tokens.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns tokens into a SyntaxTree. This only checks that the code is
+ * shaped right; it doesn't know anything about variables or what the
+ * code means, and it doesn't write anything. That's up to whoever
+ * walks the tree afterwards.
+ *
+ * A mistake doesn't stop the parser. It notes the error down, skips ahead
+ * to somewhere it can pick back up (the end of the statement, the start of
+ * the next one, or the next class member) and carries on. That way, one
+ * run finds every error in the file instead of just the first one. The
+ * tree isn't any good after that, though, so parse() throws at the end.
+ */
+public class Parser {
+
+    /**
+     * After this many, the rest are probably just the first few causing
+     * trouble, so we stop looking.
+     */
+    public static final int MAX_ERRORS = 100;
+
+    private JackTokenizer tokenizer;
+    private SyntaxTree tree;
+
+    private final List<IllegalSyntaxException> errors = new ArrayList<>();
+
+    /**
+     * Thrown once there are too many errors, to get all the way back out of
+     * parse(). Nothing else catches this.
+     */
+    private static class TooManyErrors extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TooManyErrors() {
+            super(null, null, false, false);
+        }
+    }
+
+    public Parser(JackTokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Parses the one class that makes up a file.
+     * @throws SyntaxErrorsException if the code isn't valid Jack. This has
+     *         every error that was found (including the tokenizer's).
+     */
+    public SyntaxTree parse() {
+        tree = new SyntaxTree();
+
+        try {
+            // According to the Jack specs, every file must have exactly
+            // one class. Thus, we'll make the specific assumption that
+            // the first tokens are for a class definition.
+            parseClass();
+
+            // Each file is supposed to be exactly one class, so if
+            // we're done compiling the class and there's more tokens,
+            // something's wrong. (Unless we already know something's wrong,
+            // since then the class probably just ended early.)
+            if(errors.isEmpty() && tokenizer.hasMoreTokens()) {
+                throw new IllegalSyntaxException(tokenizer.peek(), "Found symbols after class definition");
+            }
+        }
+        catch (IllegalSyntaxException e) {
+            addError(e);
+        }
+        catch (TooManyErrors e) {
+            // Everything we've got so far still gets reported.
+        }
+
+        List<IllegalSyntaxException> allErrors = new ArrayList<>(tokenizer.getErrors());
+        allErrors.addAll(errors);
+        if(!allErrors.isEmpty()) {
+            throw SyntaxErrorsException.of(allErrors);
+        }
+
+        return tree;
+    }
+
+    // region Recovery
+    private void addError(IllegalSyntaxException error) {
+        // Skipping ahead can run into the same problem twice (like the end
+        // of the file), which isn't worth reporting again.
+        if(!errors.isEmpty()) {
+            IllegalSyntaxException last = errors.get(errors.size() - 1);
+            if(last.getLineNumber() == error.getLineNumber() && last.getColumn() == error.getColumn() &&
+               last.getDescription().equals(error.getDescription())) {
+                return;
+            }
+        }
+
+        errors.add(error);
+        if(errors.size() + tokenizer.getErrors().size() >= MAX_ERRORS) {
+            throw new TooManyErrors();
+        }
+    }
+
+    /**
+     * Makes sure skipping ahead actually got somewhere. If it stopped on the
+     * same token that started the thing that went wrong, we'd just hit the
+     * same error forever, so that token gets thrown away.
+     */
+    private void ensureProgress(Token start) {
+        if(tokenizer.hasMoreTokens() && tokenizer.peek() == start) {
+            tokenizer.next();
+        }
+    }
+
+    private static boolean isStatementStart(Token token, boolean includeVar) {
+        KeywordToken keyword = safeCast(token, KeywordToken.class);
+        if(keyword == null) {
+            return false;
+        }
+
+        switch(keyword.getValue()) {
+            case LET:
+            case DO:
+            case IF:
+            case WHILE:
+            case RETURN:
+                return true;
+            case VAR:
+                return includeVar;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Skips ahead after a broken statement. This stops after a ';', or
+     * before the start of another statement or a '}' that closes the
+     * block we're in. Whole blocks get skipped along the way, so a broken
+     * "while" doesn't leave its body behind to be parsed as if it were
+     * outside of it.
+     */
+    private void skipStatement(boolean stopAtVar) {
+        int depth = 0;
+
+        while(tokenizer.hasMoreTokens()) {
+            Token token = tokenizer.peek();
+            SymbolToken symbol = safeCast(token, SymbolToken.class);
+
+            if(symbol != null && symbol.getValue() == '{') {
+                depth++;
+            }
+            else if(symbol != null && symbol.getValue() == '}') {
+                if(depth == 0) {
+                    return;
+                }
+
+                depth--;
+                if(depth == 0) {
+                    tokenizer.next();
+                    return;
+                }
+            }
+            else if(depth == 0) {
+                if(symbol != null && symbol.getValue() == ';') {
+                    tokenizer.next();
+                    return;
+                }
+                if(isStatementStart(token, stopAtVar)) {
+                    return;
+                }
+            }
+
+            tokenizer.next();
+        }
+    }
+
+    /**
+     * Skips ahead after a broken class variable or subroutine, up to the next
+     * one (or the '}' at the end of the class).
+     */
+    private void skipClassMember() {
+        int depth = 0;
+
+        while(tokenizer.hasMoreTokens()) {
+            Token token = tokenizer.peek();
+            SymbolToken symbol = safeCast(token, SymbolToken.class);
+            KeywordToken keyword = safeCast(token, KeywordToken.class);
+
+            if(symbol != null && symbol.getValue() == '{') {
+                depth++;
+            }
+            else if(symbol != null && symbol.getValue() == '}') {
+                if(depth == 0) {
+                    return;
+                }
+                depth--;
+            }
+            else if(depth == 0 && keyword != null) {
+                switch(keyword.getValue()) {
+                    case STATIC:
+                    case FIELD:
+                    case CONSTRUCTOR:
+                    case FUNCTION:
+                    case METHOD:
+                        return;
+                }
+            }
+
+            tokenizer.next();
+        }
+    }
+    // endregion
+
+    // region Casting and requiring
+    private static <T> T safeCast(Token token, Class<T> type) {
+        return (type.isInstance(token) ? (T) token : null);
+    }
+
+    /**
+     * Grabs the next token from the Tokenizer, consuming it in the process.
+     * It ensures that the token is of the given type or it an exception is thrown.
+     * @param type The result of doing the token type's static class variable.
+     * @param <T> The type of token we require.
+     * @return The token, assuming the cast is successful.
+     */
+    private <T extends Token> T getTokenOrDie(Class<T> type) {
+        T castToken = peekTokenOrDie(type);
+        tokenizer.next();
+
+        return castToken;
+    }
+
+    /**
+     * Grabs the next token from the Tokenizer without consuming it.
+     * It ensures that the token is of the given type or it an exception is thrown.
+     * @param type The result of doing the token type's static class variable.
+     * @param <T> The type of token we require.
+     * @return The token, assuming the cast is successful.
+     */
+    private <T extends Token> T peekTokenOrDie(Class<T> type) {
+        Token rawToken = tokenizer.peek();
+        T castToken = safeCast(rawToken, type);
+
+        if(rawToken == null) {
+            throw new IllegalSyntaxException(tokenizer.getLineNumber(), "Unexpected end of file");
+        }
+        if(castToken == null) {
+            throw new IllegalSyntaxException(rawToken, "Unexpected token: " + rawToken);
+        }
+
+        return castToken;
+    }
+
+    /**
+     * Like the rest of these, this only consumes the token if it's the right
+     * one. Anything else is left for error recovery to look at.
+     */
+    private SymbolToken getSymbolOrDie(char symbol) {
+        Token rawToken = peekTokenOrDie(Token.class);
+        SymbolToken token = safeCast(rawToken, SymbolToken.class);
+        if(token == null || token.getValue() != symbol) {
+            throw new IllegalSyntaxException(rawToken, "Expected " + symbol + " but got " + rawToken);
+        }
+        tokenizer.next();
+
+        return token;
+    }
+
+    private KeywordToken getKeywordOrDie(KeywordType keyword) {
+        KeywordToken token = peekTokenOrDie(KeywordToken.class);
+        if(token.getValue() != keyword) {
+            throw new IllegalSyntaxException(token, "Expected " + keyword + " but got " + token.getValue());
+        }
+        tokenizer.next();
+
+        return token;
+    }
+
+    private boolean nextIsSymbol(char symbol) {
+        SymbolToken token = safeCast(tokenizer.peek(), SymbolToken.class);
+        return token != null && token.getValue() == symbol;
+    }
+
+    /**
+     * Reads a type, and adds it as a TYPE node under the parent.
+     */
+    private void parseType(int parent, boolean allowVoid) {
+        Token typeToken = peekTokenOrDie(Token.class);
+
+        KeywordToken typeKeywordToken = safeCast(typeToken, KeywordToken.class);
+        if(typeKeywordToken != null) {
+            if(!(typeKeywordToken.getValue() == KeywordType.INT ||
+                 typeKeywordToken.getValue() == KeywordType.CHAR ||
+                 typeKeywordToken.getValue() == KeywordType.BOOLEAN ||
+                 (allowVoid && typeKeywordToken.getValue() == KeywordType.VOID))
+            ) {
+                throw new IllegalSyntaxException(
+                        typeToken,
+                        "Cannot use keyword " + typeKeywordToken.getValue().toString() + " as a type"
+                );
+            }
+        }
+        else if(!(typeToken instanceof IdentifierToken)) {
+            throw new IllegalSyntaxException(
+                    typeToken,
+                    "Illegal type " + typeToken.toString()
+            );
+        }
+        tokenizer.next();
+
+        tree.addChild(parent, NodeKind.TYPE, typeToken);
+    }
+    // endregion
+
+    // region Class parsing
+    private void parseClass() {
+        getKeywordOrDie(KeywordType.CLASS);
+
+        int classNode = tree.add(NodeKind.CLASS, getTokenOrDie(IdentifierToken.class));
+
+        getSymbolOrDie('{');
+
+        boolean done = false;
+        while(!done && tokenizer.hasMoreTokens()) {
+            Token nextToken = tokenizer.peek();
+            KeywordToken keyword = safeCast(nextToken, KeywordToken.class);
+            SymbolToken symbol = safeCast(nextToken, SymbolToken.class);
+
+            if(symbol != null && symbol.getValue() == '}') {
+                tokenizer.next();
+                done = true;
+            }
+            else if(keyword != null) {
+                try {
+                    if(keyword.getValue() == KeywordType.STATIC ||
+                       keyword.getValue() == KeywordType.FIELD) {
+                        parseClassVarDec(classNode);
+                    }
+                    else if(keyword.getValue() == KeywordType.CONSTRUCTOR ||
+                            keyword.getValue() == KeywordType.FUNCTION ||
+                            keyword.getValue() == KeywordType.METHOD) {
+                        parseSubroutine(classNode);
+                    }
+                    else  {
+                        throw new IllegalSyntaxException(nextToken, "Unexpected keyword in class body: " + nextToken);
+                    }
+                }
+                catch (IllegalSyntaxException e) {
+                    addError(e);
+                    skipClassMember();
+                    ensureProgress(nextToken);
+                }
+            }
+            else {
+                // We don't know what this is, but we'll hold onto it so it
+                // still shows up in the XML.
+                tree.addChild(classNode, NodeKind.UNSUPPORTED, tokenizer.next());
+            }
+        }
+
+        if(!done) {
+            throw new IllegalSyntaxException(tokenizer.getLineNumber(), "Unexpected end of file");
+        }
+    }
+
+    private void parseClassVarDec(int parent) {
+        // Figure out the locality.
+        KeywordToken locality = getTokenOrDie(KeywordToken.class);
+        if(locality.getValue() != KeywordType.STATIC && locality.getValue() != KeywordType.FIELD) {
+            throw new IllegalSyntaxException(
+                    locality,
+                    "Class variable declarations must be 'static' or 'field'"
+            );
+        }
+
+        int node = tree.addChild(parent, NodeKind.CLASS_VAR_DEC, locality);
+        parseType(node, false);
+        parseVarDecList(node);
+    }
+    // endregion
+
+    // region Subroutine parsing
+    private void parseSubroutine(int parent) {
+        KeywordToken routineType = getTokenOrDie(KeywordToken.class);
+        if (routineType.getValue() != KeywordType.CONSTRUCTOR &&
+            routineType.getValue() != KeywordType.FUNCTION &&
+            routineType.getValue() != KeywordType.METHOD
+        ) {
+            throw new IllegalSyntaxException(routineType, "Invalid function type");
+        }
+
+        int node = tree.addChild(parent, NodeKind.SUBROUTINE, routineType);
+
+        parseType(node, true);
+        tree.addChild(node, NodeKind.NAME, getTokenOrDie(IdentifierToken.class));
+
+        getSymbolOrDie('(');
+        parseParameterList(node);
+        getSymbolOrDie(')');
+
+        getSymbolOrDie('{');
+
+        // First we'll need to handle any possible variable declarations
+        KeywordToken nextToken = safeCast(tokenizer.peek(), KeywordToken.class);
+        while(nextToken != null && nextToken.getValue() == KeywordType.VAR) {
+            try {
+                parseVarDec(node);
+            }
+            catch (IllegalSyntaxException e) {
+                addError(e);
+                skipStatement(true);
+                ensureProgress(nextToken);
+            }
+            nextToken = safeCast(tokenizer.peek(), KeywordToken.class);
+        }
+
+        parseStatements(node, null);
+
+        getSymbolOrDie('}');
+    }
+
+    /**
+     * This ends upon seeing ')' but it does not consume it. This also
+     * assumes that the opening '(' has already been consumed.
+     */
+    private void parseParameterList(int parent) {
+        int listNode = tree.addChild(parent, NodeKind.PARAMETER_LIST, null);
+
+        // Loop until we see ')'
+        while(!nextIsSymbol(')')) {
+
+            // There are two possible scenarios here:
+            //  1. paramType paramName,
+            //  2. paramType paramName)
+            //
+            // We want to consume commas and leave parenthesis.
+            int paramNode = tree.addChild(listNode, NodeKind.PARAMETER, null);
+            parseType(paramNode, false);
+            tree.addChild(paramNode, NodeKind.NAME, getTokenOrDie(IdentifierToken.class));
+
+            // Either way, the next token MUST be a symbol (either ',' or ')').
+            SymbolToken nextTokenSymbol = peekTokenOrDie(SymbolToken.class);
+            if(nextTokenSymbol.getValue() == ',') {
+                tokenizer.next();
+            }
+        }
+    }
+
+    /**
+     * Takes any variable declarations, and continues until a ';' is encountered.
+     * This consumes the entire statement, including the ';' at the end.
+     */
+    private void parseVarDec(int parent) {
+        int node = tree.addChild(parent, NodeKind.VAR_DEC, getKeywordOrDie(KeywordType.VAR));
+        parseType(node, false);
+        parseVarDecList(node);
+    }
+
+    /**
+     * This specifically consumes the set of names following a variable
+     * declaration. That is, it consumes "name, name, name, ..., name;"
+     * and adds a NAME node for each of them.
+     */
+    private void parseVarDecList(int parent) {
+
+        // Now we'll get the variable names. We MUST see at least one
+        // name, but we might see more after that. It'll be in the
+        // format of "name, name, name, ..., name;"
+        //
+        // Thus, we read the first name, and then repeat as long
+        // as we see commas. If we see anything else, we stop and
+        // make sure it's a semicolon.
+        tree.addChild(parent, NodeKind.NAME, getTokenOrDie(IdentifierToken.class));
+
+        SymbolToken symbolAfterName = getTokenOrDie(SymbolToken.class);
+        while(symbolAfterName.getValue() == ',') {
+            tree.addChild(parent, NodeKind.NAME, getTokenOrDie(IdentifierToken.class));
+            symbolAfterName = getTokenOrDie(SymbolToken.class);
+        }
+
+        if(symbolAfterName.getValue() != ';') {
+            throw new IllegalSyntaxException(
+                    symbolAfterName,
+                    "Unexpected symbol: " + symbolAfterName.getValue()
+            );
+        }
+    }
+    // endregion
+
+    // region Statement parsing
+    /**
+     * Runs through statements until a '}' is encountered. Note that this
+     * does not consume the '}' nor does this expect the '{'.
+     *
+     * @param elseToken The 'else' keyword, if these are an else branch.
+     */
+    private void parseStatements(int parent, Token elseToken) {
+        int node = tree.addChild(parent, NodeKind.STATEMENTS, elseToken);
+
+        // Loop until we find a '}' (or the file ends, which whoever
+        // wanted the '}' will complain about).
+        while(tokenizer.hasMoreTokens() && !nextIsSymbol('}')) {
+            Token start = tokenizer.peek();
+            try {
+                parseStatement(node);
+            }
+            catch (IllegalSyntaxException e) {
+                addError(e);
+                skipStatement(false);
+                ensureProgress(start);
+            }
+        }
+    }
+
+    private void parseStatement(int parent) {
+        KeywordToken keyword = peekTokenOrDie(KeywordToken.class);
+        switch(keyword.getValue()) {
+            case LET:
+                parseLet(parent);
+                break;
+
+            case DO:
+                parseDo(parent);
+                break;
+
+            case IF:    // This consumes the else as well
+                parseIf(parent);
+                break;
+
+            case WHILE:
+                parseWhile(parent);
+                break;
+
+            case RETURN:
+                parseReturn(parent);
+                break;
+
+            default:
+                throw new IllegalSyntaxException(keyword, "Unexpected keyword " + keyword);
+        }
+    }
+
+    private void parseDo(int parent) {
+        int node = tree.addChild(parent, NodeKind.DO, getKeywordOrDie(KeywordType.DO));
+
+        IdentifierToken firstToken = getTokenOrDie(IdentifierToken.class);
+        if(peekTokenOrDie(SymbolToken.class).getValue() == '.') {
+            tokenizer.next(); // Skip the '.'
+            parseSubroutineCall(node, firstToken, getTokenOrDie(IdentifierToken.class));
+        }
+        else {
+            parseSubroutineCall(node, null, firstToken);
+        }
+
+        getSymbolOrDie(';');
+    }
+
+    private void parseLet(int parent) {
+        int node = tree.addChild(parent, NodeKind.LET, getKeywordOrDie(KeywordType.LET));
+
+        tree.addChild(node, NodeKind.NAME, getTokenOrDie(IdentifierToken.class));
+
+        SymbolToken symbol = peekTokenOrDie(SymbolToken.class);
+        if(symbol.getValue() == '[') {
+            getSymbolOrDie('[');
+            parseExpression(node);
+            getSymbolOrDie(']');
+
+            tree.setValue(node, 1);
+        }
+        getSymbolOrDie('=');
+
+        parseExpression(node);
+
+        getSymbolOrDie(';');
+    }
+
+    private void parseWhile(int parent) {
+        int node = tree.addChild(parent, NodeKind.WHILE, getKeywordOrDie(KeywordType.WHILE));
+
+        getSymbolOrDie('(');
+        parseExpression(node);
+        getSymbolOrDie(')');
+
+        getSymbolOrDie('{');
+        parseStatements(node, null);
+        getSymbolOrDie('}');
+    }
+
+    private void parseIf(int parent) {
+        int node = tree.addChild(parent, NodeKind.IF, getKeywordOrDie(KeywordType.IF));
+
+        getSymbolOrDie('(');
+        parseExpression(node);
+        getSymbolOrDie(')');
+
+        getSymbolOrDie('{');
+        parseStatements(node, null);
+        getSymbolOrDie('}');
+
+        KeywordToken elseToken = safeCast(tokenizer.peek(), KeywordToken.class);
+        if(elseToken != null && elseToken.getValue() == KeywordType.ELSE) {
+            tokenizer.next();
+
+            getSymbolOrDie('{');
+            parseStatements(node, elseToken);
+            getSymbolOrDie('}');
+        }
+    }
+
+    private void parseReturn(int parent) {
+        int node = tree.addChild(parent, NodeKind.RETURN, getKeywordOrDie(KeywordType.RETURN));
+
+        if(!nextIsSymbol(';')) {
+            parseExpression(node);
+        }
+
+        getSymbolOrDie(';');
+    }
+    // endregion
+
+    // region Expression and term parsing
+    /**
+     * This continues through terms until it encounters something
+     * which is NOT a binary operator symbol. It will not consume
+     * the token which causes this function to stop.
+     */
+    private void parseExpression(int parent) {
+        int node = tree.addChild(parent, NodeKind.EXPRESSION, null);
+
+        // We're making a hard assumption that there's at least one
+        // term, because whenever an expression is expected, there's
+        // gotta be at least one of these.
+        parseTerm(node);
+
+        SymbolToken symbolAfterToken = safeCast(tokenizer.peek(), SymbolToken.class);
+        while(symbolAfterToken != null && symbolAfterToken.isBinaryOp() ) {
+            tree.addChild(node, NodeKind.OPERATOR, tokenizer.next());
+            parseTerm(node);
+
+            symbolAfterToken = safeCast(tokenizer.peek(), SymbolToken.class);
+        }
+    }
+
+    private void parseTerm(int parent) {
+        // Nothing gets consumed until we know it's the start of a term.
+        Token termToken = peekTokenOrDie(Token.class);
+
+        if(termToken instanceof IntLiteralToken) {
+            tokenizer.next();
+            tree.addChild(parent, NodeKind.INT_CONSTANT, termToken);
+        }
+        else if(termToken instanceof StringLiteralToken) {
+            tokenizer.next();
+            tree.addChild(parent, NodeKind.STRING_CONSTANT, termToken);
+        }
+        else if(termToken instanceof KeywordToken && ((KeywordToken) termToken).isConst()) {
+            tokenizer.next();
+            tree.addChild(parent, NodeKind.KEYWORD_CONSTANT, termToken);
+        }
+        else if(termToken instanceof SymbolToken) {
+            // A symbol means one of two things:
+            //  1. UNARY_OP term
+            //  2. (expression)
+            SymbolToken symbol = (SymbolToken) termToken;
+            if(symbol.isUnaryOp()) {
+                tokenizer.next();
+                int node = tree.addChild(parent, NodeKind.UNARY, symbol);
+                parseTerm(node);
+            }
+            else if(symbol.getValue() == '(') {
+                tokenizer.next();
+                int node = tree.addChild(parent, NodeKind.PARENTHESES, symbol);
+                parseExpression(node);
+                getSymbolOrDie(')');
+            }
+            else {
+                throw new IllegalSyntaxException(symbol, "Unexpected symbol: " + symbol);
+            }
+        }
+        else if(termToken instanceof IdentifierToken) {
+            tokenizer.next();
+            // Identifiers can mean any one of these things:
+            //  1. varName
+            //  2. varName[expression]
+            //  3. subroutineCall
+            //   3a. callName( ... )
+            //   3b. obj.callName( ... )
+            IdentifierToken identifier = (IdentifierToken) termToken;
+
+            if(nextIsSymbol('[')) {
+                int node = tree.addChild(parent, NodeKind.ARRAY_ACCESS, identifier);
+
+                getSymbolOrDie('[');
+                parseExpression(node);
+                getSymbolOrDie(']');
+            }
+            else if(nextIsSymbol('.')) {
+                // In this case, the identifier is the class name.
+                tokenizer.next();
+                parseSubroutineCall(parent, identifier, getTokenOrDie(IdentifierToken.class));
+            }
+            else if(nextIsSymbol('(')) {
+                parseSubroutineCall(parent, null, identifier);
+            }
+            else {
+                tree.addChild(parent, NodeKind.VARIABLE, identifier);
+            }
+        }
+        else {
+            throw new IllegalSyntaxException(termToken, "Unexpected token in term: " + termToken);
+        }
+    }
+    // endregion
+
+    // region Subroutine call parsing
+    /**
+     * Subroutines take one of two forms:
+     *  1. name(expressionList)
+     *  2. obj.name(expressionList)
+     *
+     * This consumes '(' and ')', in addition to the expressionList inside.
+     *
+     * @param objToken Name of the object (or class). Can be null.
+     * @param subroutineToken Name of the subroutine. SHOULD NOT BE NULL.
+     */
+    private void parseSubroutineCall(int parent, IdentifierToken objToken, IdentifierToken subroutineToken) {
+        int node = tree.addChild(parent, NodeKind.CALL, subroutineToken);
+
+        if(objToken != null) {
+            tree.addChild(node, NodeKind.NAME, objToken);
+            tree.setValue(node, 1);
+        }
+
+        getSymbolOrDie('(');
+
+        // In every situation with an expression list, they are always bound
+        // by parenthesis, so we go until we find the ')'.
+        if(!nextIsSymbol(')')) {
+            // We have at LEAST one expression, maybe more. After each expression,
+            // we can be sure that we will always have a symbol.
+            parseExpression(node);
+
+            // So now we either have a comma followed by another expression
+            // (and this can repeat many times), or a close parenthesis.
+            SymbolToken symbol = peekTokenOrDie(SymbolToken.class);
+            while(symbol.getValue() == ',') {
+                tokenizer.next();
+                parseExpression(node);
+
+                symbol = peekTokenOrDie(SymbolToken.class);
+            }
+        }
+
+        getSymbolOrDie(')');
+    }
+    // endregion
+}
@@ -0,0 +1,122 @@
+package SyntaxAnalysis;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Pulls source code in as raw bytes, which is what the tokenizer works on.
+ * Jack is ASCII (other than whatever's in comments and string literals),
+ * so there's no point decoding everything into chars first.
+ *
+ * Big files get memory-mapped, so the OS just hands us its own copy of the
+ * pages. Small files aren't worth setting up a mapping for, so those are
+ * read into a buffer that each thread keeps around and reuses.
+ */
+public class SourceFile {
+
+    /**
+     * Files at least this big get mapped rather than read. Most Jack files
+     * are only a few KB, so this only kicks in for really big ones.
+     */
+    public static final long MAP_THRESHOLD = 256 * 1024;
+
+    private static final int INITIAL_POOL_SIZE = 16 * 1024;
+
+    /**
+     * Every thread gets its own buffer, since files can be compiled on
+     * several threads at once. It grows to fit the biggest (unmapped) file
+     * that thread has seen, which is never more than MAP_THRESHOLD.
+     */
+    private static final ThreadLocal<ByteBuffer> POOL =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(INITIAL_POOL_SIZE));
+
+    /**
+     * Reads a whole file.
+     *
+     * NOTE: If the file is small, the buffer that comes back is this thread's
+     * pooled one, so it's only good until the next call to read() on the same
+     * thread. Tokens copy out what they need, so this is fine as long as
+     * the file gets tokenized before the next one is read.
+     * @return The file's contents, from position 0 up to the limit.
+     */
+    public static ByteBuffer read(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if(size >= MAP_THRESHOLD) {
+                // The mapping stays valid after the channel's closed.
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            ByteBuffer buffer = POOL.get();
+            if(buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect((int) Math.min(MAP_THRESHOLD, Math.max(size, buffer.capacity() * 2L)));
+                POOL.set(buffer);
+            }
+            buffer.clear();
+
+            // The size could change while we're reading, so just go until
+            // the channel says it's out. If the file grew past what fits,
+            // start over with a mapping.
+            while(channel.read(buffer) >= 0) {
+                if(!buffer.hasRemaining()) {
+                    if(channel.read(ByteBuffer.allocate(1)) < 0) {
+                        break;
+                    }
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Reads everything left in a channel, such as stdin. There's no telling
+     * how big that'll be, so this just keeps doubling until it's all in.
+     */
+    public static ByteBuffer read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_POOL_SIZE);
+
+        while(channel.read(buffer) >= 0) {
+            if(!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads everything left in a Reader. This is for anything that didn't
+     * come from a file, so it isn't nearly as quick; the chars just get
+     * turned back into UTF-8.
+     */
+    public static ByteBuffer read(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+
+        char[] chunk = new char[8192];
+        int count;
+        while((count = reader.read(chunk)) != -1) {
+            text.append(chunk, 0, count);
+        }
+
+        return StandardCharsets.UTF_8.encode(CharBuffer.wrap(text));
+    }
+}
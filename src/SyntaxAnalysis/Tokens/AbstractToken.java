@@ -4,15 +4,66 @@ package SyntaxAnalysis.Tokens;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
 public abstract class AbstractToken implements Token {
-    private int lineNumber;
+    /**
+     * Offset, length and line all in one. See SourcePosition.
+     */
+    private final long position;
+
+    /**
+     * Where the lines of the file start, for working out the column. This
+     * is shared by every token from the same file, and null for tokens that
+     * didn't come from one.
+     */
+    private final LineMap lines;
 
     protected AbstractToken(int lineNumber) {
-        this.lineNumber = lineNumber;
+        this(SourcePosition.ofLine(lineNumber), null);
+    }
+
+    protected AbstractToken(long position, LineMap lines) {
+        this.position = position;
+        this.lines = lines;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
     }
 
     @Override
     public int getLineNumber() {
-        return lineNumber;
+        return SourcePosition.getLine(position);
+    }
+
+    @Override
+    public int getColumn() {
+        return (lines != null ? lines.getColumn(position) : 0);
+    }
+
+    @Override
+    public int getOffset() {
+        return SourcePosition.getOffset(position);
+    }
+
+    @Override
+    public int getLength() {
+        return SourcePosition.getLength(position);
+    }
+
+    /**
+     * Copies a range of bytes into a String. ByteBuffer doesn't have an
+     * absolute bulk get until Java 13, so a duplicate does the moving.
+     */
+    protected static String copyOut(ByteBuffer source, int start, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = source.duplicate();
+        view.position(start);
+        view.get(bytes);
+
+        return new String(bytes, charset);
     }
 }
@@ -4,15 +4,31 @@ package SyntaxAnalysis.Tokens;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class IdentifierToken extends AbstractToken {
 
-    private static final String VALID_INIT = "[A-Za-z_]";
-    private static final String VALID_BODY = "[A-Za-z0-9_]";
+    public static boolean isValidInitChar(char value) {
+        return (value >= 'A' && value <= 'Z') ||
+               (value >= 'a' && value <= 'z') ||
+               value == '_';
+    }
     public static boolean isValidChar(char value) {
-        return Character.toString(value).matches(VALID_BODY);
+        return isValidInitChar(value) || (value >= '0' && value <= '9');
     }
     public static boolean isValid(String value) {
-        return value.matches("^" + VALID_INIT + VALID_BODY + "*$");
+        if(value.isEmpty() || !isValidInitChar(value.charAt(0))) {
+            return false;
+        }
+
+        for(int i = 1; i < value.length(); i++) {
+            if(!isValidChar(value.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     private String identifier;
@@ -27,6 +43,17 @@ public class IdentifierToken extends AbstractToken {
         }
     }
 
+    /**
+     * Trusted constructor for ASCII bytes straight out of a source file. The
+     * caller MUST have already checked that the given range is a valid
+     * identifier; we don't check it a second time.
+     */
+    public IdentifierToken(long position, LineMap lines, ByteBuffer source, int start, int length) {
+        super(position, lines);
+
+        this.identifier = copyOut(source, start, length, StandardCharsets.US_ASCII);
+    }
+
     public String getValue() {
         return identifier;
     }
@@ -4,34 +4,90 @@ package SyntaxAnalysis.Tokens;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import java.nio.ByteBuffer;
+
 public class IntLiteralToken extends AbstractToken {
 
     private static final int LOWER_BOUND = 0;
     private static final int UPPER_BOUND = 32767;
-    public static boolean isValid(String value) {
-        boolean valid = false;
 
-        if(value.matches("^[0-9]*$")) {
-            int i = Integer.parseInt(value);
+    /**
+     * Parses an integer literal straight out of a source file's ASCII bytes.
+     * @return The value, or -1 if it isn't a valid Jack integer literal.
+     */
+    public static int parse(ByteBuffer source, int start, int length) {
+        if(length == 0) {
+            return -1;
+        }
+
+        int value = 0;
+        for(int i = start; i < start + length; i++) {
+            byte c = source.get(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+
+            // Bail as soon as we're out of range so we can't overflow,
+            // no matter how many digits there are.
+            if(value > UPPER_BOUND) {
+                return -1;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Same again, for a whole String, without copying it.
+     */
+    public static int parse(String value) {
+        int length = value.length();
+        if(length == 0) {
+            return -1;
+        }
+
+        int result = 0;
+        for(int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
 
-            valid = (i >= LOWER_BOUND && i <= UPPER_BOUND);
+            result = result * 10 + (c - '0');
+            if(result > UPPER_BOUND) {
+                return -1;
+            }
         }
 
-        return valid;
+        return result;
+    }
+
+    public static boolean isValid(String value) {
+        return parse(value) >= LOWER_BOUND;
     }
 
     private int value;
     public IntLiteralToken(int line, String value) {
         super(line);
 
-        if(isValid(value)) {
-            this.value = Integer.parseInt(value);
-        }
-        else {
+        this.value = parse(value);
+        if(this.value < LOWER_BOUND) {
             throw new IllegalArgumentException();
         }
     }
 
+    /**
+     * Trusted constructor. The caller MUST have already checked that the
+     * value is in range; we don't check it a second time.
+     */
+    public IntLiteralToken(long position, LineMap lines, int value) {
+        super(position, lines);
+
+        this.value = value;
+    }
+
     public int getValue() {
         return value;
     }
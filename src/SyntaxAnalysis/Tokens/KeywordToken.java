@@ -6,6 +6,7 @@ package SyntaxAnalysis.Tokens;
 
 import SyntaxAnalysis.KeywordType;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -31,23 +32,119 @@ public class KeywordToken extends AbstractToken {
         return nameIndex.get(name);
     }
 
+    // The keywords as they actually appear in source code, indexed by ordinal.
+    private static final String[] SOURCE_NAMES = new String[KeywordType.values().length];
+    private static final boolean[] IS_CONST = new boolean[KeywordType.values().length];
+
+    // A perfect hash over the keywords. Every keyword gets its own slot,
+    // so a lookup is one hash, one table read and one comparison.
+    // The hash only looks at the length and the first and last chars.
+    private static final int HASH_MASK = 31;
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 11;
+    private static final KeywordType[] HASH_TABLE = new KeywordType[HASH_MASK + 1];
+    private static final char[][] HASH_NAMES = new char[HASH_MASK + 1][];
+
+    private static int hash(int length, char first, char last) {
+        return (length * 19 + first * 24 + last) & HASH_MASK;
+    }
+
+    static {
+        for(KeywordType kw : KeywordType.values()) {
+            String name = kw.name().toLowerCase();
+            SOURCE_NAMES[kw.ordinal()] = name;
+
+            int h = hash(name.length(), name.charAt(0), name.charAt(name.length() - 1));
+            if(HASH_TABLE[h] != null) {
+                throw new IllegalStateException("Keyword hash collision between " + HASH_TABLE[h] + " and " + kw);
+            }
+            HASH_TABLE[h] = kw;
+            HASH_NAMES[h] = name.toCharArray();
+        }
+
+        for(KeywordType kw : KEYWORD_CONSTS) {
+            IS_CONST[kw.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Looks up a keyword straight out of a source file's ASCII bytes. No
+     * allocations happen.
+     * @return The keyword, or null if the given range isn't a keyword.
+     */
+    public static KeywordType lookup(ByteBuffer source, int start, int length) {
+        if(length < MIN_LENGTH || length > MAX_LENGTH) {
+            return null;
+        }
+
+        int h = hash(length, (char) source.get(start), (char) source.get(start + length - 1));
+        char[] candidate = HASH_NAMES[h];
+        if(candidate == null || candidate.length != length) {
+            return null;
+        }
+
+        for(int i = 0; i < length; i++) {
+            if(candidate[i] != source.get(start + i)) {
+                return null;
+            }
+        }
+
+        return HASH_TABLE[h];
+    }
+
+    /**
+     * Same again, for a whole String. This reads the String in place
+     * rather than copying it out into a char array first.
+     */
+    public static KeywordType lookup(String word) {
+        int length = word.length();
+        if(length < MIN_LENGTH || length > MAX_LENGTH) {
+            return null;
+        }
+
+        int h = hash(length, word.charAt(0), word.charAt(length - 1));
+        char[] candidate = HASH_NAMES[h];
+        if(candidate == null || candidate.length != length) {
+            return null;
+        }
+
+        for(int i = 0; i < length; i++) {
+            if(candidate[i] != word.charAt(i)) {
+                return null;
+            }
+        }
+
+        return HASH_TABLE[h];
+    }
+
     public static boolean isValid(String word) {
-        return lookupByName(word.toUpperCase()) != null;
+        return lookup(word) != null;
     }
     //endregion
 
     private KeywordType kw;
-    private String originalWord;
 
     public KeywordToken(int line, String word) {
         super(line);
 
-        originalWord = word;
-        kw = KeywordType.valueOf(word.toUpperCase());
+        kw = lookup(word);
+        if(kw == null) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Trusted constructor. There's nothing to validate here, since the
+     * keyword has already been looked up.
+     */
+    public KeywordToken(long position, LineMap lines, KeywordType kw) {
+        super(position, lines);
+
+        this.kw = kw;
     }
 
     public boolean isConst() {
-        return KEYWORD_CONSTS.contains(kw);
+        return IS_CONST[kw.ordinal()];
     }
 
     public KeywordType getValue() {
@@ -56,12 +153,12 @@ public class KeywordToken extends AbstractToken {
 
     @Override
     public String toString() {
-        return originalWord;
+        return SOURCE_NAMES[kw.ordinal()];
     }
 
     @Override
     public String toXML() {
-        return "<keyword> " + originalWord + " </keyword>";
+        return "<keyword> " + SOURCE_NAMES[kw.ordinal()] + " </keyword>";
     }
 
 }
@@ -0,0 +1,60 @@
+package SyntaxAnalysis.Tokens;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import java.util.Arrays;
+
+/**
+ * Where every line of a file starts. The tokenizer fills this in as it goes,
+ * and every token from the file shares it, so a token's column can be
+ * worked out from its offset instead of taking up room in its position.
+ * That way columns are exact no matter how long the line is.
+ *
+ * Lines are only ever added to the end, and a token can't be on a line the
+ * tokenizer hasn't gotten to yet, so the tokens never see it half done.
+ */
+public final class LineMap {
+
+    /**
+     * Where line n starts is in starts[n - 1]. Line 1 always starts at 0.
+     */
+    private int[] starts = new int[64];
+    private int lines = 1;
+
+    /**
+     * @param offset Where the new line starts (just after the newline).
+     */
+    public void addLine(int offset) {
+        if(lines == starts.length) {
+            starts = Arrays.copyOf(starts, lines * 2);
+        }
+
+        starts[lines++] = offset;
+    }
+
+    public int getLineCount() {
+        return lines;
+    }
+
+    /**
+     * @return How many bytes into the file the line starts.
+     */
+    public int getLineStart(int line) {
+        return starts[line - 1];
+    }
+
+    /**
+     * @return Where the position is on its line, counting from 1, or 0 if
+     *         we don't know.
+     */
+    public int getColumn(long position) {
+        int line = SourcePosition.getLine(position);
+        if(line < 1 || line > lines) {
+            return 0;
+        }
+
+        return SourcePosition.getOffset(position) - starts[line - 1] + 1;
+    }
+}
@@ -0,0 +1,97 @@
+package SyntaxAnalysis.Tokens;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+/**
+ * Packs where something is in a source file into a single long, so that
+ * every token can know exactly where it came from without needing another
+ * object to say so. From the top bit down, it's:
+ *
+ *   offset (24 bits) | length (16 bits) | line (24 bits)
+ *
+ * Offsets and lengths are in bytes, and lines count from 1. The column isn't
+ * in here at all, since a really long line would run out of bits for it.
+ * It's the offset minus where the line starts, which LineMap keeps track of.
+ *
+ * Nothing in a file can start past its end, so as long as the file is under
+ * 16MB, offsets and lines always fit. The only thing that can be too big is
+ * the length of a string literal, and one over 65535 bytes is stuck at
+ * 65535. (Jack can't make a string that long anyway, since String.new()
+ * only takes up to 32767.)
+ *
+ * A line of 0 means the position is unknown, which is what NONE is.
+ */
+public final class SourcePosition {
+
+    private static final int LINE_BITS = 24;
+    private static final int LENGTH_BITS = 16;
+    private static final int OFFSET_BITS = 24;
+
+    private static final int LENGTH_SHIFT = LINE_BITS;
+    private static final int OFFSET_SHIFT = LENGTH_SHIFT + LENGTH_BITS;
+
+    public static final int MAX_LINE = (1 << LINE_BITS) - 1;
+    public static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1;
+    public static final int MAX_OFFSET = (1 << OFFSET_BITS) - 1;
+
+    public static final long NONE = 0;
+
+    private SourcePosition() {
+
+    }
+
+    // region Packing
+    public static long of(int offset, int length, int line) {
+        return ((long) clamp(offset, MAX_OFFSET) << OFFSET_SHIFT) |
+               ((long) clamp(length, MAX_LENGTH) << LENGTH_SHIFT) |
+               clamp(line, MAX_LINE);
+    }
+
+    /**
+     * For tokens made by hand, which only know what line they're meant to
+     * be on (if that).
+     */
+    public static long ofLine(int line) {
+        return of(0, 0, line);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+    // endregion
+
+    // region Unpacking
+    /**
+     * @return How many bytes into the file this starts.
+     */
+    public static int getOffset(long position) {
+        return (int) (position >>> OFFSET_SHIFT) & MAX_OFFSET;
+    }
+
+    /**
+     * @return How many bytes long this is, or 0 if we don't know.
+     */
+    public static int getLength(long position) {
+        return (int) (position >>> LENGTH_SHIFT) & MAX_LENGTH;
+    }
+
+    public static int getLine(long position) {
+        return (int) position & MAX_LINE;
+    }
+
+    public static boolean isKnown(long position) {
+        return getLine(position) > 0;
+    }
+
+    public static String toString(long position) {
+        if(!isKnown(position)) {
+            return "unknown position";
+        }
+
+        return "line " + getLine(position) +
+               " (bytes " + getOffset(position) + " to " + (getOffset(position) + getLength(position)) + ")";
+    }
+    // endregion
+}
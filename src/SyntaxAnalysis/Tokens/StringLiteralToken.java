@@ -4,10 +4,31 @@ package SyntaxAnalysis.Tokens;
 // Project: 10 & 11
 //     Due: 04/29/2020
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class StringLiteralToken extends AbstractToken {
 
+    /**
+     * Checks if a char is allowed between the quotes of a string literal.
+     */
+    public static boolean isValidChar(char value) {
+        return value != '"' && value != '\n' && value != '\r';
+    }
+
     public static boolean isValid(String value) {
-        return value.matches("^\".*\"$") && !value.endsWith("\\\"");
+        int last = value.length() - 1;
+        if(last < 1 || value.charAt(0) != '"' || value.charAt(last) != '"' || value.charAt(last - 1) == '\\') {
+            return false;
+        }
+
+        for(int i = 1; i < last; i++) {
+            if(!isValidChar(value.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     private String value;
@@ -22,6 +43,20 @@ public class StringLiteralToken extends AbstractToken {
         }
     }
 
+    /**
+     * Trusted constructor for bytes straight out of a source file. The range
+     * is the contents of the literal WITHOUT the surrounding quotes. The
+     * caller MUST have already checked it; we don't check it a second time.
+     *
+     * Jack strings really ought to be ASCII, but anything else is treated as
+     * UTF-8, the same as the rest of the file would be.
+     */
+    public StringLiteralToken(long position, LineMap lines, ByteBuffer source, int start, int length) {
+        super(position, lines);
+
+        this.value = copyOut(source, start, length, StandardCharsets.UTF_8);
+    }
+
     public String getValue() {
         return value;
     }
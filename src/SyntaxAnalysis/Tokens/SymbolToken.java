@@ -10,8 +10,27 @@ public class SymbolToken extends AbstractToken {
     public static final String UNARY_OPERANDS = "~-";
 
     public static final String ALL_SYMBOLS = "{}()[].,;+-*/&|<>=~";
+
+    // region Lookup tables
+    // Every symbol is plain ASCII, so a 128 entry table indexed by the char
+    // itself is all we need. Anything outside of it is never a symbol.
+    private static final int TABLE_SIZE = 128;
+    private static final boolean[] IS_SYMBOL = buildTable(ALL_SYMBOLS);
+    private static final boolean[] IS_BINARY_OP = buildTable(BINARY_OPERANDS);
+    private static final boolean[] IS_UNARY_OP = buildTable(UNARY_OPERANDS);
+
+    private static boolean[] buildTable(String symbols) {
+        boolean[] table = new boolean[TABLE_SIZE];
+        for(int i = 0; i < symbols.length(); i++) {
+            table[symbols.charAt(i)] = true;
+        }
+
+        return table;
+    }
+    // endregion
+
     public static boolean isValid(char value) {
-        return ALL_SYMBOLS.contains(Character.toString(value));
+        return value < TABLE_SIZE && IS_SYMBOL[value];
     }
     public static boolean isValid(String value) {
         return value.length() == 1 && isValid(value.charAt(0));
@@ -30,16 +49,26 @@ public class SymbolToken extends AbstractToken {
         }
     }
 
+    /**
+     * Trusted constructor. The caller MUST have already checked isValid(symbol);
+     * we don't check it a second time.
+     */
+    public SymbolToken(long position, LineMap lines, char symbol) {
+        super(position, lines);
+
+        this.symbol = symbol;
+    }
+
     public char getValue() {
         return symbol;
     }
 
     public boolean isBinaryOp() {
-        return BINARY_OPERANDS.contains(Character.toString(symbol));
+        return IS_BINARY_OP[symbol];
     }
 
     public boolean isUnaryOp() {
-        return UNARY_OPERANDS.contains(Character.toString(symbol));
+        return IS_UNARY_OP[symbol];
     }
 
     @Override
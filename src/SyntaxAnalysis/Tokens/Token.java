@@ -6,7 +6,33 @@ package SyntaxAnalysis.Tokens;
 
 public interface Token {
 
+    /**
+     * @return Everything below packed into one long. See SourcePosition.
+     */
+    long getPosition();
+
+    /**
+     * @return The line the token is on, or 0 if it didn't come from a file.
+     */
     int getLineNumber();
 
+    /**
+     * @return Where the token starts on its line, counting from 1, or 0 if
+     *         it didn't come from a file.
+     */
+    int getColumn();
+
+    /**
+     * @return How many bytes into the file the token starts.
+     */
+    int getOffset();
+
+    /**
+     * @return How many bytes of the file the token covers, including the
+     *         quotes around string literals. This is 0 if it didn't come
+     *         from a file.
+     */
+    int getLength();
+
     String toXML();
 }
@@ -0,0 +1,233 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IR.ExpressionPool;
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.Segment;
+import org.junit.jupiter.api.Test;
+
+import static CodeGeneration.Optimization.ExpressionOptimizer.NOT_FOLDABLE;
+import static CodeGeneration.VM.ArithmeticCommand.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Everything the optimizer works out ahead of time has to come out the same
+ * as the Hack machine would have gotten at runtime.
+ */
+class ExpressionOptimizerTest {
+
+    /**
+     * Just enough of a VM to run the straight-line code the optimizer
+     * writes. Everything runs as soon as it's written, and values are kept
+     * to 16 bits.
+     */
+    private static class StackMachine implements CommandWriter {
+        private final int[] stack = new int[64];
+        private int sp = 0;
+        private final int[] local = new int[8];
+        private final int[] temp = new int[Segment.LAST_TEMP + 1];
+        private int commands = 0;
+
+        private int[] segment(Segment seg) {
+            switch(seg) {
+                case LOCAL: return local;
+                case TEMP:  return temp;
+                default:    throw new UnsupportedOperationException(seg.toString());
+            }
+        }
+
+        @Override
+        public void writePush(Segment seg, int index) {
+            commands++;
+            stack[sp++] = (seg == Segment.CONSTANT ? index : segment(seg)[index]);
+        }
+
+        @Override
+        public void writePop(Segment seg, int index) {
+            commands++;
+            segment(seg)[index] = stack[--sp];
+        }
+
+        @Override
+        public void writeArithmetic(ArithmeticCommand cmd) {
+            commands++;
+            if(cmd == NEG || cmd == NOT) {
+                stack[sp - 1] = (short) (cmd == NEG ? -stack[sp - 1] : ~stack[sp - 1]);
+                return;
+            }
+
+            int b = stack[--sp];
+            int a = stack[--sp];
+            switch(cmd) {
+                case ADD: stack[sp++] = (short) (a + b); break;
+                case SUB: stack[sp++] = (short) (a - b); break;
+                default:  throw new UnsupportedOperationException(cmd.toString());
+            }
+        }
+
+        @Override
+        public void writeCall(String name, int nArgs) {
+            commands++;
+            assertEquals("Math.multiply", name);
+            int b = stack[--sp];
+            int a = stack[--sp];
+            stack[sp++] = (short) (a * b);
+        }
+
+        @Override
+        public void writeLabel(String label) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeGoto(String label) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeIf(String label) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeFunction(String name, int nLocals) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeReturn() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+
+        }
+    }
+
+    // region Folding
+    @Test
+    void foldingWrapsAroundAt16Bits() {
+        assertEquals(-32768, ExpressionOptimizer.fold(ADD, 32767, 1));
+        assertEquals(32767, ExpressionOptimizer.fold(SUB, -32768, 1));
+        assertEquals(0, ExpressionOptimizer.fold(MULTIPLY, 256, 256));
+        assertEquals((short) (300 * 300), ExpressionOptimizer.fold(MULTIPLY, 300, 300));
+        assertEquals(-32768, ExpressionOptimizer.fold(MULTIPLY, -32768, -1));
+    }
+
+    @Test
+    void divisionTruncatesTowardsZero() {
+        assertEquals(-3, ExpressionOptimizer.fold(DIVIDE, -7, 2));
+        assertEquals(-3, ExpressionOptimizer.fold(DIVIDE, 7, -2));
+        assertEquals(3, ExpressionOptimizer.fold(DIVIDE, -7, -2));
+    }
+
+    @Test
+    void comparisonsGiveRealBooleans() {
+        assertEquals(-1, ExpressionOptimizer.fold(LT, -32768, 32767));
+        assertEquals(0, ExpressionOptimizer.fold(GT, -32768, 32767));
+        assertEquals(-1, ExpressionOptimizer.fold(EQ, 5, 5));
+    }
+
+    @Test
+    void divisionsWithNoGoodAnswerAreLeftForRuntime() {
+        assertEquals(NOT_FOLDABLE, ExpressionOptimizer.fold(DIVIDE, -32768, -1));
+        assertEquals(NOT_FOLDABLE, ExpressionOptimizer.fold(DIVIDE, 5, 0));
+        assertEquals(NOT_FOLDABLE, ExpressionOptimizer.fold(DIVIDE, 0, 0));
+
+        ExpressionPool pool = new ExpressionPool();
+        ExpressionOptimizer optimizer = new ExpressionOptimizer(pool);
+
+        int overflow = optimizer.optimize(pool.binary(DIVIDE, pool.constant(-32768), pool.constant(-1)));
+        assertEquals(ExpressionPool.BINARY, pool.getKind(overflow));
+
+        int byZero = optimizer.optimize(pool.binary(DIVIDE, pool.constant(5), pool.constant(0)));
+        assertEquals(ExpressionPool.BINARY, pool.getKind(byZero));
+
+        int fine = optimizer.optimize(pool.binary(DIVIDE, pool.constant(-32767), pool.constant(-1)));
+        assertTrue(pool.isConstant(fine, 32767));
+    }
+    // endregion
+
+    // region Multiplying
+    @Test
+    void chainLengths() {
+        // Nothing to chain for these.
+        assertEquals(-1, ExpressionOptimizer.chainLength(0, true));
+        assertEquals(-1, ExpressionOptimizer.chainLength(1, true));
+        assertEquals(-1, ExpressionOptimizer.chainLength(-1, true));
+        assertEquals(-1, ExpressionOptimizer.chainLength(-32768, true));
+
+        // Powers of two are nothing but doublings.
+        assertEquals(3, ExpressionOptimizer.chainLength(2, true));
+        assertEquals(7, ExpressionOptimizer.chainLength(4, true));
+        assertEquals(4 * 14 - 1, ExpressionOptimizer.chainLength(16384, true));
+
+        // Negative factors add a neg, and an expression needs a pop first.
+        assertEquals(4, ExpressionOptimizer.chainLength(-2, true));
+        assertEquals(4, ExpressionOptimizer.chainLength(2, false));
+        assertEquals(5, ExpressionOptimizer.chainLength(-2, false));
+
+        // 10 is 8 + 2: three doublings and one more bit.
+        assertEquals(4 * 3 - 1 + 2, ExpressionOptimizer.chainLength(10, true));
+    }
+
+    /**
+     * Writes x * factor, runs it, and checks it against what Math.multiply
+     * would have given. If a chain was written, it has to be exactly as long
+     * as chainLength() said.
+     */
+    private static void checkMultiply(int factor, boolean isVariable) {
+        for(int x : new int[] { 0, 1, -1, 3, -7, 181, 1000, -1000, 32767, -32768 }) {
+            ExpressionPool pool = new ExpressionPool();
+            ExpressionOptimizer optimizer = new ExpressionOptimizer(pool);
+
+            // neg(neg(local 0)) is still x, but isn't a variable.
+            int operand = pool.variable(Segment.LOCAL, 0);
+            if(!isVariable) {
+                operand = pool.unary(NEG, pool.unary(NEG, operand));
+            }
+
+            StackMachine machine = new StackMachine();
+            machine.local[0] = x;
+            optimizer.write(pool.binary(MULTIPLY, operand, pool.constant(factor)), machine);
+
+            String what = x + " * " + factor + (isVariable ? "" : " (expression)");
+            assertEquals(1, machine.sp, what);
+            assertEquals((short) (x * factor), machine.stack[0], what);
+            assertEquals(x, machine.local[0], what + " changed x");
+
+            int length = ExpressionOptimizer.chainLength(factor, isVariable);
+            if(length >= 0 && length <= ExpressionOptimizer.MAX_CHAIN_LENGTH) {
+                int operandCommands = (isVariable ? 0 : 3);
+                assertEquals(length + operandCommands, machine.commands, what);
+            }
+        }
+    }
+
+    @Test
+    void multipliesComeOutRight() {
+        for(int factor = -40; factor <= 40; factor++) {
+            checkMultiply(factor, true);
+            checkMultiply(factor, false);
+        }
+    }
+
+    @Test
+    void multipliesByPowersOfTwoComeOutRight() {
+        for(int bit = 1; bit < 15; bit++) {
+            checkMultiply(1 << bit, true);
+            checkMultiply(-(1 << bit), true);
+            checkMultiply(1 << bit, false);
+            checkMultiply(-(1 << bit), false);
+        }
+
+        checkMultiply(Short.MAX_VALUE, true);
+        checkMultiply(Short.MIN_VALUE, true);
+    }
+    // endregion
+}
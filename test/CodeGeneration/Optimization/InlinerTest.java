@@ -0,0 +1,163 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.Instruction;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.Segment;
+import CodeGeneration.VM.VMParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Which calls can be inlined, and what the copies look like.
+ */
+class InlinerTest {
+
+    private static final String PROGRAM = String.join("\n",
+            // A getter and a setter.
+            "function Point.getX 0",
+            "push argument 0", "pop pointer 0",
+            "push this 0", "return",
+            "function Point.setX 0",
+            "push argument 0", "pop pointer 0",
+            "push argument 1", "pop this 0",
+            "push constant 0", "return",
+
+            // A function, with a local.
+            "function Util.sum 1",
+            "push argument 0", "push argument 1", "add", "pop local 0",
+            "push local 0", "return",
+
+            // These all do something they can't.
+            "function Util.callsSomething 0",
+            "call Util.sum 0", "return",
+            "function Util.usesStatics 0",
+            "push static 0", "return",
+            "function Util.readsThis 0",
+            "push this 0", "return",
+            "function Util.loops 0",
+            "label L", "goto L",
+            "function Point.setThis 0",
+            "push argument 0", "pop pointer 0",
+            "push argument 1", "pop argument 0",
+            "push constant 0", "return",
+
+            // Too many arguments for the temps we have.
+            "function Util.lastOfSeven 0",
+            "push argument 6", "return",
+            "function Util.firstOfSeven 0",
+            "push argument 0", "return");
+
+    private Inliner inliner;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        InstructionBuffer program = new InstructionBuffer();
+        new VMParser(new BufferedReader(new StringReader(PROGRAM))).parse(program);
+
+        // There's no multiply in VM code, but there is in the compiler.
+        program.writeFunction("Util.multiplies", 0);
+        program.writePush(Segment.ARGUMENT, 0);
+        program.writePush(Segment.ARGUMENT, 1);
+        program.writeArithmetic(ArithmeticCommand.MULTIPLY);
+        program.writeReturn();
+
+        inliner = new Inliner(Inliner.DEFAULT_BUDGET);
+        inliner.add(program);
+    }
+
+    private List<String> inline(String name, int nArgs) {
+        InstructionBuffer out = new InstructionBuffer();
+        inliner.writeInline(name, nArgs, out);
+
+        List<String> result = new ArrayList<>();
+        for(Instruction instruction : out.getInstructions()) {
+            result.add(instruction.toString());
+        }
+        return result;
+    }
+
+    @Test
+    void methodsGetThisThroughThat() {
+        assertTrue(inliner.canInline("Point.getX", 1));
+        assertEquals(List.of("pop pointer 1", "push that 0"), inline("Point.getX", 1));
+
+        assertTrue(inliner.canInline("Point.setX", 2));
+        assertEquals(List.of("pop temp 2", "pop pointer 1", "push temp 2", "pop that 0", "push constant 0"),
+                     inline("Point.setX", 2));
+    }
+
+    @Test
+    void methodsNeedSomethingToBeThis() {
+        assertFalse(inliner.canInline("Point.getX", 0));
+        assertFalse(inliner.canInline("Point.setX", 0));
+    }
+
+    @Test
+    void callsWithTooFewArgumentsArentInlined() {
+        assertTrue(inliner.canInline("Util.sum", 2));
+        assertFalse(inliner.canInline("Util.sum", 1));
+        assertFalse(inliner.canInline("Util.sum", 0));
+
+        // The method reads argument 1, so it needs "this" and one more.
+        assertFalse(inliner.canInline("Point.setX", 1));
+    }
+
+    @Test
+    void functionsGetTheirArgumentsAndLocalsInTemps() {
+        assertEquals(List.of("pop temp 3", "pop temp 2",
+                             "push constant 0", "pop temp 4",
+                             "push temp 2", "push temp 3", "add", "pop temp 4",
+                             "push temp 4"),
+                     inline("Util.sum", 2));
+    }
+
+    @Test
+    void onlyLeavesAreInlined() {
+        assertFalse(inliner.canInline("Util.callsSomething", 0));
+        assertFalse(inliner.canInline("Util.usesStatics", 0));
+        assertFalse(inliner.canInline("Util.multiplies", 2));
+        assertFalse(inliner.canInline("Util.readsThis", 0));
+        assertFalse(inliner.canInline("Util.loops", 0));
+        assertFalse(inliner.canInline("Point.setThis", 2));
+        assertFalse(inliner.canInline("Nobody.knows", 0));
+    }
+
+    @Test
+    void argumentsHaveToFitInTheTemps() {
+        // Temp 2 to 7 is room for six.
+        assertTrue(inliner.canInline("Util.firstOfSeven", 6));
+        assertFalse(inliner.canInline("Util.firstOfSeven", 7));
+        assertFalse(inliner.canInline("Util.lastOfSeven", 7));
+    }
+
+    @Test
+    void bigFunctionsArentInlined() throws IOException {
+        InstructionBuffer program = new InstructionBuffer();
+        new VMParser(new BufferedReader(new StringReader(String.join("\n",
+                "function Util.sum 1",
+                "push argument 0", "push argument 1", "add", "pop local 0",
+                "push local 0", "return")))).parse(program);
+
+        // Five instructions, plus two for zeroing the local.
+        Inliner small = new Inliner(6);
+        small.add(program);
+        assertFalse(small.canInline("Util.sum", 2));
+
+        Inliner justRight = new Inliner(7);
+        justRight.add(program);
+        assertTrue(justRight.canInline("Util.sum", 2));
+    }
+}
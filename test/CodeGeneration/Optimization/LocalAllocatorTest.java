@@ -0,0 +1,165 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.ArithmeticCommand;
+import CodeGeneration.VM.CommandWriter;
+import CodeGeneration.VM.Instruction;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.VMParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sharing slots is only safe if nothing that's still needed gets written
+ * over, and if locals that rely on starting out as 0 still do.
+ */
+class LocalAllocatorTest {
+
+    /**
+     * Writes some VM code, one command per line. VM code has no multiply or
+     * divide (they're calls to Math by then), but inside the compiler
+     * they're still arithmetic, so those are written as that.
+     */
+    private static void write(CommandWriter out, String... lines) throws IOException {
+        for(String line : lines) {
+            if(line.equals("multiply") || line.equals("divide")) {
+                out.writeArithmetic(ArithmeticCommand.valueOf(line.toUpperCase()));
+            }
+            else {
+                new VMParser(new BufferedReader(new StringReader(line))).parse(out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Runs some VM code through a new allocator as one function.
+     * @return What came out, one command per line.
+     */
+    private static List<String> allocate(String... lines) throws IOException {
+        InstructionBuffer out = new InstructionBuffer();
+        write(new LocalAllocator(out), lines);
+
+        List<String> result = new ArrayList<>();
+        for(Instruction instruction : out.getInstructions()) {
+            result.add(instruction.toString());
+        }
+        return result;
+    }
+
+    @Test
+    void localsThatAreNeverLiveTogetherShareASlot() throws IOException {
+        // Both are live across a call, so both have to stay in LOCAL.
+        assertEquals(List.of("function Main.f 1",
+                             "push constant 1", "pop local 0", "call Main.g 0", "pop temp 0",
+                             "push local 0", "pop temp 0",
+                             "push constant 2", "pop local 0", "call Main.g 0", "pop temp 0",
+                             "push local 0", "return"),
+                     allocate("function Main.f 2",
+                              "push constant 1", "pop local 0", "call Main.g 0", "pop temp 0",
+                              "push local 0", "pop temp 0",
+                              "push constant 2", "pop local 1", "call Main.g 0", "pop temp 0",
+                              "push local 1", "return"));
+    }
+
+    @Test
+    void localsThatAreLiveTogetherDont() throws IOException {
+        List<String> code = List.of("function Main.f 2",
+                                    "push constant 1", "pop local 0",
+                                    "push constant 2", "pop local 1",
+                                    "call Main.g 0", "pop temp 0",
+                                    "push local 0", "push local 1", "add", "return");
+        assertEquals(code, allocate(code.toArray(new String[0])));
+    }
+
+    @Test
+    void shortLivedLocalsGoInTemps() throws IOException {
+        assertEquals(List.of("function Main.f 0",
+                             "push argument 0", "pop temp 2",
+                             "push temp 2", "push temp 2", "add", "return"),
+                     allocate("function Main.f 1",
+                              "push argument 0", "pop local 0",
+                              "push local 0", "push local 0", "add", "return"));
+    }
+
+    @Test
+    void tempsTheFunctionAlreadyUsesAreLeftAlone() throws IOException {
+        assertEquals(List.of("function Main.f 0",
+                             "push argument 0", "pop temp 2",
+                             "push constant 5", "pop temp 3",
+                             "push temp 2", "push temp 3", "add", "return"),
+                     allocate("function Main.f 1",
+                              "push argument 0", "pop temp 2",
+                              "push constant 5", "pop local 0",
+                              "push temp 2", "push local 0", "add", "return"));
+    }
+
+    @Test
+    void localsReadBeforeTheyreSetStayInZeroedSlots() throws IOException {
+        // local 0 is read before anything sets it, so it's relying on the
+        // function line to zero it. local 1 isn't, so it can go in a temp.
+        assertEquals(List.of("function Main.f 1",
+                             "push local 0", "pop temp 2",
+                             "push temp 2", "return"),
+                     allocate("function Main.f 2",
+                              "push local 0", "pop local 1",
+                              "push local 1", "return"));
+
+        // Two of them can't share, since they both need to start at 0.
+        List<String> both = List.of("function Main.f 2",
+                                    "push local 0", "push local 1", "add", "return");
+        assertEquals(both, allocate(both.toArray(new String[0])));
+    }
+
+    @Test
+    void readBeforeSetInALoopStaysZeroed() throws IOException {
+        // sum is read on the first time around before it's set, which only
+        // shows up by following the jump back.
+        List<String> code = List.of("function Main.f 1",
+                                    "label LOOP",
+                                    "push local 0", "push constant 1", "add", "pop local 0",
+                                    "push local 0", "push constant 10", "lt", "if-goto LOOP",
+                                    "push local 0", "return");
+        assertEquals(code, allocate(code.toArray(new String[0])));
+    }
+
+    @Test
+    void localsLiveAcrossMultiplyAndDivideStayOutOfTemps() throws IOException {
+        // Multiply and divide are calls to Math, which could use any temp.
+        for(String op : new String[] { "multiply", "divide" }) {
+            assertEquals(List.of("function Main.f 1",
+                                 "push constant 3", "pop local 0",
+                                 "push argument 0", "push argument 1", op, "pop temp 2",
+                                 "push local 0", "push temp 2", "add", "return"),
+                         allocate("function Main.f 2",
+                                  "push constant 3", "pop local 0",
+                                  "push argument 0", "push argument 1", op, "pop local 1",
+                                  "push local 0", "push local 1", "add", "return"),
+                         op);
+        }
+    }
+
+    @Test
+    void countsWhatItSaved() throws IOException {
+        InstructionBuffer out = new InstructionBuffer();
+        LocalAllocator allocator = new LocalAllocator(out);
+
+        write(allocator, "function Main.f 3",
+                         "push local 0", "pop local 1",
+                         "push local 1", "return");
+
+        assertEquals(3, allocator.getLocalsIn());
+        assertEquals(1, allocator.getLocalsOut());
+        assertEquals(1, allocator.getMovedToTemps());
+    }
+}
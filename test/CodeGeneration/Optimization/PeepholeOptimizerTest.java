@@ -0,0 +1,128 @@
+package CodeGeneration.Optimization;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.VM.Instruction;
+import CodeGeneration.VM.InstructionBuffer;
+import CodeGeneration.VM.VMParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * One test per rule (numbered the same as in PeepholeOptimizer), plus the
+ * cases that look like a rule but mustn't be touched.
+ */
+class PeepholeOptimizerTest {
+
+    /**
+     * Runs some VM code through the optimizer as one function.
+     * @return What came out, one command per line.
+     */
+    private static List<String> optimize(String... lines) throws IOException {
+        InstructionBuffer out = new InstructionBuffer();
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(out);
+
+        new VMParser(new BufferedReader(new StringReader(String.join("\n", lines)))).parse(optimizer);
+        optimizer.flush();
+
+        List<String> result = new ArrayList<>();
+        for(Instruction instruction : out.getInstructions()) {
+            result.add(instruction.toString());
+        }
+        return result;
+    }
+
+    @Test
+    void pushThenPopToTheSamePlaceGoes() throws IOException {
+        assertEquals(List.of("function Main.f 0", "return"),
+                     optimize("function Main.f 0", "push local 0", "pop local 0", "return"));
+
+        // Somewhere else entirely is a real move.
+        assertEquals(List.of("function Main.f 0", "push temp 0", "pop temp 1", "return"),
+                     optimize("function Main.f 0", "push temp 0", "pop temp 1", "return"));
+    }
+
+    @Test
+    void doubleNegationsGo() throws IOException {
+        assertEquals(List.of("function Main.f 0", "push local 0", "return"),
+                     optimize("function Main.f 0", "push local 0", "not", "not", "neg", "neg", "return"));
+
+        assertEquals(List.of("function Main.f 0", "push local 0", "not", "neg", "return"),
+                     optimize("function Main.f 0", "push local 0", "not", "neg", "return"));
+    }
+
+    @Test
+    void notTrueIsFalse() throws IOException {
+        assertEquals(List.of("function Main.f 0", "push constant 0", "return"),
+                     optimize("function Main.f 0", "push constant 1", "neg", "not", "return"));
+    }
+
+    @Test
+    void jumpsOnConstantsAreDecidedNow() throws IOException {
+        // while(true)
+        assertEquals(List.of("function Main.f 0", "label L", "goto L"),
+                     optimize("function Main.f 0", "label L", "push constant 0", "not", "if-goto L"));
+        assertEquals(List.of("function Main.f 0", "label L", "goto L"),
+                     optimize("function Main.f 0", "label L", "push constant 1", "neg", "if-goto L"));
+        assertEquals(List.of("function Main.f 0", "label L", "goto L"),
+                     optimize("function Main.f 0", "label L", "push constant 7", "if-goto L"));
+
+        // while(false) never jumps.
+        assertEquals(List.of("function Main.f 0", "label L", "return"),
+                     optimize("function Main.f 0", "label L", "push constant 0", "if-goto L", "return"));
+    }
+
+    @Test
+    void jumpsOverJumpsAreFlipped() throws IOException {
+        assertEquals(List.of("function Main.f 0", "push local 0", "push local 1", "lt",
+                             "if-goto B", "label A", "push constant 1", "label B", "return"),
+                     optimize("function Main.f 0", "push local 0", "push local 1", "lt",
+                              "not", "if-goto A", "goto B", "label A", "push constant 1", "label B", "return"));
+    }
+
+    @Test
+    void jumpsOverJumpsAreLeftAloneWithoutARealBoolean() throws IOException {
+        // "not" of 1 is -2, which is still true, so this isn't the same
+        // thing as "if-goto B".
+        List<String> code = List.of("function Main.f 0", "push local 0", "push constant 1", "and",
+                                    "not", "if-goto A", "goto B", "label A", "push constant 1", "label B", "return");
+        assertEquals(code, optimize(code.toArray(new String[0])));
+    }
+
+    @Test
+    void jumpsToTheNextLineGo() throws IOException {
+        assertEquals(List.of("function Main.f 0", "label A", "label B", "return"),
+                     optimize("function Main.f 0", "goto B", "label A", "label B", "return"));
+    }
+
+    @Test
+    void jumpsToJumpsGoStraightThere() throws IOException {
+        assertEquals(List.of("function Main.f 0", "push local 0", "if-goto C", "push constant 2", "return",
+                             "label A", "goto C", "push constant 1", "label C", "return"),
+                     optimize("function Main.f 0", "push local 0", "if-goto A", "push constant 2", "return",
+                              "label A", "goto C", "push constant 1", "label C", "return"));
+    }
+
+    @Test
+    void countsWhatItSaved() throws IOException {
+        InstructionBuffer out = new InstructionBuffer();
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(out);
+
+        new VMParser(new BufferedReader(new StringReader("function Main.f 0\npush local 0\npop local 0\nreturn")))
+                .parse(optimizer);
+        optimizer.flush();
+
+        assertEquals(4, optimizer.getInstructionsIn());
+        assertEquals(2, optimizer.getInstructionsOut());
+        assertEquals(2, optimizer.getInstructionsSaved());
+    }
+}
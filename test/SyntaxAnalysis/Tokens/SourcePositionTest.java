@@ -0,0 +1,93 @@
+package SyntaxAnalysis.Tokens;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.IllegalSyntaxException;
+import SyntaxAnalysis.JackTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Generated Jack tends to put a lot on one line, so positions have to stay
+ * exact well past where a hand-written file would ever get to.
+ */
+class SourcePositionTest {
+
+    private static JackTokenizer tokenize(String source) {
+        return new JackTokenizer(ByteBuffer.wrap(source.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void packsAndUnpacks() {
+        long position = SourcePosition.of(12_345_678, 40_000, 1_000_000);
+
+        assertEquals(12_345_678, SourcePosition.getOffset(position));
+        assertEquals(40_000, SourcePosition.getLength(position));
+        assertEquals(1_000_000, SourcePosition.getLine(position));
+        assertTrue(SourcePosition.isKnown(position));
+        assertFalse(SourcePosition.isKnown(SourcePosition.NONE));
+    }
+
+    @Test
+    void columnsPastTheOldLimitAreExact() {
+        String padding = " ".repeat(5000);
+        JackTokenizer tokenizer = tokenize("class Main {\n" + padding + "field int x;" + padding + "}\n");
+
+        Token classKeyword = tokenizer.next();
+        assertEquals(1, classKeyword.getLineNumber());
+        assertEquals(1, classKeyword.getColumn());
+
+        tokenizer.next();       // Main
+        tokenizer.next();       // {
+        Token field = tokenizer.next();
+        assertEquals("field", field.toString());
+        assertEquals(2, field.getLineNumber());
+        assertEquals(5001, field.getColumn());
+        assertEquals(13 + 5000, field.getOffset());
+        assertEquals(5, field.getLength());
+
+        tokenizer.next();       // int
+        tokenizer.next();       // x
+        tokenizer.next();       // ;
+        Token close = tokenizer.next();
+        assertEquals("}", close.toString());
+        assertEquals(5001 + "field int x;".length() + 5000, close.getColumn());
+    }
+
+    @Test
+    void longStringLiteralsKeepTheirLength() {
+        String text = "x".repeat(10_000);
+        JackTokenizer tokenizer = tokenize("\"" + text + "\"");
+
+        Token literal = tokenizer.next();
+        assertEquals(text, ((StringLiteralToken) literal).getValue());
+        assertEquals(10_002, literal.getLength());
+    }
+
+    @Test
+    void errorsOnLongLinesGetTheRightColumn() {
+        JackTokenizer tokenizer = tokenize("\n\n" + " ".repeat(2000) + "#");
+        assertFalse(tokenizer.hasMoreTokens());
+
+        assertEquals(1, tokenizer.getErrors().size());
+        IllegalSyntaxException error = tokenizer.getErrors().get(0);
+        assertEquals(3, error.getLineNumber());
+        assertEquals(2001, error.getColumn());
+        assertEquals(2002, error.getOffset());
+        assertEquals(1, error.getLength());
+    }
+
+    @Test
+    void handMadeTokensDontKnowWhereTheyAre() {
+        Token token = new KeywordToken(SourcePosition.NONE, null, SyntaxAnalysis.KeywordType.CLASS);
+
+        assertEquals(0, token.getLineNumber());
+        assertEquals(0, token.getColumn());
+    }
+}
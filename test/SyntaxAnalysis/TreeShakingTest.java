@@ -0,0 +1,91 @@
+package SyntaxAnalysis;
+//  Author: Daniel Edwards
+//   Class: CS 3650 (Section 1)
+// Project: 10 & 11
+//     Due: 04/29/2020
+
+import CodeGeneration.Optimization.TreeShaker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * When writing .vm files, the OS's .vm files are left alone, so what the
+ * tree shaker reports has to be about the classes it actually rewrote.
+ */
+class TreeShakingTest {
+
+    private static final String MAIN =
+            "class Main {\n" +
+            "    function void main() {\n" +
+            "        do Main.used();\n" +
+            "        return;\n" +
+            "    }\n" +
+            "    function void used() {\n" +
+            "        return;\n" +
+            "    }\n" +
+            "    function int unused(int x) {\n" +
+            "        return x + 1;\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final String SYS =
+            "function Sys.init 0\n" +
+            "call Main.main 0\n" +
+            "pop temp 0\n" +
+            "label LOOP\n" +
+            "goto LOOP\n" +
+            "function Sys.halt 0\n" +
+            "label HALT\n" +
+            "goto HALT\n";
+
+    private static String analyze(File directory, boolean treeShaking, JackAnalyzer analyzer) throws IOException {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+        analyzer.add(directory);
+        analyzer.setXMLOutput(false);
+        analyzer.setTreeShaking(treeShaking);
+        analyzer.setConsole(new PrintStream(console, true, StandardCharsets.UTF_8));
+        analyzer.analyze();
+        assertEquals(0, analyzer.getFailureCount());
+
+        return console.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void osFilesAreNotReportedWhenTheyArentRewritten(@TempDir Path directory) throws IOException {
+        Files.writeString(directory.resolve("Main.jack"), MAIN);
+        Files.writeString(directory.resolve("Sys.vm"), SYS);
+
+        analyze(directory.toFile(), false, new JackAnalyzer());
+        List<String> unshaken = Files.readAllLines(directory.resolve("Main.vm"));
+
+        JackAnalyzer analyzer = new JackAnalyzer();
+        String console = analyze(directory.toFile(), true, analyzer);
+        List<String> shaken = Files.readAllLines(directory.resolve("Main.vm"));
+        TreeShaker shaker = analyzer.getTreeShaker();
+
+        assertEquals(SYS, Files.readString(directory.resolve("Sys.vm")));
+        assertTrue(unshaken.contains("function Main.unused 0"));
+        assertFalse(shaken.contains("function Main.unused 0"));
+
+        assertEquals(List.of("Main.unused"), shaker.getDropped());
+        assertEquals(3, shaker.getFunctionCount());
+        assertEquals(unshaken.size() - shaken.size(), shaker.getInstructionsDropped());
+
+        assertTrue(console.contains("Left out Main.unused\n"), console);
+        assertTrue(console.contains("Tree shaking: kept 2 of 3 functions, dropping " +
+                                    shaker.getInstructionsDropped() + " VM instructions"), console);
+        assertFalse(console.contains("Sys."), console);
+    }
+}